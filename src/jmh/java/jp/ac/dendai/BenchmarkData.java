@@ -0,0 +1,82 @@
+package jp.ac.dendai;
+
+import jp.ac.dendai.util.PositionTracker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed inputs shared by the benchmarks
+ */
+public final class BenchmarkData {
+    /**
+     * Giuoco Pianissimo main line, 26 plies
+     */
+    public static final String[] MAIN_LINE = {
+        "e4", "e5", "Nf3", "Nc6", "Bc4", "Bc5", "c3", "Nf6", "d3", "d6", "O-O", "O-O", "a4",
+        "a5", "Re1", "h6", "Nbd2", "Be6", "Bb5", "Ba7", "h3", "Ne7", "d4", "Ng6", "Bf1", "c6"
+    };
+
+    /**
+     * Main line until White leaves it with 7.Nh4
+     */
+    public static final String[] DEVIATION = {
+        "e4", "e5", "Nf3", "Nc6", "Bc4", "Bc5", "c3", "Nf6", "d3", "d6", "O-O", "O-O", "Nh4"
+    };
+
+    /**
+     * One line of a Lichess NDJSON export with clocks and analysis, most of which Game does not map
+     */
+    public static final String GAME_JSON = "{\"id\":\"q7ZvsdUF\",\"rated\":true,\"variant\":\"standard\","
+        + "\"speed\":\"blitz\",\"perf\":\"blitz\",\"createdAt\":1700000000000,\"lastMoveAt\":1700000600000,"
+        + "\"status\":\"resign\",\"source\":\"pool\",\"players\":{\"white\":{\"user\":{\"name\":\"def-e\","
+        + "\"id\":\"def-e\"},\"rating\":1950,\"ratingDiff\":6,\"analysis\":{\"inaccuracy\":2,\"mistake\":1,"
+        + "\"blunder\":0,\"acpl\":31}},\"black\":{\"user\":{\"name\":\"Opponent\",\"title\":\"FM\","
+        + "\"id\":\"opponent\"},\"rating\":2010,\"ratingDiff\":-6,\"analysis\":{\"inaccuracy\":3,"
+        + "\"mistake\":2,\"blunder\":1,\"acpl\":54}}},\"winner\":\"white\",\"opening\":{\"eco\":\"C54\","
+        + "\"name\":\"Italian Game: Giuoco Pianissimo\",\"ply\":7},\"moves\":\"" + String.join(" ", MAIN_LINE)
+        + "\",\"clocks\":[18003,18003,17859,17915,17755,17811,17627,17683,17491,17547,17339,17403,17171,"
+        + "17235,16979,17051,16771,16835,16547,16611,16299,16379,16051,16147,15787,15899],"
+        + "\"analysis\":[{\"eval\":18},{\"eval\":25},{\"eval\":21},{\"eval\":17},{\"eval\":20},"
+        + "{\"eval\":24},{\"eval\":15},{\"eval\":22,\"best\":\"d2d3\",\"variation\":\"d3 d6 O-O\","
+        + "\"judgment\":{\"name\":\"Inaccuracy\",\"comment\":\"Inaccuracy. d3 was best.\"}}],"
+        + "\"clock\":{\"initial\":180,\"increment\":0,\"totalTime\":180}}";
+
+    public static final String OPENING_JSON = "{\"white\":153240,\"draws\":189033,\"black\":121005,"
+        + "\"moves\":[{\"uci\":\"e7e5\",\"san\":\"e5\",\"averageRating\":2415,\"white\":50311,"
+        + "\"draws\":66720,\"black\":40112,\"game\":null},{\"uci\":\"c7c5\",\"san\":\"c5\","
+        + "\"averageRating\":2421,\"white\":48210,\"draws\":57102,\"black\":41007,\"game\":null},"
+        + "{\"uci\":\"e7e6\",\"san\":\"e6\",\"averageRating\":2412,\"white\":18321,\"draws\":22510,"
+        + "\"black\":13802,\"game\":null}],\"topGames\":[],\"opening\":{\"eco\":\"B00\","
+        + "\"name\":\"King's Pawn Game\"}}";
+
+    public static final String ENGINE_JSON = "{\"text\":\"Move e2 → e4 (e4): [0.3]. Depth 12.\","
+        + "\"eval\":0.3,\"move\":\"e2e4\",\"fen\":\"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1\","
+        + "\"depth\":12,\"winChance\":52.7,\"continuationArr\":[\"e7e5\",\"g1f3\",\"b8c6\"],"
+        + "\"mate\":null,\"centipawns\":\"30\",\"san\":\"e4\",\"lan\":\"e2e4\",\"turn\":\"w\","
+        + "\"color\":\"w\",\"piece\":\"p\",\"flags\":\"b\",\"isCapture\":false,\"isCastling\":false,"
+        + "\"isPromotion\":false,\"from\":\"e2\",\"to\":\"e4\",\"fromNumeric\":\"52\",\"toNumeric\":\"36\","
+        + "\"taken\":null,\"type\":\"bestmove\",\"pv\":[\"e2e4\",\"e7e5\",\"g1f3\"]}";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Explorer responses along MAIN_LINE keyed by the comma-separated UCI prefix,
+     * each offering the main line move and one alternative
+     */
+    public static Map<String, String> explorerResponses() {
+        Map<String, String> responses = new HashMap<>();
+        PositionTracker tracker = new PositionTracker();
+        for (String san : MAIN_LINE) {
+            String play = tracker.getAllMovesAsUci();
+            tracker.applyMoveSan(san);
+            responses.put(play, "{\"white\":1000,\"draws\":700,\"black\":500,\"moves\":["
+                + "{\"uci\":\"" + tracker.getLastMoveUci() + "\",\"san\":\"" + san + "\",\"white\":800,"
+                + "\"draws\":600,\"black\":400,\"averageRating\":2400},"
+                + "{\"uci\":\"a2a3\",\"san\":\"a3\",\"white\":200,\"draws\":100,\"black\":100,"
+                + "\"averageRating\":2350}]}");
+        }
+        return responses;
+    }
+}
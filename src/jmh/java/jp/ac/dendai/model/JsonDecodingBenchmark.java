@@ -0,0 +1,43 @@
+package jp.ac.dendai.model;
+
+import com.google.gson.Gson;
+import jp.ac.dendai.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the three API payloads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JsonDecodingBenchmark {
+    private final Gson gson = new Gson();
+
+    @Benchmark
+    public Game game() {
+        return gson.fromJson(BenchmarkData.GAME_JSON, Game.class);
+    }
+
+    @Benchmark
+    public OpeningResponse openingResponse() {
+        return gson.fromJson(BenchmarkData.OPENING_JSON, OpeningResponse.class);
+    }
+
+    @Benchmark
+    public EngineResponse engineResponse() {
+        return gson.fromJson(BenchmarkData.ENGINE_JSON, EngineResponse.class);
+    }
+}
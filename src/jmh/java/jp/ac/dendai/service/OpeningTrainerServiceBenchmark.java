@@ -0,0 +1,91 @@
+package jp.ac.dendai.service;
+
+import com.google.gson.Gson;
+import jp.ac.dendai.BenchmarkData;
+import jp.ac.dendai.api.OpeningExplorerApi;
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.engine.ChessEngine;
+import jp.ac.dendai.model.EngineResponse;
+import jp.ac.dendai.model.MoveAnalysis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end analysis with in-memory explorer and engine stubs, so only
+ * the service's own work (replay, position memo, scheduling, decoding) is
+ * measured. "Cold" uses a new service per call (empty position memo),
+ * "warm" a shared one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OpeningTrainerServiceBenchmark {
+    private static final String EMPTY = "{\"white\":0,\"draws\":0,\"black\":0,\"moves\":[]}";
+
+    private RequestScheduler scheduler;
+    private OpeningExplorerApi explorer;
+    private ChessEngine engine;
+    private OpeningTrainerService warm;
+
+    @Setup
+    public void setUp() throws IOException {
+        scheduler = new RequestScheduler();
+        // Measure the service, not the rate limit
+        scheduler.configure(RequestScheduler.EXPLORER, 1e9, 1_000_000);
+        Map<String, String> responses = BenchmarkData.explorerResponses();
+        explorer = uciMoves -> CompletableFuture.completedFuture(responses.getOrDefault(uciMoves, EMPTY));
+        EngineResponse best = new Gson().fromJson(BenchmarkData.ENGINE_JSON, EngineResponse.class);
+        engine = (fen, depth, lane) -> CompletableFuture.completedFuture(best);
+
+        warm = newService();
+        warm.analyzeGame(BenchmarkData.DEVIATION, "white");
+        warm.getTheoryLine(BenchmarkData.MAIN_LINE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.close();
+    }
+
+    @Benchmark
+    public List<MoveAnalysis> analyzeGameCold() throws IOException {
+        return newService().analyzeGame(BenchmarkData.DEVIATION, "white");
+    }
+
+    @Benchmark
+    public List<MoveAnalysis> analyzeGameWarm() throws IOException {
+        return warm.analyzeGame(BenchmarkData.DEVIATION, "white");
+    }
+
+    @Benchmark
+    public String[] theoryLineCold() throws IOException {
+        return newService().getTheoryLine(BenchmarkData.MAIN_LINE);
+    }
+
+    @Benchmark
+    public String[] theoryLineWarm() throws IOException {
+        return warm.getTheoryLine(BenchmarkData.MAIN_LINE);
+    }
+
+    private OpeningTrainerService newService() {
+        return new OpeningTrainerService(explorer, engine, null, scheduler);
+    }
+}
@@ -0,0 +1,68 @@
+package jp.ac.dendai.util;
+
+import jp.ac.dendai.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaying a game through PositionTracker, as the service and the book builder do
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PositionTrackerBenchmark {
+    private PositionTracker tracker;
+    private PositionTracker fullGame;
+
+    @Setup
+    public void setUp() {
+        tracker = new PositionTracker();
+        fullGame = new PositionTracker();
+        for (String san : BenchmarkData.MAIN_LINE) {
+            fullGame.applyMoveSan(san);
+        }
+    }
+
+    /**
+     * Bulk replay: one reused tracker, position key per ply
+     */
+    @Benchmark
+    public void replay(Blackhole blackhole) {
+        tracker.reset();
+        for (String san : BenchmarkData.MAIN_LINE) {
+            tracker.applyMoveSan(san);
+            blackhole.consume(tracker.getPositionKey());
+        }
+    }
+
+    /**
+     * Replay reading the explorer query (UCI prefix) at every ply
+     */
+    @Benchmark
+    public void replayWithUciPrefix(Blackhole blackhole) {
+        tracker.reset();
+        for (String san : BenchmarkData.MAIN_LINE) {
+            tracker.applyMoveSan(san);
+            blackhole.consume(tracker.getAllMovesAsUci());
+        }
+    }
+
+    @Benchmark
+    public PositionTracker copy() {
+        return fullGame.copy();
+    }
+}
@@ -0,0 +1,234 @@
+package jp.ac.dendai.load;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.util.MoveCodec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic opening theory and the games the simulated users played in it.
+ *
+ * The theory is a tree of random legal lines. Each new line follows an
+ * existing one for a random number of plies and then branches, so early
+ * positions are shared by many lines as in real openings. A user's game
+ * follows one line; with the deviation rate, the user leaves it at one of
+ * their own moves with a move outside theory. Both kinds continue with
+ * random legal moves once theory ends. Everything derives from the seed,
+ * so runs with the same options see the same games and requests.
+ * Not thread-safe; the games are generated before the run starts.
+ */
+final class GameMix {
+    static final int GAME_PLIES = 40;
+    private static final int MIN_THEORY_PLIES = 6;
+    private static final int MAX_THEORY_PLIES = 20;
+    // Explorer game count of every line through a move; OpeningTrainerService needs 100
+    private static final long GAMES_PER_LINE = 1000;
+    private static final String EMPTY = "{\"white\":0,\"draws\":0,\"black\":0,\"moves\":[]}";
+
+    /**
+     * A move of a theory line
+     */
+    private record Step(Move move, String uci, String san) {
+    }
+
+    /**
+     * A theory continuation and the number of games that played it
+     */
+    private static final class Continuation {
+        final String san;
+        long games;
+
+        Continuation(String san) {
+            this.san = san;
+        }
+    }
+
+    private final Random random;
+    private final double deviationRate;
+    private final List<List<Step>> lines = new ArrayList<>();
+    // Continuations by UCI move, keyed by the explorer's "play" parameter
+    private final Map<String, Map<String, Continuation>> theory = new HashMap<>();
+    private final Map<String, String> responses = new HashMap<>();
+    private final Gson gson = new Gson();
+
+    /**
+     * @param seed Seed of every random choice
+     * @param openings Number of theory lines
+     * @param deviationRate Share of games in which the user leaves theory
+     */
+    GameMix(long seed, int openings, double deviationRate) {
+        this.random = new Random(seed);
+        this.deviationRate = deviationRate;
+        for (int i = 0; i < openings; i++) {
+            addLine();
+        }
+        for (Map.Entry<String, Map<String, Continuation>> position : theory.entrySet()) {
+            responses.put(position.getKey(), toJson(position.getValue()));
+        }
+    }
+
+    /**
+     * Number of positions the explorer stub knows theory for
+     */
+    int getPositions() {
+        return theory.size();
+    }
+
+    /**
+     * Explorer answer for a position
+     * @param play Comma-separated UCI moves leading to the position
+     */
+    String explorerResponse(String play) {
+        return responses.getOrDefault(play, EMPTY);
+    }
+
+    /**
+     * Lichess export of a user's games, one NDJSON line per game
+     */
+    List<String> games(String username, int count) {
+        List<String> games = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            games.add(gson.toJson(game(username, i)));
+        }
+        return games;
+    }
+
+    private void addLine() {
+        List<Step> line = new ArrayList<>();
+        Board board = new Board();
+        if (!lines.isEmpty()) {
+            // Branch off an existing line
+            List<Step> parent = lines.get(random.nextInt(lines.size()));
+            for (Step step : parent.subList(0, random.nextInt(parent.size()))) {
+                line.add(step);
+                board.doMove(step.move());
+            }
+        }
+
+        int length = MIN_THEORY_PLIES + random.nextInt(MAX_THEORY_PLIES - MIN_THEORY_PLIES + 1);
+        while (line.size() < length) {
+            List<Move> legal = board.legalMoves();
+            if (legal.isEmpty()) break;
+            Move move = legal.get(random.nextInt(legal.size()));
+            line.add(new Step(move, uci(move), san(board, move)));
+            board.doMove(move);
+        }
+        if (line.isEmpty()) return;
+
+        StringBuilder play = new StringBuilder();
+        for (Step step : line) {
+            theory.computeIfAbsent(play.toString(), p -> new LinkedHashMap<>())
+                .computeIfAbsent(step.uci(), u -> new Continuation(step.san()))
+                .games += GAMES_PER_LINE;
+            if (play.length() > 0) play.append(',');
+            play.append(step.uci());
+        }
+        lines.add(line);
+    }
+
+    private Game game(String username, int index) {
+        List<Step> line = lines.get(random.nextInt(lines.size()));
+        boolean white = random.nextBoolean();
+
+        int deviation = -1;
+        if (random.nextDouble() < deviationRate) {
+            // One of the user's own moves within the line
+            int ownMoves = (line.size() + (white ? 1 : 0)) / 2;
+            if (ownMoves > 0) deviation = random.nextInt(ownMoves) * 2 + (white ? 0 : 1);
+        }
+
+        Board board = new Board();
+        StringBuilder play = new StringBuilder();
+        List<String> moves = new ArrayList<>();
+        for (int ply = 0; ply < GAME_PLIES; ply++) {
+            Move move;
+            if (ply < line.size() && (deviation < 0 || ply < deviation)) {
+                move = line.get(ply).move();
+            } else {
+                List<Move> legal = new ArrayList<>(board.legalMoves());
+                if (ply == deviation) {
+                    Map<String, Continuation> known = theory.getOrDefault(play.toString(), Map.of());
+                    legal.removeIf(m -> known.containsKey(uci(m)));
+                }
+                if (legal.isEmpty()) break;
+                move = legal.get(random.nextInt(legal.size()));
+            }
+            moves.add(san(board, move));
+            board.doMove(move);
+            if (play.length() > 0) play.append(',');
+            play.append(uci(move));
+        }
+
+        Game game = new Game();
+        game.setId(username + "-" + index);
+        game.setMoves(String.join(" ", moves));
+        game.setStatus("resign");
+        game.setWinner(random.nextBoolean() ? "white" : "black");
+        Game.Players players = new Game.Players();
+        players.setWhite(player(white ? username : "opponent"));
+        players.setBlack(player(white ? "opponent" : username));
+        game.setPlayers(players);
+        return game;
+    }
+
+    private static Game.Player player(String name) {
+        Game.Player.UserInfo user = new Game.Player.UserInfo();
+        user.setName(name);
+        user.setId(name.toLowerCase());
+        Game.Player player = new Game.Player();
+        player.setUser(user);
+        player.setRating(2000);
+        return player;
+    }
+
+    private static String uci(Move move) {
+        return MoveCodec.toUci(MoveCodec.encode(move));
+    }
+
+    private static String san(Board board, Move move) {
+        MoveList moves = new MoveList(board.getFen());
+        moves.add(move);
+        return moves.toSanArray()[0];
+    }
+
+    private String toJson(Map<String, Continuation> continuations) {
+        long total = continuations.values().stream().mapToLong(c -> c.games).sum();
+        JsonObject response = counts(total);
+        JsonArray moves = new JsonArray();
+        continuations.entrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getValue().games, a.getValue().games))
+            .forEach(entry -> {
+                JsonObject move = counts(entry.getValue().games);
+                move.addProperty("uci", entry.getKey());
+                move.addProperty("san", entry.getValue().san);
+                move.addProperty("averageRating", 2200);
+                moves.add(move);
+            });
+        response.add("moves", moves);
+        return gson.toJson(response);
+    }
+
+    /**
+     * Split a game count 40/30/30 into white wins, draws and black wins
+     */
+    private static JsonObject counts(long games) {
+        JsonObject counts = new JsonObject();
+        long white = games * 4 / 10;
+        long draws = games * 3 / 10;
+        counts.addProperty("white", white);
+        counts.addProperty("draws", draws);
+        counts.addProperty("black", games - white - draws);
+        return counts;
+    }
+}
@@ -0,0 +1,435 @@
+package jp.ac.dendai.load;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import jp.ac.dendai.api.ChessEngineClient;
+import jp.ac.dendai.api.FaultProfile;
+import jp.ac.dendai.api.HostConcurrencyLimiter;
+import jp.ac.dendai.api.LichessApi;
+import jp.ac.dendai.api.LichessApiClient;
+import jp.ac.dendai.api.OpeningExplorerClient;
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.cache.EngineCache;
+import jp.ac.dendai.engine.CachingEngine;
+import jp.ac.dendai.engine.RemoteEngine;
+import jp.ac.dendai.metrics.Histogram;
+import jp.ac.dendai.metrics.Metrics;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.server.TrainerServer;
+import jp.ac.dendai.service.BatchAnalyzer;
+import jp.ac.dendai.service.OpeningTrainerService;
+import jp.ac.dendai.util.ThreadPools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Load test of the whole analysis stack with many simulated users.
+ *
+ * Users arrive at random (Poisson) times at the given rate, or all at once,
+ * and each has its latest games fetched and analyzed: by calling the
+ * service in process, or with --server through a TrainerServer over HTTP.
+ * The Lichess, explorer and engine APIs are answered by
+ * {@link StubResponders}; the real request scheduler, position memo,
+ * engine cache and concurrency limits sit in between, so their queues show
+ * up as they would in production.
+ *
+ * A run reports throughput, the latency of each user's session measured
+ * from its scheduled arrival (so a saturated system cannot hide its
+ * backlog), time spent queued in the request scheduler, and heap and GC
+ * figures. --report appends the same as one JSON line, to compare runs.
+ *
+ * Usage: mvn -P load verify -Dload.args="--users=200 --rate=20 --games=10"
+ */
+public class LoadTest {
+    private static final int ENGINE_CACHE_SIZE = 100_000;
+
+    private int users = 200;
+    private double rate = 20;
+    private int games = 10;
+    private int openings = 200;
+    private double deviationRate = 0.5;
+    private boolean server = false;
+    private Duration lichessLatency = Duration.ofMillis(200);
+    private Duration explorerLatency = Duration.ofMillis(80);
+    private Duration engineLatency = Duration.ofMillis(300);
+    private Duration jitter = Duration.ofMillis(40);
+    private double errorRate = 0;
+    private double throttleRate = 0;
+    private double explorerRate = 10;
+    private double engineRate = 5;
+    private int threads = 0;
+    private Duration deadline = null;
+    private double hedgePercentile = 0;
+    private long seed = 1;
+    private Path report = null;
+
+    /**
+     * Games analyzed for one user, and how many of them failed
+     */
+    private record Outcome(int games, int failed) {
+    }
+
+    private interface Session {
+        Outcome run(String username) throws Exception;
+    }
+
+    public static void main(String[] args) {
+        LoadTest test = new LoadTest();
+        try {
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                }
+                String[] option = arg.substring(2).split("=", 2);
+                String value = option.length > 1 ? option[1] : "";
+                switch (option[0]) {
+                    case "users" -> test.users = Integer.parseInt(value);
+                    case "rate" -> test.rate = Double.parseDouble(value);
+                    case "games" -> test.games = Integer.parseInt(value);
+                    case "openings" -> test.openings = Integer.parseInt(value);
+                    case "deviation-rate" -> test.deviationRate = Double.parseDouble(value);
+                    case "server" -> test.server = true;
+                    case "lichess-latency" -> test.lichessLatency = Duration.ofMillis(Long.parseLong(value));
+                    case "explorer-latency" -> test.explorerLatency = Duration.ofMillis(Long.parseLong(value));
+                    case "engine-latency" -> test.engineLatency = Duration.ofMillis(Long.parseLong(value));
+                    case "jitter" -> test.jitter = Duration.ofMillis(Long.parseLong(value));
+                    case "error-rate" -> test.errorRate = Double.parseDouble(value);
+                    case "throttle-rate" -> test.throttleRate = Double.parseDouble(value);
+                    case "explorer-rate" -> test.explorerRate = Double.parseDouble(value);
+                    case "engine-rate" -> test.engineRate = Double.parseDouble(value);
+                    case "threads" -> test.threads = Integer.parseInt(value);
+                    case "deadline" -> test.deadline = Duration.ofMillis(Long.parseLong(value));
+                    case "hedge-percentile" -> test.hedgePercentile = Double.parseDouble(value);
+                    case "seed" -> test.seed = Long.parseLong(value);
+                    case "report" -> test.report = Paths.get(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (test.users < 1 || test.games < 1 || test.openings < 1) {
+                throw new IllegalArgumentException("users, games and openings must be at least 1");
+            }
+            if (test.server && test.games > TrainerServer.MAX_GAMES) {
+                throw new IllegalArgumentException("games must be at most " + TrainerServer.MAX_GAMES + " with --server");
+            }
+            test.run();
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("エラー: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        System.out.println("=== 負荷試験 ===");
+        System.out.println("ユーザー: " + users + ", 到着率: " + (rate > 0 ? rate + " 人/秒" : "一斉")
+            + ", 1人あたりの対局: " + games + ", 定石の系統: " + openings
+            + ", 逸脱率: " + deviationRate + ", 経路: " + (server ? "HTTPサーバー" : "サービス直接"));
+
+        GameMix mix = new GameMix(seed, openings, deviationRate);
+        StubResponders stubs = new StubResponders(mix, Map.of(
+            StubResponders.LICHESS, profile(lichessLatency),
+            StubResponders.EXPLORER, profile(explorerLatency),
+            StubResponders.ENGINE, profile(engineLatency)), new HostConcurrencyLimiter(), seed);
+        List<String> usernames = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String username = String.format("user%04d", i);
+            usernames.add(username);
+            stubs.addUser(username, mix.games(username, games));
+        }
+        System.out.println("定石の局面数: " + mix.getPositions());
+        System.out.println();
+
+        RequestScheduler scheduler = new RequestScheduler();
+        scheduler.configure(RequestScheduler.EXPLORER, explorerRate, burst(explorerRate));
+        scheduler.configure(RequestScheduler.ENGINE, engineRate, burst(engineRate));
+        scheduler.setHedgePercentile(hedgePercentile);
+        OpeningTrainerService trainer = new OpeningTrainerService(new OpeningExplorerClient(stubs),
+            new CachingEngine(new RemoteEngine(new ChessEngineClient(stubs), scheduler),
+                new EngineCache(ENGINE_CACHE_SIZE)), null, scheduler);
+        LichessApi lichess = new LichessApiClient(stubs);
+        ExecutorService analysis = ThreadPools.newTaskExecutor(threads, "analysis");
+        // One thread per active user, whatever the thread model of the code under test
+        ExecutorService sessions = Executors.newCachedThreadPool(ThreadPools.daemonThreads("load-user"));
+        ExecutorService requests = ThreadPools.newTaskExecutor(0, "server");
+        TrainerServer trainerServer = null;
+        try {
+            Session session;
+            if (server) {
+                trainerServer = new TrainerServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    trainer, lichess, analysis, requests);
+                trainerServer.start();
+                session = httpSession(trainerServer.getPort());
+            } else {
+                BatchAnalyzer batch = new BatchAnalyzer(trainer, analysis);
+                batch.setDeadline(deadline);
+                session = serviceSession(lichess, batch);
+            }
+            print(drive(usernames, session, sessions));
+        } finally {
+            if (trainerServer != null) trainerServer.close();
+            sessions.shutdownNow();
+            requests.shutdownNow();
+            analysis.shutdownNow();
+            scheduler.close();
+            stubs.close();
+        }
+    }
+
+    private Session serviceSession(LichessApi lichess, BatchAnalyzer batch) {
+        return username -> {
+            List<Game> downloaded;
+            try (Stream<Game> stream = lichess.streamGames(username, games)) {
+                downloaded = stream.collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            List<GameAnalysis> results = batch.analyzeAll(downloaded, username, null);
+            int failed = (int) results.stream().filter(result -> !result.isSuccessful()).count();
+            return new Outcome(results.size(), failed);
+        };
+    }
+
+    private Session httpSession(int port) {
+        HttpClient client = HttpClient.newHttpClient();
+        return username -> {
+            URI uri = URI.create("http://localhost:" + port + "/analyze/user?username=" + username + "&games=" + games);
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+            }
+            JsonArray results = JsonParser.parseString(response.body()).getAsJsonArray();
+            int failed = 0;
+            for (JsonElement result : results) {
+                if (result.getAsJsonObject().has("error")) failed++;
+            }
+            return new Outcome(results.size(), failed);
+        };
+    }
+
+    /**
+     * Start every user's session at its arrival time and wait until all are done
+     */
+    private JsonObject drive(List<String> usernames, Session session, ExecutorService sessions)
+            throws InterruptedException {
+        Histogram latency = new Histogram();
+        AtomicInteger failedUsers = new AtomicInteger();
+        AtomicInteger analyzed = new AtomicInteger();
+        AtomicInteger failedGames = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(usernames.size());
+        Random arrivals = new Random(seed);
+
+        Heap heap = Heap.start();
+        long start = System.nanoTime();
+        long arrival = start;
+        for (String username : usernames) {
+            long wait = arrival - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            long scheduled = arrival;
+            sessions.execute(() -> {
+                try {
+                    Outcome outcome = session.run(username);
+                    analyzed.addAndGet(outcome.games());
+                    failedGames.addAndGet(outcome.failed());
+                } catch (Exception e) {
+                    failedUsers.incrementAndGet();
+                } finally {
+                    latency.record(System.nanoTime() - scheduled);
+                    done.countDown();
+                }
+            });
+            if (rate > 0) arrival += (long) (-Math.log(1 - arrivals.nextDouble()) / rate * 1e9);
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        JsonObject result = new JsonObject();
+        result.add("options", new Gson().toJsonTree(options()));
+        result.addProperty("seconds", seconds);
+        result.addProperty("users", usernames.size());
+        result.addProperty("failedUsers", failedUsers.get());
+        result.addProperty("games", analyzed.get());
+        result.addProperty("failedGames", failedGames.get());
+        result.addProperty("usersPerSecond", usernames.size() / seconds);
+        result.addProperty("gamesPerSecond", analyzed.get() / seconds);
+        result.add("sessionSeconds", percentiles(latency, 1e-9));
+        JsonObject queued = new JsonObject();
+        for (String endpoint : List.of(RequestScheduler.EXPLORER, RequestScheduler.ENGINE)) {
+            queued.add(endpoint, percentiles(Metrics.shared().timer("api_queue_seconds", "endpoint", endpoint), 1));
+        }
+        result.add("queueSeconds", queued);
+        if (server) {
+            result.add("serverSeconds", percentiles(
+                Metrics.shared().timer("server_request_seconds", "path", "/analyze/user"), 1));
+        }
+        heap.finish(result);
+        return result;
+    }
+
+    private void print(JsonObject result) throws IOException {
+        System.out.printf("所要時間: %.1f 秒%n", result.get("seconds").getAsDouble());
+        System.out.println("ユーザー: " + result.get("users").getAsInt()
+            + " (失敗: " + result.get("failedUsers").getAsInt() + ")");
+        System.out.println("対局: " + result.get("games").getAsInt()
+            + " (エラー: " + result.get("failedGames").getAsInt() + ")");
+        System.out.printf("スループット: %.2f 人/秒, %.1f 局/秒%n",
+            result.get("usersPerSecond").getAsDouble(), result.get("gamesPerSecond").getAsDouble());
+        System.out.println("1人あたりの所要時間: " + format(result.getAsJsonObject("sessionSeconds")));
+        JsonObject queued = result.getAsJsonObject("queueSeconds");
+        for (String endpoint : queued.keySet()) {
+            System.out.println("送信待ち (" + endpoint + "): " + format(queued.getAsJsonObject(endpoint)));
+        }
+        if (result.has("serverSeconds")) {
+            System.out.println("サーバーの応答時間: " + format(result.getAsJsonObject("serverSeconds")));
+        }
+        System.out.printf("ヒープ: 最大 %d MB, 終了時 %d MB (上限 %d MB)%n",
+            result.get("peakHeapBytes").getAsLong() >> 20, result.get("heapBytes").getAsLong() >> 20,
+            result.get("maxHeapBytes").getAsLong() >> 20);
+        System.out.println("GC: " + result.get("gcCount").getAsLong() + " 回, 合計 "
+            + result.get("gcMillis").getAsLong() + " ミリ秒");
+
+        if (report != null) {
+            Files.writeString(report, result + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            System.out.println();
+            System.out.println("結果を " + report + " に追記しました");
+        }
+    }
+
+    private Map<String, Object> options() {
+        Map<String, Object> options = new LinkedHashMap<>();
+        options.put("users", users);
+        options.put("rate", rate);
+        options.put("games", games);
+        options.put("openings", openings);
+        options.put("deviationRate", deviationRate);
+        options.put("server", server);
+        options.put("lichessLatencyMillis", lichessLatency.toMillis());
+        options.put("explorerLatencyMillis", explorerLatency.toMillis());
+        options.put("engineLatencyMillis", engineLatency.toMillis());
+        options.put("jitterMillis", jitter.toMillis());
+        options.put("errorRate", errorRate);
+        options.put("throttleRate", throttleRate);
+        options.put("explorerRate", explorerRate);
+        options.put("engineRate", engineRate);
+        options.put("threads", threads);
+        if (deadline != null) options.put("deadlineMillis", deadline.toMillis());
+        options.put("hedgePercentile", hedgePercentile);
+        options.put("seed", seed);
+        return options;
+    }
+
+    private FaultProfile profile(Duration latency) {
+        return new FaultProfile(latency, jitter, errorRate, throttleRate, Duration.ofSeconds(1), seed);
+    }
+
+    /**
+     * Burst matching the default scheduler configuration; a rate of 0 lifts the limit
+     */
+    private static int burst(double rate) {
+        return Math.max(1, (int) Math.ceil(rate));
+    }
+
+    /**
+     * @param unit Factor converting recorded values to seconds
+     */
+    private static JsonObject percentiles(Histogram histogram, double unit) {
+        JsonObject percentiles = new JsonObject();
+        percentiles.addProperty("count", histogram.getCount());
+        percentiles.addProperty("p50", histogram.percentile(0.50) * unit);
+        percentiles.addProperty("p95", histogram.percentile(0.95) * unit);
+        percentiles.addProperty("p99", histogram.percentile(0.99) * unit);
+        return percentiles;
+    }
+
+    private static String format(JsonObject percentiles) {
+        return String.format("p50 %.3f 秒, p95 %.3f 秒, p99 %.3f 秒 (%d 件)",
+            percentiles.get("p50").getAsDouble(), percentiles.get("p95").getAsDouble(),
+            percentiles.get("p99").getAsDouble(), percentiles.get("count").getAsLong());
+    }
+
+    /**
+     * Heap and GC figures over one run
+     */
+    private static final class Heap {
+        private final long gcCount;
+        private final long gcMillis;
+
+        private Heap(long gcCount, long gcMillis) {
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        static Heap start() {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+            }
+            return new Heap(gcCount(), gcMillis());
+        }
+
+        void finish(JsonObject result) {
+            // Sum of each pool's own peak, so an upper bound of the whole heap's
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            result.addProperty("peakHeapBytes", peak);
+            result.addProperty("heapBytes", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+            result.addProperty("maxHeapBytes", Runtime.getRuntime().maxMemory());
+            result.addProperty("gcCount", gcCount() - gcCount);
+            result.addProperty("gcMillis", gcMillis() - gcMillis);
+        }
+
+        private static long gcCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long gcMillis() {
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package jp.ac.dendai.load;
+
+import jp.ac.dendai.api.FaultProfile;
+import jp.ac.dendai.api.HostConcurrencyLimiter;
+import jp.ac.dendai.api.HttpStatusException;
+import jp.ac.dendai.api.Transport;
+import jp.ac.dendai.util.ThreadPools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Stands in for the Lichess game export, the Opening Explorer and the
+ * engine API, answering from a {@link GameMix} with each host's simulated
+ * latency and failures.
+ *
+ * Like {@link jp.ac.dendai.api.ReplayTransport}, requests go through the
+ * per-host concurrency limiter and answers are delayed on a timer rather
+ * than a sleeping thread, so the stubs themselves add no queueing of their
+ * own. Requests to any other host, or for an unknown user, fail with 404.
+ */
+final class StubResponders implements Transport, Closeable {
+    static final String LICHESS = "lichess.org";
+    static final String EXPLORER = "explorer.lichess.ovh";
+    static final String ENGINE = "chess-api.com";
+
+    private static final String BEST_MOVE = "{\"text\":\"stub\",\"eval\":0.3,\"depth\":12,"
+        + "\"from\":\"g1\",\"to\":\"f3\",\"san\":\"Nf3\",\"pv\":[\"g1f3\"]}";
+
+    private final GameMix mix;
+    private final Map<String, FaultProfile> profiles;
+    private final Map<String, List<String>> games = new ConcurrentHashMap<>();
+    private final HostConcurrencyLimiter limiter;
+    private final Random random;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param mix Theory the explorer answers from
+     * @param profiles Latency and failures by host
+     * @param limiter Per-host concurrency limiter, as the live transport would use
+     * @param seed Seed of the latency jitter and failures
+     */
+    StubResponders(GameMix mix, Map<String, FaultProfile> profiles, HostConcurrencyLimiter limiter, long seed) {
+        this.mix = mix;
+        this.profiles = profiles;
+        this.limiter = limiter;
+        this.random = new Random(seed);
+        this.timer = Executors.newSingleThreadScheduledExecutor(ThreadPools.daemonThreads("stub-responders"));
+    }
+
+    /**
+     * Serve a user's games from the game export
+     * @param ndjson One line per game, newest first
+     */
+    void addUser(String username, List<String> ndjson) {
+        games.put(username.toLowerCase(), ndjson);
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(URI uri, String accept) {
+        return limiter.runAsync(uri.getHost(), () -> respond(uri));
+    }
+
+    @Override
+    public CompletableFuture<String> postJsonAsync(URI uri, String json) {
+        return limiter.runAsync(uri.getHost(), () -> respond(uri));
+    }
+
+    @Override
+    public Stream<String> getLines(URI uri, String accept) throws IOException {
+        HostConcurrencyLimiter.Permit permit = limiter.acquire(uri.getHost());
+        try {
+            long delay = nextDelayNanos(profile(uri));
+            if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+            return answer(uri).lines();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while requesting " + uri);
+        } finally {
+            permit.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private CompletableFuture<String> respond(URI uri) {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        Runnable complete = () -> {
+            try {
+                response.complete(answer(uri));
+            } catch (IOException e) {
+                response.completeExceptionally(e);
+            }
+        };
+
+        long delay = nextDelayNanos(profile(uri));
+        if (delay > 0) {
+            timer.schedule(complete, delay, TimeUnit.NANOSECONDS);
+        } else {
+            complete.run();
+        }
+        return response;
+    }
+
+    private String answer(URI uri) throws IOException {
+        FaultProfile profile = profile(uri);
+        double roll;
+        synchronized (random) {
+            roll = random.nextDouble();
+        }
+        if (roll < profile.getThrottleRate()) {
+            throw new HttpStatusException(429, profile.getRetryAfter());
+        }
+        if (roll < profile.getThrottleRate() + profile.getErrorRate()) {
+            throw new HttpStatusException(500);
+        }
+
+        switch (uri.getHost()) {
+            case EXPLORER -> {
+                String play = parameter(uri, "play");
+                return mix.explorerResponse(play != null ? play : "");
+            }
+            case ENGINE -> {
+                return BEST_MOVE;
+            }
+            case LICHESS -> {
+                String path = uri.getPath();
+                List<String> lines = games.get(path.substring(path.lastIndexOf('/') + 1).toLowerCase());
+                if (lines == null) throw new HttpStatusException(404);
+                String max = parameter(uri, "max");
+                int count = max != null ? Math.min(lines.size(), Integer.parseInt(max)) : lines.size();
+                return String.join("\n", lines.subList(0, count));
+            }
+            default -> throw new HttpStatusException(404);
+        }
+    }
+
+    private FaultProfile profile(URI uri) {
+        return profiles.getOrDefault(uri.getHost(), FaultProfile.NONE);
+    }
+
+    private long nextDelayNanos(FaultProfile profile) {
+        long delay = profile.getLatency().toNanos();
+        long jitter = profile.getJitter().toNanos();
+        if (jitter > 0) {
+            synchronized (random) {
+                delay += (long) (random.nextDouble() * jitter);
+            }
+        }
+        return delay;
+    }
+
+    private static String parameter(URI uri, String name) {
+        String query = uri.getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            if (key.equals(name)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+}
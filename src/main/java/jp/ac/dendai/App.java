@@ -1,86 +1,389 @@
 package jp.ac.dendai;
 
+import jp.ac.dendai.api.ChessEngineClient;
+import jp.ac.dendai.api.HostConcurrencyLimiter;
+import jp.ac.dendai.api.HttpTransport;
+import jp.ac.dendai.api.LichessApi;
 import jp.ac.dendai.api.LichessApiClient;
+import jp.ac.dendai.api.OpeningExplorerClient;
+import jp.ac.dendai.api.RecordingTransport;
+import jp.ac.dendai.api.ReplayTransport;
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.api.Transport;
+import jp.ac.dendai.archive.AnalysisJournal;
+import jp.ac.dendai.archive.GameArchive;
+import jp.ac.dendai.archive.GameFile;
+import jp.ac.dendai.book.OpeningBook;
+import jp.ac.dendai.cache.EngineCache;
+import jp.ac.dendai.cache.ExplorerCache;
+import jp.ac.dendai.engine.CachingEngine;
+import jp.ac.dendai.engine.ChessEngine;
+import jp.ac.dendai.engine.LocalSearchEngine;
+import jp.ac.dendai.engine.RemoteEngine;
+import jp.ac.dendai.metrics.Metrics;
 import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
 import jp.ac.dendai.model.MoveAnalysis;
+import jp.ac.dendai.output.ResultWriter;
+import jp.ac.dendai.server.TrainerServer;
+import jp.ac.dendai.service.AnalysisPipeline;
+import jp.ac.dendai.service.BatchAnalyzer;
 import jp.ac.dendai.service.OpeningTrainerService;
-import com.google.gson.Gson;
+import jp.ac.dendai.service.RepertoireReport;
+import jp.ac.dendai.util.ThreadPools;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class App {
+    private static final Path DATA_DIR = Paths.get(System.getProperty("user.home"), ".chess-trainer");
+    private static final Duration EXPLORER_CACHE_TTL = Duration.ofDays(30);
+    private static final int ENGINE_CACHE_SIZE = 100_000;
+    private static final int DEFAULT_ANALYSIS_THREADS = 64;
+
     public static void main(String[] args) {
         try {
-            Gson gson = new Gson();
-
-            // Default values
-            String username = "def-e";
-            String playerColor = null;
-            int numGames = 1;
-
-            // Parse command line arguments
-            if (args.length > 0) username = args[0];
-            if (args.length > 1) playerColor = args[1];
-            if (args.length > 2) numGames = Integer.parseInt(args[2]);
+            AppOptions options = AppOptions.parse(args);
+            String username = options.getUsername();
 
             System.out.println("=== チェス定石トレーナー ===");
-            System.out.println("ユーザー: " + username + " の対局を取得中");
+            if (options.getFile() != null) {
+                System.out.println("ファイル: " + options.getFile() + " からユーザー: " + username + " の対局を読み込み中");
+            } else if (options.getServePort() < 0) {
+                System.out.println("ユーザー: " + username + " の対局を取得中");
+            }
             System.out.println();
 
-            // Fetch game
-            LichessApiClient lichessClient = new LichessApiClient();
-            String response = lichessClient.fetchGames(username, numGames);
-            String firstLine = response.split("\n")[0];
-            Game game = gson.fromJson(firstLine, Game.class);
-
-            // Auto-detect player color
-            if (playerColor == null) {
-                playerColor = game.getPlayerColor(username);
-                if (playerColor == null) {
-                    System.err.println("エラー: プレイヤーの手番を判定できませんでした．");
-                    return;
+            Transport transport = openTransport(options);
+            LichessApi lichessClient = new LichessApiClient(transport);
+            // Recording and replaying must see every request, so skip the persistent caches
+            boolean offline = options.getRecord() != null || options.getReplay() != null;
+            ExplorerCache explorerCache = offline ? null : openExplorerCache(options.getCacheMemory());
+            RequestScheduler scheduler = new RequestScheduler();
+            scheduler.setHedgePercentile(options.getHedgePercentile());
+            LocalSearchEngine localEngine = options.isLocalEngine()
+                ? new LocalSearchEngine(options.getEngineTime(), options.getEngineThreads()) : null;
+            EngineCache engineCache = offline ? new EngineCache(ENGINE_CACHE_SIZE)
+                : openEngineCache(options.isLocalEngine()
+                    ? "local-" + options.getEngineTime().toMillis() + "ms" : "remote");
+            ChessEngine engine = new CachingEngine(localEngine != null
+                ? localEngine : new RemoteEngine(new ChessEngineClient(transport), scheduler), engineCache,
+                localEngine != null);
+            ExecutorService executor = ThreadPools.newTaskExecutor(options.getThreads(), "analysis");
+            ScheduledExecutorService metricsWriter = startMetricsWriter(options);
+            try {
+                OpeningTrainerService trainer = options.getBook() != null
+                    ? new OpeningTrainerService(openBook(options.getBook()), engine)
+                    : new OpeningTrainerService(new OpeningExplorerClient(transport), engine, explorerCache, scheduler);
+                if (options.getServePort() >= 0) {
+                    serve(options.getServePort(), trainer, lichessClient, executor);
+                } else {
+                    BatchAnalyzer batch = new BatchAnalyzer(trainer, executor);
+                    batch.setDeadline(options.getDeadline());
+                    int analysisThreads = options.getThreads() > 0 ? options.getThreads() : DEFAULT_ANALYSIS_THREADS;
+                    analyzeGames(options, lichessClient, new AnalysisPipeline(batch, trainer,
+                        analysisThreads, options.getEngineWorkers(), options.getQueueSize()));
                 }
+            } finally {
+                executor.shutdownNow();
+                if (metricsWriter != null) metricsWriter.shutdownNow();
+                writeMetrics(options.getMetrics());
+                scheduler.close();
+                if (localEngine != null) localEngine.close();
+                if (explorerCache != null) explorerCache.close();
+                engineCache.close();
+                if (transport instanceof ReplayTransport replay) replay.close();
             }
 
-            System.out.println("対局ID: " + game.getId());
-            if (game.getOpening() != null && game.getOpening().getName() != null) {
-                System.out.println("オープニング: " + game.getOpening().getName());
+        } catch (IllegalArgumentException e) {
+            System.err.println("エラー: " + e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Analyze games while they are downloaded
+     */
+    private static void analyzeGames(AppOptions options, LichessApi lichessClient, AnalysisPipeline pipeline)
+            throws IOException, InterruptedException {
+        String username = options.getUsername();
+        try (Stream<Game> games = openGames(lichessClient, options);
+             ResultWriter output = options.getOutput() != null
+                 ? ResultWriter.open(options.getOutput(), options.getOutputFormat()) : null;
+             AnalysisJournal journal = options.getJournal() != null
+                 ? AnalysisJournal.open(options.getJournal(), options.isResume()) : null) {
+            if (journal != null && journal.getCompletedCount() > 0) {
+                System.out.println("ジャーナルに記録済みの " + journal.getCompletedCount() + " 局は解析を省略します");
             }
+            System.out.println("対局を解析中");
+            System.out.println();
 
-            // Display player information
-            if (game.getPlayers() != null) {
-                System.out.println();
-                if (game.getPlayers().getWhite() != null &&
-                    game.getPlayers().getWhite().getUser() != null) {
-                    System.out.println("白: " + game.getPlayers().getWhite().getUser().getId() +
-                                       " (" + game.getPlayers().getWhite().getRating() + ")");
-                }
-                if (game.getPlayers().getBlack() != null &&
-                    game.getPlayers().getBlack().getUser() != null) {
-                    System.out.println("黒: " + game.getPlayers().getBlack().getUser().getId() +
-                                       " (" + game.getPlayers().getBlack().getRating() + ")");
-                }
+            Queue<GameAnalysis> results = new ConcurrentLinkedQueue<>();
+            Consumer<GameAnalysis> sink;
+            if (options.getRepertoire() > 0) {
+                // Summarize all games instead of showing each one
+                sink = results::add;
+            } else if (output != null) {
+                sink = result -> { };
+            } else {
+                // Display each game as soon as it finishes
+                sink = App::displayGame;
+            }
+            if (output != null) {
+                sink = sink.andThen(result -> {
+                    try {
+                        output.write(result);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            Consumer<GameAnalysis> report = sink;
+            if (journal != null) {
+                sink = sink.andThen(result -> {
+                    try {
+                        journal.append(result);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
             }
 
-            System.out.println("\n対局を解析中");
+            // Journalled games skip the pipeline; their results are reported once it is done
+            List<GameAnalysis> reused = new ArrayList<>();
+            Stream<Game> pending = journal == null ? games : games.filter(game -> {
+                GameAnalysis done = journal.takeCompleted(game.getId());
+                if (done == null) return true;
+                reused.add(done);
+                return false;
+            });
+            int count = pipeline.run(pending, username, options.getPlayerColor(), sink);
+            reused.forEach(report);
+            count += reused.size();
+            if (count == 0) {
+                System.out.println("対局が見つかりませんでした．");
+            } else if (options.getRepertoire() > 0) {
+                displayRepertoire(RepertoireReport.build(results), options.getRepertoire());
+            }
+            if (!reused.isEmpty()) {
+                System.out.println("ジャーナルから " + reused.size() + " 局の結果を再利用しました");
+            }
+            if (output != null) {
+                System.out.println(count + " 局の結果を " + options.getOutput() + " に書き出しました");
+            }
+        }
+    }
+
+    /**
+     * Serve analyses over HTTP until the process is stopped, keeping the caches warm
+     */
+    private static void serve(int port, OpeningTrainerService trainer, LichessApi lichessClient,
+                              ExecutorService executor) throws IOException, InterruptedException {
+        ExecutorService requests = ThreadPools.newTaskExecutor(0, "server");
+        TrainerServer server = new TrainerServer(new InetSocketAddress(port), trainer, lichessClient,
+            executor, requests);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            requests.shutdownNow();
+            stopped.countDown();
+            // Let main close the caches and write the metrics before the JVM halts
+            try {
+                main.join(5000);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }, "server-shutdown"));
+
+        server.start();
+        System.out.println("ポート " + server.getPort() + " で待機中 (Ctrl+C で終了)");
+        stopped.await();
+    }
+
+    private static synchronized void displayGame(GameAnalysis result) {
+        Game game = result.getGame();
+
+        System.out.println("対局ID: " + game.getId());
+        if (game.getOpening() != null && game.getOpening().getName() != null) {
+            System.out.println("オープニング: " + game.getOpening().getName());
+        }
+
+        // Display player information
+        if (game.getPlayers() != null) {
+            System.out.println();
+            if (game.getPlayers().getWhite() != null &&
+                game.getPlayers().getWhite().getUser() != null) {
+                System.out.println("白: " + game.getPlayers().getWhite().getUser().getId() +
+                                   " (" + game.getPlayers().getWhite().getRating() + ")");
+            }
+            if (game.getPlayers().getBlack() != null &&
+                game.getPlayers().getBlack().getUser() != null) {
+                System.out.println("黒: " + game.getPlayers().getBlack().getUser().getId() +
+                                   " (" + game.getPlayers().getBlack().getRating() + ")");
+            }
+        }
+        System.out.println();
+
+        if (!result.isSuccessful()) {
+            System.err.println("エラー: " + result.getError());
+            System.out.println();
+            return;
+        }
+
+        displayAnalyses(result.getAnalyses(), result.getTheoryLine());
+        if (result.isTruncated()) {
+            System.out.println("※ 制限時間を超えたため，解析を途中で打ち切りました．");
             System.out.println();
+        }
+    }
 
-            // Parse moves
-            String[] moves = game.getMoves().split(" ");
+    /**
+     * Stream the games to analyze: straight from Lichess, with --sync from
+     * the user's local archive after fetching only the games it lacks, or
+     * with --file every game of the user in a local file
+     */
+    private static Stream<Game> openGames(LichessApi lichessClient, AppOptions options) throws IOException {
+        String username = options.getUsername();
+        if (options.getFile() != null) {
+            GameFile file = new GameFile(options.getFile());
+            return file.stream(Runtime.getRuntime().availableProcessors())
+                .filter(game -> game.getPlayerColor(username) != null)
+                .onClose(() -> {
+                    if (file.getSkipped() > 0) {
+                        System.out.println("読み込めなかった " + file.getSkipped() + " 局を読み飛ばしました");
+                    }
+                });
+        }
+        if (!options.isSync()) {
+            return lichessClient.streamGames(username, options.getNumGames());
+        }
 
-            // Analyze game
-            OpeningTrainerService trainer = new OpeningTrainerService();
-            List<MoveAnalysis> analyses = trainer.analyzeGame(moves, playerColor);
-            String[] theoryLine = trainer.getTheoryLine(moves);
+        GameArchive archive = GameArchive.open(DATA_DIR.resolve("archive"), username);
+        int added = archive.sync(lichessClient, username);
+        System.out.println("アーカイブに " + added + " 局を追加しました");
+        return archive.stream().limit(options.getNumGames());
+    }
 
-            // Display results
-            displayAnalyses(analyses, theoryLine);
+    private static Transport openTransport(AppOptions options) {
+        if (options.getReplay() != null) {
+            return new ReplayTransport(options.getReplay(), options.getFaultProfile());
+        }
+        Transport transport = new HttpTransport(options.getConnectTimeout(),
+            options.getRequestTimeout(), HostConcurrencyLimiter.shared());
+        if (options.getRecord() != null) {
+            transport = new RecordingTransport(transport, options.getRecord());
+        }
+        return transport;
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Rewrite the metrics file periodically so it can be read while the run goes on
+     */
+    private static ScheduledExecutorService startMetricsWriter(AppOptions options) {
+        long interval = options.getMetricsInterval().toMillis();
+        if (options.getMetrics() == null || interval <= 0) return null;
+
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(
+            ThreadPools.daemonThreads("metrics"));
+        writer.scheduleAtFixedRate(() -> writeMetrics(options.getMetrics()),
+            interval, interval, TimeUnit.MILLISECONDS);
+        return writer;
+    }
+
+    private static void writeMetrics(Path file) {
+        if (file == null) return;
+        try {
+            Metrics.shared().writeTo(file, Metrics.formatOf(file));
+        } catch (IOException e) {
+            System.err.println("警告: メトリクスを書き出せませんでした (" + e.getMessage() + ")");
+        }
+    }
+
+    private static ExplorerCache openExplorerCache(long maxBytes) {
+        try {
+            return ExplorerCache.open(DATA_DIR.resolve("explorer-cache.bin"), EXPLORER_CACHE_TTL, maxBytes);
+        } catch (IOException e) {
+            System.err.println("警告: 定石キャッシュを開けませんでした (" + e.getMessage() + ")");
+            return null;
         }
     }
 
+    /**
+     * @param backend Engine name (with its time budget); results of different engines are never mixed
+     */
+    private static EngineCache openEngineCache(String backend) {
+        try {
+            return EngineCache.open(DATA_DIR.resolve("engine-cache-" + backend + ".bin"), ENGINE_CACHE_SIZE);
+        } catch (IOException e) {
+            System.err.println("警告: エンジンキャッシュを開けませんでした (" + e.getMessage() + ")");
+            return new EngineCache(ENGINE_CACHE_SIZE);
+        }
+    }
+
+    private static OpeningBook openBook(Path file) {
+        try {
+            return OpeningBook.open(file);
+        } catch (IOException e) {
+            // Unlike the cache, a book the user asked for is not optional
+            throw new IllegalArgumentException("定石ブックを開けませんでした (" + e.getMessage() + ")");
+        }
+    }
+
+    private static void displayRepertoire(RepertoireReport report, int limit) {
+        System.out.println("=== レパートリー分析 (" + report.getGames() + " 局) ===");
+        displayDeviations("白番", report.getWhite(), limit);
+        displayDeviations("黒番", report.getBlack(), limit);
+    }
+
+    private static void displayDeviations(String title, List<RepertoireReport.Entry> entries, int limit) {
+        System.out.println();
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        System.out.println(title + "で定石から外れた局面");
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        if (entries.isEmpty()) {
+            System.out.println("   定石から外れた対局はありません");
+            return;
+        }
+
+        for (RepertoireReport.Entry entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            List<String> line = entry.getLine();
+            StringBuilder moves = new StringBuilder();
+            for (int ply = 0; ply <= line.size(); ply++) {
+                if (ply % 2 == 0) moves.append(ply / 2 + 1).append(". ");
+                moves.append(ply < line.size() ? line.get(ply) : "[" + entry.getMove() + "]").append(' ');
+            }
+
+            System.out.println();
+            System.out.println("   " + moves.toString().trim());
+            System.out.println("   " + entry.getCount() + " / " + entry.getGamesReaching() + " 局"
+                + "  (勝 " + entry.getWins() + " / 分 " + entry.getDraws() + " / 負 " + entry.getLosses() + ")");
+            if (entry.getBookMove() != null) {
+                System.out.println("   💡 推奨手: " + entry.getBookMove());
+            }
+            if (entry.getPunishment() != null) {
+                System.out.println("   ⚔️  相手の最善応手: " + entry.getPunishment());
+            }
+        }
+        System.out.println();
+    }
+
     private static void displayAnalyses(List<MoveAnalysis> analyses, String[] theoryLine) {
         System.out.println("=== 序盤解析結果 ===\n");
 
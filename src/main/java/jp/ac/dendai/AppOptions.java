@@ -0,0 +1,273 @@
+package jp.ac.dendai;
+
+import jp.ac.dendai.api.FaultProfile;
+import jp.ac.dendai.api.HttpTransport;
+import jp.ac.dendai.cache.ExplorerCache;
+import jp.ac.dendai.output.ResultWriter;
+import jp.ac.dendai.service.AnalysisPipeline;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Command line options: positional [username] [color] [num_games]
+ * followed by any number of --name=value options.
+ */
+public class AppOptions {
+    private String username = "def-e";
+    private String playerColor = null;
+    private int numGames = 1;
+    private int threads = 0;
+    private Duration connectTimeout = HttpTransport.DEFAULT_CONNECT_TIMEOUT;
+    private Duration requestTimeout = HttpTransport.DEFAULT_REQUEST_TIMEOUT;
+    private boolean localEngine = false;
+    private Duration engineTime = Duration.ofSeconds(2);
+    private int engineThreads = Runtime.getRuntime().availableProcessors();
+    private int engineWorkers = 8;
+    private int queueSize = AnalysisPipeline.DEFAULT_QUEUE_CAPACITY;
+    private Path book = null;
+    private long cacheMemory = ExplorerCache.DEFAULT_MAX_BYTES;
+    private Path record = null;
+    private Path replay = null;
+    private Duration latency = Duration.ZERO;
+    private Duration jitter = Duration.ZERO;
+    private double errorRate = 0;
+    private double throttleRate = 0;
+    private long seed = 1;
+    private boolean sync = false;
+    private Path file = null;
+    private int repertoire = 0;
+    private int servePort = -1;
+    private Path output = null;
+    private ResultWriter.Format outputFormat = null;
+    private Path journal = null;
+    private boolean resume = false;
+    private Path metrics = null;
+    private Duration metricsInterval = Duration.ZERO;
+    private Duration deadline = null;
+    private double hedgePercentile = 0;
+
+    public static AppOptions parse(String[] args) {
+        AppOptions options = new AppOptions();
+        int position = 0;
+
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                options.setOption(arg.substring(2));
+                continue;
+            }
+            switch (position++) {
+                case 0 -> options.username = arg;
+                case 1 -> options.playerColor = arg;
+                case 2 -> options.numGames = Integer.parseInt(arg);
+                default -> throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+        }
+        if (options.resume && options.journal == null) {
+            throw new IllegalArgumentException("--resume requires --journal");
+        }
+        return options;
+    }
+
+    private void setOption(String option) {
+        int eq = option.indexOf('=');
+        String name = eq < 0 ? option : option.substring(0, eq);
+        String value = eq < 0 ? "" : option.substring(eq + 1);
+
+        switch (name) {
+            case "threads" -> threads = Integer.parseInt(value);
+            case "connect-timeout" -> connectTimeout = Duration.ofSeconds(Long.parseLong(value));
+            case "request-timeout" -> requestTimeout = Duration.ofSeconds(Long.parseLong(value));
+            case "engine" -> localEngine = parseEngine(value);
+            case "engine-time" -> engineTime = Duration.ofMillis(Long.parseLong(value));
+            case "engine-threads" -> engineThreads = Integer.parseInt(value);
+            case "engine-workers" -> engineWorkers = Integer.parseInt(value);
+            case "queue-size" -> queueSize = Integer.parseInt(value);
+            case "book" -> book = Paths.get(value);
+            case "cache-memory" -> cacheMemory = Long.parseLong(value) << 20;
+            case "record" -> record = Paths.get(value);
+            case "replay" -> replay = Paths.get(value);
+            case "latency" -> latency = Duration.ofMillis(Long.parseLong(value));
+            case "jitter" -> jitter = Duration.ofMillis(Long.parseLong(value));
+            case "error-rate" -> errorRate = parseRate(value);
+            case "throttle-rate" -> throttleRate = parseRate(value);
+            case "seed" -> seed = Long.parseLong(value);
+            case "sync" -> sync = true;
+            case "file" -> file = Paths.get(value);
+            case "serve" -> servePort = value.isEmpty() ? 8080 : Integer.parseInt(value);
+            case "repertoire" -> repertoire = value.isEmpty() ? 20 : Integer.parseInt(value);
+            case "output" -> output = Paths.get(value);
+            case "output-format" -> outputFormat = parseOutputFormat(value);
+            case "journal" -> journal = Paths.get(value);
+            case "resume" -> resume = true;
+            case "metrics" -> metrics = Paths.get(value);
+            case "metrics-interval" -> metricsInterval = Duration.ofSeconds(Long.parseLong(value));
+            case "deadline" -> deadline = Duration.ofMillis(Long.parseLong(value));
+            case "hedge-percentile" -> hedgePercentile = parsePercentile(value);
+            default -> throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+    private static boolean parseEngine(String value) {
+        return switch (value) {
+            case "local" -> true;
+            case "remote" -> false;
+            default -> throw new IllegalArgumentException("Unknown engine: " + value);
+        };
+    }
+
+    private static ResultWriter.Format parseOutputFormat(String value) {
+        return switch (value) {
+            case "ndjson" -> ResultWriter.Format.NDJSON;
+            case "csv" -> ResultWriter.Format.CSV;
+            default -> throw new IllegalArgumentException("Unknown output format: " + value);
+        };
+    }
+
+    private static double parseRate(String value) {
+        double rate = Double.parseDouble(value);
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Rate must be between 0 and 1: " + value);
+        }
+        return rate;
+    }
+
+    private static double parsePercentile(String value) {
+        double percentile = Double.parseDouble(value);
+        if (percentile < 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be at least 0 and below 1: " + value);
+        }
+        return percentile;
+    }
+
+    public String getUsername() { return username; }
+
+    public String getPlayerColor() { return playerColor; }
+
+    public int getNumGames() { return numGames; }
+
+    /**
+     * Number of games walked through the opening explorer concurrently
+     * (0 = 64 per run; in server mode, virtual threads when available)
+     */
+    public int getThreads() { return threads; }
+
+    public Duration getConnectTimeout() { return connectTimeout; }
+
+    /**
+     * Time allowed for one HTTP request until its response starts
+     */
+    public Duration getRequestTimeout() { return requestTimeout; }
+
+    /**
+     * True to use the built-in search instead of chess-api.com
+     */
+    public boolean isLocalEngine() { return localEngine; }
+
+    /**
+     * Search time per position for the built-in engine
+     */
+    public Duration getEngineTime() { return engineTime; }
+
+    public int getEngineThreads() { return engineThreads; }
+
+    /**
+     * Number of games whose punishment moves are looked up concurrently
+     */
+    public int getEngineWorkers() { return engineWorkers; }
+
+    /**
+     * Capacity of each queue between the analysis stages
+     */
+    public int getQueueSize() { return queueSize; }
+
+    /**
+     * Opening book used instead of the Opening Explorer, or null
+     */
+    public Path getBook() { return book; }
+
+    /**
+     * Memory for explorer cache entries in bytes
+     */
+    public long getCacheMemory() { return cacheMemory; }
+
+    /**
+     * Directory to save the API responses of this run to, or null
+     */
+    public Path getRecord() { return record; }
+
+    /**
+     * Directory of recorded API responses to answer requests from instead of the network, or null
+     */
+    public Path getReplay() { return replay; }
+
+    /**
+     * Simulated latency and failures of replayed requests
+     */
+    public FaultProfile getFaultProfile() {
+        return new FaultProfile(latency, jitter, errorRate, throttleRate, Duration.ofSeconds(1), seed);
+    }
+
+    /**
+     * Whether to sync the user's local game archive and analyze games from it
+     */
+    public boolean isSync() { return sync; }
+
+    /**
+     * Local PGN or NDJSON file to analyze the user's games from instead of Lichess, or null
+     */
+    public Path getFile() { return file; }
+
+    /**
+     * Number of deviations per color to list in a repertoire summary, or 0 to show each game
+     */
+    public int getRepertoire() { return repertoire; }
+
+    /**
+     * Port to serve analyses over HTTP on (0 picks a free one), or -1 to analyze the user's games and exit
+     */
+    public int getServePort() { return servePort; }
+
+    /**
+     * File each game's result is written to instead of the console report, or null
+     */
+    public Path getOutput() { return output; }
+
+    /**
+     * Format of the output file; by default CSV for ".csv" and NDJSON otherwise
+     */
+    public ResultWriter.Format getOutputFormat() {
+        return outputFormat != null || output == null ? outputFormat : ResultWriter.formatOf(output);
+    }
+
+    /**
+     * Journal finished games are recorded in so an interrupted run can be resumed, or null
+     */
+    public Path getJournal() { return journal; }
+
+    /**
+     * True to skip the games already in the journal and reuse their results
+     */
+    public boolean isResume() { return resume; }
+
+    /**
+     * File the run's metrics are written to (Prometheus text for .prom/.txt, JSON otherwise), or null
+     */
+    public Path getMetrics() { return metrics; }
+
+    /**
+     * How often the metrics file is rewritten while running; zero writes it only at the end
+     */
+    public Duration getMetricsInterval() { return metricsInterval; }
+
+    /**
+     * Time allowed per game before its analysis is cut short, or null for no limit
+     */
+    public Duration getDeadline() { return deadline; }
+
+    /**
+     * Latency percentile after which a slow API request is sent again, or 0 to disable hedging
+     */
+    public double getHedgePercentile() { return hedgePercentile; }
+}
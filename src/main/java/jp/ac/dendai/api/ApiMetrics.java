@@ -0,0 +1,49 @@
+package jp.ac.dendai.api;
+
+import jp.ac.dendai.metrics.Metrics;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Records latency and outcome of every API call per endpoint:
+ * api_request_seconds, api_requests_total, api_errors_total and
+ * api_throttled_total (429 answers). Latency is measured from the client
+ * call, so it includes waiting for a per-host permit.
+ */
+final class ApiMetrics {
+    private ApiMetrics() {
+    }
+
+    /**
+     * Record a call when its response completes
+     * @return The response future itself
+     */
+    static <T> CompletableFuture<T> record(String endpoint, long startNanos, CompletableFuture<T> response) {
+        response.whenComplete((body, error) -> finish(endpoint, startNanos, error));
+        return response;
+    }
+
+    /**
+     * Record a call that completed synchronously
+     * @param error Failure of the call, or null on success
+     */
+    static void finish(String endpoint, long startNanos, Throwable error) {
+        Metrics metrics = Metrics.shared();
+        if (error instanceof CompletionException || error instanceof ExecutionException) {
+            error = error.getCause();
+        }
+        // An abandoned request says nothing about the server
+        if (error instanceof CancellationException) return;
+
+        metrics.timer("api_request_seconds", "endpoint", endpoint).record(System.nanoTime() - startNanos);
+        metrics.counter("api_requests_total", "endpoint", endpoint).increment();
+        if (error instanceof HttpStatusException status && status.getStatusCode() == 429) {
+            metrics.counter("api_throttled_total", "endpoint", endpoint).increment();
+        } else if (error != null) {
+            metrics.counter("api_errors_total", "endpoint", endpoint).increment();
+        }
+    }
+}
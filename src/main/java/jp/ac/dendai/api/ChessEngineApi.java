@@ -0,0 +1,15 @@
+package jp.ac.dendai.api;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Remote engine evaluation of a position
+ */
+public interface ChessEngineApi {
+    /**
+     * @param fen Position in FEN format
+     * @param depth Search depth
+     * @return Future of the JSON response from the engine
+     */
+    CompletableFuture<String> getBestMoveAsync(String fen, int depth);
+}
@@ -2,21 +2,25 @@ package jp.ac.dendai.api;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import jp.ac.dendai.util.Futures;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
 
-public class ChessEngineClient {
-    private static final String BASE_URL = "https://chess-api.com/v1";
+public class ChessEngineClient implements ChessEngineApi {
+    private static final URI BASE_URL = URI.create("https://chess-api.com/v1");
+    public static final int DEFAULT_DEPTH = 12;
     private final Gson gson;
+    private final Transport transport;
 
     public ChessEngineClient() {
+        this(HttpTransport.shared());
+    }
+
+    public ChessEngineClient(Transport transport) {
         this.gson = new Gson();
+        this.transport = transport;
     }
 
     /**
@@ -25,40 +29,18 @@ public class ChessEngineClient {
      * @return JSON response from engine
      */
     public String getBestMove(String fen) throws IOException {
-        URL url = new URL(BASE_URL);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        
+        return Futures.await(getBestMoveAsync(fen, DEFAULT_DEPTH));
+    }
+
+    @Override
+    public CompletableFuture<String> getBestMoveAsync(String fen, int depth) {
         // Build request body
         JsonObject requestBody = new JsonObject();
         requestBody.addProperty("fen", fen);
-        requestBody.addProperty("depth", 12);
+        requestBody.addProperty("depth", depth);
         requestBody.addProperty("variants", 1);
-        
-        // Send request
-        try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = gson.toJson(requestBody).getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
-        }
-        
-        // Read response
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("HTTP error: " + responseCode);
-        }
-        
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-        }
-        
-        return response.toString();
+
+        return ApiMetrics.record(RequestScheduler.ENGINE, System.nanoTime(),
+            transport.postJsonAsync(BASE_URL, gson.toJson(requestBody)));
     }
-}
\ No newline at end of file
+}
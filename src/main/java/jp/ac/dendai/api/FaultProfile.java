@@ -0,0 +1,54 @@
+package jp.ac.dendai.api;
+
+import java.time.Duration;
+
+/**
+ * Simulated server behaviour for {@link ReplayTransport}: response latency
+ * plus random server errors (500) and rate limiting (429 with Retry-After).
+ */
+public class FaultProfile {
+    public static final FaultProfile NONE = new FaultProfile(Duration.ZERO, Duration.ZERO, 0, 0);
+
+    private final Duration latency;
+    private final Duration jitter;
+    private final double errorRate;
+    private final double throttleRate;
+    private final Duration retryAfter;
+    private final long seed;
+
+    /**
+     * @param latency Delay of every response
+     * @param jitter Uniformly distributed extra delay, 0 to jitter
+     * @param errorRate Fraction of requests answered with 500
+     * @param throttleRate Fraction of requests answered with 429
+     */
+    public FaultProfile(Duration latency, Duration jitter, double errorRate, double throttleRate) {
+        this(latency, jitter, errorRate, throttleRate, Duration.ofSeconds(1), 1);
+    }
+
+    /**
+     * @param retryAfter Retry-After sent with 429 answers
+     * @param seed Seed of the random choices, so runs are repeatable
+     */
+    public FaultProfile(Duration latency, Duration jitter, double errorRate, double throttleRate,
+                        Duration retryAfter, long seed) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.retryAfter = retryAfter;
+        this.seed = seed;
+    }
+
+    public Duration getLatency() { return latency; }
+
+    public Duration getJitter() { return jitter; }
+
+    public double getErrorRate() { return errorRate; }
+
+    public double getThrottleRate() { return throttleRate; }
+
+    public Duration getRetryAfter() { return retryAfter; }
+
+    public long getSeed() { return seed; }
+}
@@ -0,0 +1,65 @@
+package jp.ac.dendai.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * One recorded exchange, stored as a JSON file named after a hash of the request
+ */
+final class Fixture {
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+
+    String method;
+    String uri;
+    String requestBody;
+    String responseBody;
+
+    Fixture(String method, URI uri, String requestBody, String responseBody) {
+        this.method = method;
+        this.uri = uri.toString();
+        this.requestBody = requestBody;
+        this.responseBody = responseBody;
+    }
+
+    /**
+     * Get the file holding the fixture of a request
+     */
+    static Path file(Path directory, String method, URI uri, String requestBody) {
+        String request = method + " " + uri + "\n" + (requestBody != null ? requestBody : "");
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(request.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return directory.resolve(name + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The fixture, or null if the request was never recorded
+     */
+    static Fixture read(Path file) throws IOException {
+        if (!Files.exists(file)) return null;
+        return GSON.fromJson(Files.readString(file), Fixture.class);
+    }
+
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = file(directory, method, URI.create(uri), requestBody);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, GSON.toJson(this));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,181 @@
+package jp.ac.dendai.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of simultaneous requests per host.
+ *
+ * Lichess asks API users to make one request at a time, while the explorer
+ * and the engine tolerate a few in parallel. Permits are handed out in FIFO
+ * order and can be awaited without blocking a thread.
+ */
+public class HostConcurrencyLimiter {
+    private static final int DEFAULT_LIMIT = 4;
+    private static final HostConcurrencyLimiter SHARED = new HostConcurrencyLimiter();
+
+    private final Map<String, Integer> limits = new ConcurrentHashMap<>();
+    private final Map<String, HostSlots> slots = new ConcurrentHashMap<>();
+
+    private static class HostSlots {
+        private int available;
+        private final ArrayDeque<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+
+        HostSlots(int available) {
+            this.available = available;
+        }
+    }
+
+    /**
+     * A held permit; closing it more than once releases it only once
+     */
+    public static class Permit implements Closeable {
+        private final HostSlots slots;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(HostSlots slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(slots);
+            }
+        }
+    }
+
+    public HostConcurrencyLimiter() {
+        limits.put("lichess.org", 1);
+        limits.put("explorer.lichess.ovh", 4);
+        limits.put("chess-api.com", 4);
+    }
+
+    /**
+     * Limiter shared by the default transport
+     */
+    public static HostConcurrencyLimiter shared() {
+        return SHARED;
+    }
+
+    /**
+     * Set the limit for a host; only affects hosts not contacted yet
+     */
+    public void setLimit(String host, int permits) {
+        limits.put(host, permits);
+    }
+
+    /**
+     * Start an asynchronous request once a permit for its host is free.
+     * The permit is released when the returned future completes. Cancelling
+     * it withdraws a request still waiting for its permit, or cancels the
+     * call and releases the permit at once rather than when the call ends.
+     */
+    public <T> CompletableFuture<T> runAsync(String host, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<Permit> acquired = acquireAsync(host);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        acquired.whenComplete((permit, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (result.isDone()) {
+                permit.close();
+                return;
+            }
+
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                permit.close();
+                result.completeExceptionally(e);
+                return;
+            }
+            future.whenComplete((value, failure) -> {
+                permit.close();
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(value);
+                }
+            });
+            result.whenComplete((value, failure) -> {
+                if (!result.isCancelled()) return;
+                future.cancel(true);
+                permit.close();
+            });
+        });
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) acquired.cancel(false);
+        });
+        return result;
+    }
+
+    /**
+     * Wait for a permit for a host, for requests that outlive a single call
+     * (e.g. a streamed response). The caller must close the permit.
+     */
+    public Permit acquire(String host) throws IOException {
+        CompletableFuture<Permit> future = acquireAsync(host);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            if (!future.cancel(false)) {
+                future.join().close();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + host);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Get a future completed with a permit as soon as one is free
+     */
+    public CompletableFuture<Permit> acquireAsync(String host) {
+        HostSlots hostSlots = slots.computeIfAbsent(host,
+            h -> new HostSlots(limits.getOrDefault(h, DEFAULT_LIMIT)));
+        CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        boolean granted = false;
+        synchronized (hostSlots) {
+            if (hostSlots.available > 0) {
+                hostSlots.available--;
+                granted = true;
+            } else {
+                hostSlots.waiting.add(future);
+            }
+        }
+        if (granted) {
+            future.complete(new Permit(hostSlots));
+        }
+        return future;
+    }
+
+    private static void release(HostSlots hostSlots) {
+        while (true) {
+            CompletableFuture<Permit> next;
+            synchronized (hostSlots) {
+                next = hostSlots.waiting.poll();
+                if (next == null) {
+                    hostSlots.available++;
+                    return;
+                }
+            }
+            // Skip waiters that gave up in the meantime
+            if (next.complete(new Permit(hostSlots))) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package jp.ac.dendai.api;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Thrown when a server answers with a status other than 200
+ */
+public class HttpStatusException extends IOException {
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public HttpStatusException(int statusCode) {
+        this(statusCode, null);
+    }
+
+    /**
+     * @param statusCode HTTP status code
+     * @param retryAfter Value of the Retry-After header, or null if absent
+     */
+    public HttpStatusException(int statusCode, Duration retryAfter) {
+        super("HTTP error: " + statusCode);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() { return statusCode; }
+
+    public Duration getRetryAfter() { return retryAfter; }
+
+    /**
+     * True for answers that ask the client to slow down and try again (429, 503)
+     */
+    public boolean isRetryable() {
+        return statusCode == 429 || statusCode == 503;
+    }
+}
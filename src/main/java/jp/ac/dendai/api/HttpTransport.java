@@ -0,0 +1,149 @@
+package jp.ac.dendai.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * HTTP transport shared by all API clients.
+ *
+ * Wraps one java.net.http.HttpClient, so connections are kept alive (and
+ * multiplexed over HTTP/2 where the server supports it) instead of paying a
+ * TCP/TLS handshake per request. Every request goes through the per-host
+ * concurrency limiter.
+ */
+public class HttpTransport implements Transport {
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private static volatile HttpTransport shared;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final HostConcurrencyLimiter limiter;
+
+    /**
+     * @param connectTimeout Timeout for establishing a connection
+     * @param requestTimeout Timeout until the response headers arrive
+     * @param limiter Per-host concurrency limiter
+     */
+    public HttpTransport(Duration connectTimeout, Duration requestTimeout, HostConcurrencyLimiter limiter) {
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(connectTimeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+        this.requestTimeout = requestTimeout;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Transport with default timeouts, shared by the default client constructors
+     */
+    public static HttpTransport shared() {
+        HttpTransport transport = shared;
+        if (transport == null) {
+            synchronized (HttpTransport.class) {
+                if (shared == null) {
+                    shared = new HttpTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT,
+                        HostConcurrencyLimiter.shared());
+                }
+                transport = shared;
+            }
+        }
+        return transport;
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(URI uri, String accept) {
+        return sendAsync(request(uri, accept).GET().build());
+    }
+
+    @Override
+    public CompletableFuture<String> postJsonAsync(URI uri, String json) {
+        return sendAsync(request(uri, "application/json")
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build());
+    }
+
+    /**
+     * The host permit is held until the stream is closed
+     */
+    @Override
+    public Stream<String> getLines(URI uri, String accept) throws IOException {
+        HostConcurrencyLimiter.Permit permit = limiter.acquire(uri.getHost());
+        try {
+            HttpResponse<Stream<String>> response =
+                client.send(request(uri, accept).GET().build(), HttpResponse.BodyHandlers.ofLines());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                throw statusException(response);
+            }
+            return response.body().onClose(permit::close);
+        } catch (InterruptedException e) {
+            permit.close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while requesting " + uri);
+        } catch (IOException | RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+    }
+
+    private static HttpStatusException statusException(HttpResponse<?> response) {
+        Duration retryAfter = response.headers().firstValue("Retry-After")
+            .map(HttpTransport::parseRetryAfter)
+            .orElse(null);
+        return new HttpStatusException(response.statusCode(), retryAfter);
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date
+    private static Duration parseRetryAfter(String value) {
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration delay = Duration.between(ZonedDateTime.now(date.getZone()), date);
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private HttpRequest.Builder request(URI uri, String accept) {
+        return HttpRequest.newBuilder(uri)
+            .timeout(requestTimeout)
+            .header("Accept", accept);
+    }
+
+    private CompletableFuture<String> sendAsync(HttpRequest request) {
+        return limiter.runAsync(request.uri().getHost(), () -> {
+            CompletableFuture<HttpResponse<String>> exchange =
+                client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+            CompletableFuture<String> body = exchange.thenApply(response -> {
+                if (response.statusCode() != 200) {
+                    throw new CompletionException(statusException(response));
+                }
+                return response.body();
+            });
+            // Cancelling with mayInterruptIfRunning aborts the exchange
+            body.whenComplete((result, error) -> {
+                if (body.isCancelled()) exchange.cancel(true);
+            });
+            return body;
+        });
+    }
+}
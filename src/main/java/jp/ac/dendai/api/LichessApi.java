@@ -0,0 +1,28 @@
+package jp.ac.dendai.api;
+
+import jp.ac.dendai.model.Game;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+
+/**
+ * Games of a Lichess user
+ */
+public interface LichessApi {
+    /**
+     * Stream games as they are downloaded; close the stream when done
+     * @param username Lichess username
+     * @param max Maximum number of games
+     */
+    default Stream<Game> streamGames(String username, int max) throws IOException {
+        return streamGames(username, max, 0);
+    }
+
+    /**
+     * Stream games started at or after a point in time, newest first
+     * @param username Lichess username
+     * @param max Maximum number of games, or 0 for all of them
+     * @param since Epoch milliseconds; 0 for no lower bound
+     */
+    Stream<Game> streamGames(String username, int max, long since) throws IOException;
+}
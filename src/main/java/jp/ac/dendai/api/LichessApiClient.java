@@ -1,36 +1,69 @@
 package jp.ac.dendai.api;
 
-import java.io.BufferedReader;
+import com.google.gson.Gson;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.util.Futures;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
-public class LichessApiClient {
+public class LichessApiClient implements LichessApi {
     private static final String BASE_URL = "https://lichess.org/api/games/user/";
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String ENDPOINT = "games";
+    private final Transport transport;
+    private final Gson gson;
+
+    public LichessApiClient() {
+        this(HttpTransport.shared());
+    }
+
+    public LichessApiClient(Transport transport) {
+        this.transport = transport;
+        this.gson = new Gson();
+    }
 
     public String fetchGames(String username, int max) throws IOException {
-        String urlStr = String.format("%s%s?max=%d&opening=true", BASE_URL, username, max);
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("Accept", "application/x-ndjson");
-        
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("HTTP error: " + responseCode);
-        }
-        
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line).append("\n");
-            }
+        return Futures.await(fetchGamesAsync(username, max));
+    }
+
+    /**
+     * Asynchronous variant of {@link #fetchGames(String, int)}
+     */
+    public CompletableFuture<String> fetchGamesAsync(String username, int max) {
+        return ApiMetrics.record(ENDPOINT, System.nanoTime(),
+            transport.getAsync(gamesUri(username, max, 0), NDJSON));
+    }
+
+    /**
+     * Stream games as they are downloaded, one NDJSON line at a time.
+     * The connection stays open until the stream is closed, so use it in
+     * try-with-resources. Read errors surface as UncheckedIOException.
+     * The recorded latency is the time until the first byte, not the whole download.
+     */
+    @Override
+    public Stream<Game> streamGames(String username, int max, long since) throws IOException {
+        long start = System.nanoTime();
+        Stream<String> lines;
+        try {
+            lines = transport.getLines(gamesUri(username, max, since), NDJSON);
+        } catch (IOException | RuntimeException e) {
+            ApiMetrics.finish(ENDPOINT, start, e);
+            throw e;
         }
-        
-        return response.toString();
+        ApiMetrics.finish(ENDPOINT, start, null);
+        return lines
+            .filter(line -> !line.isBlank())
+            .map(line -> gson.fromJson(line, Game.class));
+    }
+
+    private URI gamesUri(String username, int max, long since) {
+        StringBuilder uri = new StringBuilder(BASE_URL).append(username).append('?');
+        if (max > 0) uri.append("max=").append(max).append('&');
+        uri.append("opening=true");
+        if (since > 0) uri.append("&since=").append(since);
+        return URI.create(uri.toString());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package jp.ac.dendai.api;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Opening Explorer statistics for a position
+ */
+public interface OpeningExplorerApi {
+    /**
+     * @param uciMoves Comma-separated UCI moves from the starting position (e.g., "e2e4,e7e5")
+     * @return Future of the JSON response with opening statistics
+     */
+    CompletableFuture<String> getOpeningMovesAsync(String uciMoves);
+}
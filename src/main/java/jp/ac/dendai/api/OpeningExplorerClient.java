@@ -1,15 +1,22 @@
 package jp.ac.dendai.api;
 
-import java.io.BufferedReader;
+import jp.ac.dendai.util.Futures;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
 
-public class OpeningExplorerClient {
+public class OpeningExplorerClient implements OpeningExplorerApi {
     private static final String BASE_URL = "https://explorer.lichess.ovh/masters";
+    private final Transport transport;
+
+    public OpeningExplorerClient() {
+        this(HttpTransport.shared());
+    }
+
+    public OpeningExplorerClient(Transport transport) {
+        this.transport = transport;
+    }
 
     /**
      * Get opening theory moves for a position
@@ -17,28 +24,14 @@ public class OpeningExplorerClient {
      * @return JSON response with opening statistics
      */
     public String getOpeningMoves(String uciMoves) throws IOException {
+        return Futures.await(getOpeningMovesAsync(uciMoves));
+    }
+
+    @Override
+    public CompletableFuture<String> getOpeningMovesAsync(String uciMoves) {
         // Don't URL encode the commas - they're part of the API format
-        String urlStr = BASE_URL + "?play=" + uciMoves;
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("Accept", "application/json");
-        
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("HTTP error: " + responseCode);
-        }
-        
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-        }
-        
-        return response.toString();
+        URI uri = URI.create(BASE_URL + "?play=" + uciMoves);
+        return ApiMetrics.record(RequestScheduler.EXPLORER, System.nanoTime(),
+            transport.getAsync(uri, "application/json"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package jp.ac.dendai.api;
+
+import jp.ac.dendai.util.Futures;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Passes requests on to another transport and saves every successful
+ * response as a fixture for {@link ReplayTransport}
+ */
+public class RecordingTransport implements Transport {
+    private final Transport delegate;
+    private final Path directory;
+
+    /**
+     * @param delegate Transport that makes the real requests
+     * @param directory Fixture directory; existing fixtures of the same request are replaced
+     */
+    public RecordingTransport(Transport delegate, Path directory) {
+        this.delegate = delegate;
+        this.directory = directory;
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(URI uri, String accept) {
+        CompletableFuture<String> response = delegate.getAsync(uri, accept);
+        return Futures.propagateCancel(response,
+            response.thenApply(body -> record(new Fixture("GET", uri, null, body))));
+    }
+
+    @Override
+    public CompletableFuture<String> postJsonAsync(URI uri, String json) {
+        CompletableFuture<String> response = delegate.postJsonAsync(uri, json);
+        return Futures.propagateCancel(response,
+            response.thenApply(body -> record(new Fixture("POST", uri, json, body))));
+    }
+
+    /**
+     * The fixture is written when the stream is closed, with the lines read so far
+     */
+    @Override
+    public Stream<String> getLines(URI uri, String accept) throws IOException {
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        Stream<String> stream = delegate.getLines(uri, accept);
+        return stream.peek(lines::add)
+            .onClose(() -> record(new Fixture("GET", uri, null, String.join("\n", lines))));
+    }
+
+    private String record(Fixture fixture) {
+        try {
+            fixture.write(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fixture.responseBody;
+    }
+}
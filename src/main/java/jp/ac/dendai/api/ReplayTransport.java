@@ -0,0 +1,150 @@
+package jp.ac.dendai.api;
+
+import jp.ac.dendai.util.ThreadPools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Answers requests from fixtures saved by {@link RecordingTransport}, so the
+ * analysis can be run and timed without the network.
+ *
+ * A {@link FaultProfile} adds latency and makes some requests fail the way
+ * the real servers do (500, 429 with Retry-After), which exercises the
+ * retry and rate-limit paths. A request that was never recorded fails with 404.
+ * Requests still go through the per-host concurrency limiter, so the
+ * simulated latency queues up like real requests.
+ *
+ * The latency and fault of a request derive from the seed, the request and
+ * how many times it was made before, not from the order in which
+ * concurrent requests happen to arrive, so a replay fails the same
+ * requests on every run.
+ */
+public class ReplayTransport implements Transport, Closeable {
+    private final Path directory;
+    private final FaultProfile profile;
+    private final HostConcurrencyLimiter limiter;
+    // Times each request was made so far
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    public ReplayTransport(Path directory, FaultProfile profile) {
+        this(directory, profile, HostConcurrencyLimiter.shared());
+    }
+
+    /**
+     * @param directory Fixture directory written by RecordingTransport
+     * @param profile Simulated latency and failures
+     * @param limiter Per-host concurrency limiter
+     */
+    public ReplayTransport(Path directory, FaultProfile profile, HostConcurrencyLimiter limiter) {
+        this.directory = directory;
+        this.profile = profile;
+        this.limiter = limiter;
+        this.timer = Executors.newSingleThreadScheduledExecutor(ThreadPools.daemonThreads("replay-transport"));
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(URI uri, String accept) {
+        return limiter.runAsync(uri.getHost(), () -> respond("GET", uri, null));
+    }
+
+    @Override
+    public CompletableFuture<String> postJsonAsync(URI uri, String json) {
+        return limiter.runAsync(uri.getHost(), () -> respond("POST", uri, json));
+    }
+
+    @Override
+    public Stream<String> getLines(URI uri, String accept) throws IOException {
+        HostConcurrencyLimiter.Permit permit = limiter.acquire(uri.getHost());
+        try {
+            SplittableRandom random = randomFor("GET", uri, null);
+            long delay = delayMillis(random);
+            if (delay > 0) Thread.sleep(delay);
+            return answer("GET", uri, null, random).lines();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while requesting " + uri);
+        } finally {
+            permit.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private CompletableFuture<String> respond(String method, URI uri, String requestBody) {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        SplittableRandom random = randomFor(method, uri, requestBody);
+        Runnable complete = () -> {
+            try {
+                response.complete(answer(method, uri, requestBody, random));
+            } catch (IOException e) {
+                response.completeExceptionally(e);
+            }
+        };
+
+        long delay = delayMillis(random);
+        if (delay > 0) {
+            timer.schedule(complete, delay, TimeUnit.MILLISECONDS);
+        } else {
+            complete.run();
+        }
+        return response;
+    }
+
+    private String answer(String method, URI uri, String requestBody, SplittableRandom random)
+            throws IOException {
+        double roll = random.nextDouble();
+        if (roll < profile.getThrottleRate()) {
+            throw new HttpStatusException(429, profile.getRetryAfter());
+        }
+        if (roll < profile.getThrottleRate() + profile.getErrorRate()) {
+            throw new HttpStatusException(500);
+        }
+
+        Fixture fixture = Fixture.read(Fixture.file(directory, method, uri, requestBody));
+        if (fixture == null) {
+            throw new HttpStatusException(404);
+        }
+        return fixture.responseBody;
+    }
+
+    /**
+     * Random choices of one request: the delay first, then the fault
+     */
+    private SplittableRandom randomFor(String method, URI uri, String requestBody) {
+        String key = method + ' ' + uri + (requestBody != null ? '\n' + requestBody : "");
+        int attempt = attempts.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+        // FNV-1a; SplittableRandom mixes the seed, so neighbouring attempts still differ
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return new SplittableRandom(profile.getSeed() ^ hash ^ ((long) attempt << 32));
+    }
+
+    private long delayMillis(SplittableRandom random) {
+        double roll = random.nextDouble();
+        long delay = profile.getLatency().toMillis();
+        long jitter = profile.getJitter().toMillis();
+        if (jitter > 0) {
+            delay += (long) (roll * jitter);
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,439 @@
+package jp.ac.dendai.api;
+
+import jp.ac.dendai.metrics.Histogram;
+import jp.ac.dendai.metrics.Metrics;
+import jp.ac.dendai.util.ThreadPools;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Schedules API requests per endpoint.
+ *
+ * Every endpoint has a token bucket and two lanes; queued interactive
+ * requests are always dispatched before batch ones. A 429/503 answer pauses
+ * the whole endpoint for its Retry-After period (or an exponential backoff)
+ * and puts the request back at the head of its lane. Concurrent requests
+ * with the same key share one call (single flight).
+ *
+ * With hedging enabled, a call still unanswered after the given latency
+ * percentile of its endpoint is sent a second time if a token is free and
+ * nothing is queued; the first answer wins and the other call is cancelled,
+ * which aborts its HTTP exchange and frees its host permit.
+ */
+public class RequestScheduler implements Closeable {
+    public static final String EXPLORER = "explorer";
+    public static final String ENGINE = "engine";
+
+    private static final int MAX_RETRIES = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    // Latencies needed before an endpoint's percentile is trusted
+    private static final long MIN_HEDGE_SAMPLES = 20;
+    // Never hedge calls younger than this, however fast the endpoint usually is
+    private static final long MIN_HEDGE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    public enum Lane { INTERACTIVE, BATCH }
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private volatile double hedgePercentile = 0;
+
+    public RequestScheduler() {
+        this.timer = Executors.newSingleThreadScheduledExecutor(ThreadPools.daemonThreads("request-scheduler"));
+        configure(EXPLORER, 10, 10);
+        configure(ENGINE, 5, 5);
+    }
+
+    /**
+     * Set the rate of an endpoint; unknown endpoints are not rate limited
+     * @param endpoint Endpoint name
+     * @param permitsPerSecond Sustained request rate
+     * @param burst Number of requests that may be sent back to back
+     */
+    public void configure(String endpoint, double permitsPerSecond, int burst) {
+        endpoints.put(endpoint, new Endpoint(endpoint, permitsPerSecond, burst));
+    }
+
+    /**
+     * Enable hedged requests
+     * @param percentile Latency percentile (e.g. 0.95) after which an unanswered call is duplicated, or 0 to disable
+     */
+    public void setHedgePercentile(double percentile) {
+        if (percentile < 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be in [0, 1): " + percentile);
+        }
+        this.hedgePercentile = percentile;
+    }
+
+    /**
+     * Submit a request
+     * @param endpoint Endpoint name (rate limit bucket)
+     * @param key Identifies the request; concurrent submissions with the same key share one call
+     * @param lane Priority lane
+     * @param call Starts the actual request
+     * @return Future of the response; cancelling it only withdraws this caller
+     */
+    public CompletableFuture<String> submit(String endpoint, String key, Lane lane,
+                                            Supplier<CompletableFuture<String>> call) {
+        String flightKey = endpoint + '\n' + key;
+        while (true) {
+            Flight flight = flights.get(flightKey);
+            if (flight == null) {
+                Flight created = new Flight(endpoint(endpoint), call, lane);
+                flight = flights.putIfAbsent(flightKey, created);
+                if (flight == null) {
+                    created.result.whenComplete((body, error) -> flights.remove(flightKey, created));
+                    CompletableFuture<String> waiter = created.join(lane);
+                    created.endpoint.enqueue(created, false);
+                    return waiter;
+                }
+            }
+
+            CompletableFuture<String> waiter = flight.join(lane);
+            if (waiter != null) return waiter;
+            // The flight was abandoned by all its waiters just now; start a new one
+            flights.remove(flightKey, flight);
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private Endpoint endpoint(String name) {
+        return endpoints.computeIfAbsent(name, n -> new Endpoint(n, 0, 0));
+    }
+
+    /**
+     * Token bucket plus the two lanes of one endpoint
+     */
+    private class Endpoint {
+        private final String name;
+        private final boolean limited;
+        private final double tokensPerNano;
+        private final double capacity;
+        private final ArrayDeque<Flight> interactive = new ArrayDeque<>();
+        private final ArrayDeque<Flight> batch = new ArrayDeque<>();
+        // Nanoseconds until a successful answer
+        private final Histogram latency = new Histogram();
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private long pausedUntil = lastRefill;
+        private boolean timerPending;
+
+        /**
+         * @param permitsPerSecond Sustained rate, or 0 for no limit
+         */
+        Endpoint(String name, double permitsPerSecond, int burst) {
+            this.name = name;
+            this.limited = permitsPerSecond > 0;
+            this.tokensPerNano = permitsPerSecond / 1e9;
+            this.capacity = burst;
+            this.tokens = burst;
+        }
+
+        void enqueue(Flight flight, boolean atFront) {
+            synchronized (this) {
+                ArrayDeque<Flight> queue = flight.lane == Lane.INTERACTIVE ? interactive : batch;
+                if (atFront) {
+                    queue.addFirst(flight);
+                } else {
+                    queue.addLast(flight);
+                }
+            }
+            dispatch();
+        }
+
+        void pause(long delayNanos) {
+            synchronized (this) {
+                pausedUntil = Math.max(pausedUntil, System.nanoTime() + delayNanos);
+            }
+        }
+
+        void dispatch() {
+            while (true) {
+                Flight next;
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    if (interactive.isEmpty() && batch.isEmpty()) return;
+                    if (now < pausedUntil) {
+                        scheduleDispatch(pausedUntil - now);
+                        return;
+                    }
+
+                    if (limited) {
+                        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+                        lastRefill = now;
+                        if (tokens < 1) {
+                            scheduleDispatch((long) Math.ceil((1 - tokens) / tokensPerNano));
+                            return;
+                        }
+                        tokens -= 1;
+                    }
+
+                    next = interactive.poll();
+                    if (next == null) next = batch.poll();
+                }
+
+                // Flights may sit in both lanes after a promotion, or be abandoned
+                if (!next.tryStart()) {
+                    synchronized (this) {
+                        // A refill may have topped the bucket up meanwhile
+                        if (limited) tokens = Math.min(capacity, tokens + 1);
+                    }
+                    continue;
+                }
+                Metrics.shared().timer("api_queue_seconds", "endpoint", name)
+                    .record(System.nanoTime() - next.queuedAt);
+                next.start();
+            }
+        }
+
+        /**
+         * How long to wait for an answer before hedging, or -1 not to hedge
+         */
+        long hedgeDelayNanos() {
+            double percentile = hedgePercentile;
+            if (percentile == 0 || latency.getCount() < MIN_HEDGE_SAMPLES) return -1;
+            return Math.max(MIN_HEDGE_DELAY_NANOS, (long) latency.percentile(percentile));
+        }
+
+        /**
+         * Take a token for a hedged call if one is free right now and no
+         * queued request is waiting for it
+         */
+        synchronized boolean tryTakeHedgeToken() {
+            if (!interactive.isEmpty() || !batch.isEmpty()) return false;
+            long now = System.nanoTime();
+            if (now < pausedUntil) return false;
+            if (!limited) return true;
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+
+        void schedule(Runnable task, long delayNanos) {
+            timer.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        // Caller holds the endpoint lock
+        private void scheduleDispatch(long delayNanos) {
+            if (timerPending) return;
+            timerPending = true;
+            timer.schedule(() -> {
+                synchronized (this) {
+                    timerPending = false;
+                }
+                dispatch();
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * One shared call and the callers waiting for it
+     */
+    private static class Flight {
+        private final Endpoint endpoint;
+        private final Supplier<CompletableFuture<String>> call;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private Lane lane;
+        private int waiters;
+        private int attempts;
+        private boolean started;
+        private boolean abandoned;
+        // When the flight was submitted, or put back for a retry
+        private volatile long queuedAt = System.nanoTime();
+
+        Flight(Endpoint endpoint, Supplier<CompletableFuture<String>> call, Lane lane) {
+            this.endpoint = endpoint;
+            this.call = call;
+            this.lane = lane;
+        }
+
+        /**
+         * Add a waiter, or return null if the flight was already abandoned
+         */
+        CompletableFuture<String> join(Lane waiterLane) {
+            boolean promote;
+            synchronized (this) {
+                if (abandoned) return null;
+                waiters++;
+                promote = waiterLane == Lane.INTERACTIVE && lane == Lane.BATCH && !started;
+                if (promote) lane = Lane.INTERACTIVE;
+            }
+            if (promote) {
+                endpoint.enqueue(this, false);
+            }
+
+            CompletableFuture<String> waiter = result.copy();
+            waiter.whenComplete((body, error) -> {
+                if (waiter.isCancelled()) leave();
+            });
+            return waiter;
+        }
+
+        private void leave() {
+            synchronized (this) {
+                waiters--;
+                if (waiters > 0 || started) return;
+                abandoned = true;
+            }
+            result.cancel(false);
+        }
+
+        boolean tryStart() {
+            synchronized (this) {
+                if (started || abandoned) return false;
+                if (waiters > 0) {
+                    started = true;
+                    return true;
+                }
+                // Every waiter left while a retry was queued
+                abandoned = true;
+            }
+            result.cancel(false);
+            return false;
+        }
+
+        void start() {
+            CompletableFuture<String> response;
+            try {
+                response = attempt();
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            long hedgeDelay = endpoint.hedgeDelayNanos();
+            if (hedgeDelay >= 0) {
+                response = hedge(response, hedgeDelay);
+            }
+
+            response.whenComplete((body, error) -> {
+                if (error == null) {
+                    result.complete(body);
+                    return;
+                }
+
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                if (cause instanceof HttpStatusException status && status.isRetryable() && retry()) {
+                    long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << (attempts - 1));
+                    long delayMillis = status.getRetryAfter() != null
+                        ? status.getRetryAfter().toMillis() : backoff;
+                    endpoint.pause(TimeUnit.MILLISECONDS.toNanos(delayMillis));
+                    queuedAt = System.nanoTime();
+                    endpoint.enqueue(this, true);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+            });
+        }
+
+        /**
+         * One call, timed for the endpoint's latency percentiles
+         */
+        private CompletableFuture<String> attempt() {
+            long start = System.nanoTime();
+            CompletableFuture<String> response = call.get();
+            response.whenComplete((body, error) -> {
+                if (error == null) endpoint.latency.record(System.nanoTime() - start);
+            });
+            return response;
+        }
+
+        /**
+         * Race the first call against a duplicate sent after the delay.
+         * The first success wins; a failure only counts once both calls failed.
+         */
+        private CompletableFuture<String> hedge(CompletableFuture<String> first, long delayNanos) {
+            Race race = new Race();
+            race.reserve();
+            race.add(first);
+
+            endpoint.schedule(() -> {
+                if (!race.reserve()) return;
+                if (!endpoint.tryTakeHedgeToken()) {
+                    race.release();
+                    return;
+                }
+                CompletableFuture<String> second;
+                try {
+                    second = attempt();
+                } catch (RuntimeException e) {
+                    second = CompletableFuture.failedFuture(e);
+                }
+                Metrics.shared().counter("api_hedged_total", "endpoint", endpoint.name).increment();
+                race.add(second);
+            }, delayNanos);
+            return race.winner;
+        }
+
+        private synchronized boolean retry() {
+            if (attempts >= MAX_RETRIES) return false;
+            attempts++;
+            started = false;
+            return true;
+        }
+    }
+
+    /**
+     * The calls of one hedged attempt. A call is reserved before it is sent,
+     * so the race cannot be decided between checking it and adding the call.
+     */
+    private static class Race {
+        private final CompletableFuture<String> winner = new CompletableFuture<>();
+        private int pending;
+        private Throwable failure;
+
+        /**
+         * Count a call about to be sent, or return false if the race is already decided
+         */
+        synchronized boolean reserve() {
+            if (winner.isDone()) return false;
+            pending++;
+            return true;
+        }
+
+        /**
+         * Give back a reservation whose call was not sent
+         */
+        void release() {
+            fail(null);
+        }
+
+        void add(CompletableFuture<String> call) {
+            call.whenComplete((body, error) -> {
+                if (error == null) {
+                    winner.complete(body);
+                } else {
+                    fail(error);
+                }
+            });
+            // Drop the slower call once either answered
+            winner.whenComplete((body, error) -> call.cancel(true));
+        }
+
+        private void fail(Throwable error) {
+            Throwable last;
+            synchronized (this) {
+                if (error != null) failure = error;
+                if (--pending > 0 || failure == null) return;
+                last = failure;
+            }
+            winner.completeExceptionally(last);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package jp.ac.dendai.api;
+
+import jp.ac.dendai.util.Futures;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * How the API clients talk to their servers: live over HTTP
+ * ({@link HttpTransport}), or from recorded fixtures ({@link ReplayTransport}).
+ * Failures are IOExceptions; a non-200 answer is an {@link HttpStatusException}.
+ */
+public interface Transport {
+    /**
+     * GET a resource asynchronously
+     * @param uri Resource URI
+     * @param accept Value of the Accept header
+     * @return Future completed with the response body, or failed with an IOException
+     */
+    CompletableFuture<String> getAsync(URI uri, String accept);
+
+    /**
+     * POST a JSON body asynchronously
+     * @return Future completed with the response body, or failed with an IOException
+     */
+    CompletableFuture<String> postJsonAsync(URI uri, String json);
+
+    /**
+     * GET a line-oriented resource (e.g. NDJSON) as a lazily read stream;
+     * close the stream to release the connection
+     */
+    Stream<String> getLines(URI uri, String accept) throws IOException;
+
+    default String get(URI uri, String accept) throws IOException {
+        return Futures.await(getAsync(uri, accept));
+    }
+
+    default String postJson(URI uri, String json) throws IOException {
+        return Futures.await(postJsonAsync(uri, json));
+    }
+}
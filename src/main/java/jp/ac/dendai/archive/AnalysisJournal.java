@@ -0,0 +1,153 @@
+package jp.ac.dendai.archive;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import jp.ac.dendai.model.GameAnalysis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only journal of finished games, so an interrupted batch can be
+ * resumed without repeating its explorer and engine requests.
+ *
+ * Every successfully analyzed game is appended as one JSON line holding the
+ * game and its result, and handed to the operating system right away, so
+ * stopping the process loses nothing. The file is fsynced every 64 games or
+ * once a second, bounding what a power loss can cost. On resume, a last
+ * line cut short by a crash is dropped and the file truncated before it.
+ * Failed and deadline-truncated games are not journalled and are analyzed
+ * again.
+ */
+public class AnalysisJournal implements Closeable {
+    private static final int SYNC_EVERY = 64;
+    private static final long SYNC_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final FileChannel channel;
+    private final Writer out;
+    private final Map<String, GameAnalysis> completed;
+    private final Gson gson = new Gson();
+    private int unsynced;
+    private long lastSync = System.nanoTime();
+
+    private AnalysisJournal(FileChannel channel, Map<String, GameAnalysis> completed) {
+        this.channel = channel;
+        this.out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+        this.completed = completed;
+    }
+
+    /**
+     * Open a journal
+     * @param file Journal file
+     * @param resume Keep the games already in the file; otherwise it is emptied
+     */
+    public static AnalysisJournal open(Path file, boolean resume) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        Map<String, GameAnalysis> completed = new HashMap<>();
+        long valid = resume && Files.exists(file) ? load(file, completed) : 0;
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(valid);
+            channel.position(valid);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new AnalysisJournal(channel, completed);
+    }
+
+    /**
+     * Read the complete lines of a journal
+     * @return Length in bytes of the readable part
+     */
+    private static long load(Path file, Map<String, GameAnalysis> completed) throws IOException {
+        Gson gson = new Gson();
+        long size = Files.size(file);
+        long valid = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                long end = valid + line.getBytes(StandardCharsets.UTF_8).length + 1;
+                // The last line lacks its newline if a crash cut it short
+                if (end > size) break;
+                GameAnalysis result;
+                try {
+                    result = gson.fromJson(line, GameAnalysis.class);
+                } catch (JsonParseException e) {
+                    break;
+                }
+                if (result == null || result.getGame() == null || result.getGame().getId() == null) break;
+                completed.put(result.getGame().getId(), result);
+                valid = end;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Number of games loaded from the journal and not yet taken
+     */
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Take the journalled result of a game
+     * @return The result, or null if the game still has to be analyzed
+     */
+    public synchronized GameAnalysis takeCompleted(String gameId) {
+        return gameId != null ? completed.remove(gameId) : null;
+    }
+
+    /**
+     * Record a finished game. Failed or truncated results and games without an id are skipped.
+     */
+    public synchronized void append(GameAnalysis result) throws IOException {
+        if (!result.isSuccessful() || result.isTruncated()
+                || result.getGame() == null || result.getGame().getId() == null) {
+            return;
+        }
+        out.write(gson.toJson(result));
+        out.write('\n');
+        out.flush();
+
+        unsynced++;
+        if (unsynced >= SYNC_EVERY || System.nanoTime() - lastSync >= SYNC_INTERVAL_NANOS) {
+            sync();
+        }
+    }
+
+    /**
+     * Force the journal to disk
+     */
+    public synchronized void sync() throws IOException {
+        out.flush();
+        channel.force(false);
+        unsynced = 0;
+        lastSync = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) return;
+        try {
+            sync();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package jp.ac.dendai.archive;
+
+import jp.ac.dendai.api.LichessApi;
+import jp.ac.dendai.model.Game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local archive of one user's games, kept in sync with Lichess incrementally.
+ *
+ * The archive is a directory of gzip-compressed segment files, one per sync,
+ * each holding the games of that sync newest first as compact binary records
+ * (id, players, ratings, opening, result, moves). A segment is named after
+ * the newest game start time it contains, so the next sync asks Lichess only
+ * for games started after the newest segment. Segments are written to a
+ * temporary file and moved into place, so an interrupted sync leaves the
+ * archive as it was.
+ */
+public class GameArchive {
+    private static final int MAGIC = 0x47415243; // "GARC"
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".games.gz";
+    private static final Pattern USERNAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Path directory;
+
+    private GameArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Open (or create) the archive of a user
+     * @param root Directory holding the archives of all users
+     * @param username Lichess username (case-insensitive)
+     */
+    public static GameArchive open(Path root, String username) throws IOException {
+        if (!USERNAME.matcher(username).matches()) {
+            throw new IllegalArgumentException("Invalid username: " + username);
+        }
+        Path directory = root.resolve(username.toLowerCase(Locale.ROOT));
+        Files.createDirectories(directory);
+        return new GameArchive(directory);
+    }
+
+    /**
+     * Start time of the newest archived game in epoch milliseconds, or 0 if the archive is empty
+     */
+    public long getNewestTimestamp() throws IOException {
+        List<Long> segments = segments();
+        return segments.isEmpty() ? 0 : segments.get(0);
+    }
+
+    /**
+     * Download the games started after the newest archived one and append them as a new segment
+     * @param api Lichess client
+     * @param username Lichess username
+     * @return Number of games added
+     */
+    public int sync(LichessApi api, String username) throws IOException {
+        long since = getNewestTimestamp();
+        Path tmp = directory.resolve("sync.tmp");
+        int count = 0;
+        long newest = since;
+
+        try (Stream<Game> games = api.streamGames(username, 0, since > 0 ? since + 1 : 0);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                 new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            Iterator<Game> iterator = games.iterator();
+            while (iterator.hasNext()) {
+                Game game = iterator.next();
+                writeRecord(out, game);
+                newest = Math.max(newest, game.getCreatedAt());
+                count++;
+            }
+            out.writeBoolean(false);
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(tmp);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        if (count == 0) {
+            Files.delete(tmp);
+            return 0;
+        }
+        Files.move(tmp, directory.resolve(newest + SUFFIX),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Read the archived games, newest first, without touching the network.
+     * Segments are decompressed lazily, so close the stream when done.
+     * Read errors surface as UncheckedIOException.
+     */
+    public Stream<Game> stream() throws IOException {
+        return segments().stream()
+            .map(newest -> directory.resolve(newest + SUFFIX))
+            .flatMap(GameArchive::readSegment);
+    }
+
+    /**
+     * Segment timestamps, newest first
+     */
+    private List<Long> segments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                .filter(name -> name.endsWith(SUFFIX))
+                .forEach(name -> {
+                    try {
+                        segments.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException ignored) {
+                        // Not a segment
+                    }
+                });
+        }
+        segments.sort(Comparator.reverseOrder());
+        return segments;
+    }
+
+    private static Stream<Game> readSegment(Path file) {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), 1 << 16)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                in.close();
+                throw new IOException("Not a game archive segment: " + file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Iterator<Game> records = new Iterator<>() {
+            private Game next = read();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Game next() {
+                if (next == null) throw new NoSuchElementException();
+                Game game = next;
+                next = read();
+                return game;
+            }
+
+            private Game read() {
+                try {
+                    return readRecord(in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED), false)
+            .onClose(() -> {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    private static void writeRecord(DataOutputStream out, Game game) throws IOException {
+        out.writeBoolean(true);
+        writeString(out, game.getId());
+        out.writeLong(game.getCreatedAt());
+        writeString(out, game.getStatus());
+        writeString(out, game.getWinner());
+        writeString(out, game.getOpening() != null ? game.getOpening().getName() : null);
+
+        Game.Players players = game.getPlayers();
+        writePlayer(out, players != null ? players.getWhite() : null);
+        writePlayer(out, players != null ? players.getBlack() : null);
+        writeString(out, game.getMoves());
+    }
+
+    /**
+     * @return The next game, or null at the end marker
+     */
+    private static Game readRecord(DataInputStream in) throws IOException {
+        try {
+            if (!in.readBoolean()) return null;
+        } catch (EOFException e) {
+            return null;
+        }
+
+        Game game = new Game();
+        game.setId(readString(in));
+        game.setCreatedAt(in.readLong());
+        game.setStatus(readString(in));
+        game.setWinner(readString(in));
+        String opening = readString(in);
+        if (opening != null) {
+            Game.Opening o = new Game.Opening();
+            o.setName(opening);
+            game.setOpening(o);
+        }
+
+        Game.Players players = new Game.Players();
+        players.setWhite(readPlayer(in));
+        players.setBlack(readPlayer(in));
+        game.setPlayers(players);
+        game.setMoves(readString(in));
+        return game;
+    }
+
+    private static void writePlayer(DataOutputStream out, Game.Player player) throws IOException {
+        Game.Player.UserInfo user = player != null ? player.getUser() : null;
+        writeString(out, user != null ? user.getId() : null);
+        writeString(out, user != null ? user.getName() : null);
+        out.writeInt(player != null ? player.getRating() : 0);
+    }
+
+    private static Game.Player readPlayer(DataInputStream in) throws IOException {
+        String id = readString(in);
+        String name = readString(in);
+        Game.Player player = new Game.Player();
+        if (id != null || name != null) {
+            Game.Player.UserInfo user = new Game.Player.UserInfo();
+            user.setId(id);
+            user.setName(name);
+            player.setUser(user);
+        }
+        player.setRating(in.readInt());
+        return player;
+    }
+
+    // Length-prefixed UTF-8; -1 for null (writeUTF is limited to 64 KB)
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
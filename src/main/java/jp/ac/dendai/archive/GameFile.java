@@ -0,0 +1,375 @@
+package jp.ac.dendai.archive;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.util.PgnReader;
+import jp.ac.dendai.util.ThreadPools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Games from a local PGN or Lichess NDJSON file, such as a database export
+ * or a club archive, read in parallel with bounded memory.
+ *
+ * The file is split into chunks of about 32 MB, each ending at a game
+ * boundary (a line break for NDJSON, a tag section after a blank line for
+ * PGN). Worker threads memory-map one chunk at a time and parse its games
+ * into a small bounded queue, so reading runs on all cores while at most a
+ * few batches of parsed games are held however large the file is.
+ * Gzipped files cannot be mapped and are read sequentially instead.
+ */
+public class GameFile {
+    static final int DEFAULT_CHUNK_SIZE = 32 << 20;
+    private static final int BATCH_SIZE = 256;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private final boolean pgn;
+    private final boolean gzip;
+    private final int chunkSize;
+    private final Gson gson = new Gson();
+    private final AtomicLong skipped = new AtomicLong();
+
+    public GameFile(Path path) {
+        this(path, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize Approximate number of bytes parsed by a worker at a time
+     */
+    GameFile(Path path, int chunkSize) {
+        this.path = path;
+        this.pgn = isPgn(path);
+        this.gzip = isGzip(path);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Whether a file is PGN (".pgn", optionally ".gz") rather than NDJSON
+     */
+    public static boolean isPgn(Path path) {
+        String name = fileName(path);
+        if (isGzip(path)) name = name.substring(0, name.length() - 3);
+        return name.endsWith(".pgn");
+    }
+
+    private static boolean isGzip(Path path) {
+        return fileName(path).endsWith(".gz");
+    }
+
+    /**
+     * File name lower-cased independently of the default locale
+     */
+    private static String fileName(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Games that could not be parsed so far
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Stream the games of the file in no particular order.
+     * Close the stream to stop the workers; read errors surface as UncheckedIOException.
+     * @param threads Number of chunks parsed at once
+     */
+    public Stream<Game> stream(int threads) throws IOException {
+        if (gzip) {
+            return streamSequential();
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        long[] bounds;
+        try {
+            bounds = split(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        int workers = Math.max(1, Math.min(threads, bounds.length - 1));
+        BlockingQueue<List<Game>> queue = new ArrayBlockingQueue<>(workers * 2);
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, ThreadPools.daemonThreads("game-file"));
+        for (int i = 0; i < workers; i++) {
+            executor.execute(() -> runWorker(channel, bounds, nextChunk, queue, failure));
+        }
+
+        Iterator<Game> games = new Iterator<>() {
+            private Iterator<Game> batch = List.<Game>of().iterator();
+            private int finished;
+
+            @Override
+            public boolean hasNext() {
+                while (!batch.hasNext()) {
+                    if (finished == workers) {
+                        Throwable error = failure.get();
+                        if (error == null) return false;
+                        throw error instanceof IOException e ? new UncheckedIOException(e)
+                            : new UncheckedIOException(new IOException(error));
+                    }
+                    try {
+                        List<Game> next = queue.take();
+                        if (next.isEmpty()) {
+                            finished++;
+                        } else {
+                            batch = next.iterator();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new UncheckedIOException(new IOException("Interrupted", e));
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Game next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return batch.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(games, Spliterator.NONNULL), false)
+            .onClose(() -> {
+                executor.shutdownNow();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    private void runWorker(FileChannel channel, long[] bounds, AtomicInteger nextChunk,
+                           BlockingQueue<List<Game>> queue, AtomicReference<Throwable> failure) {
+        try {
+            try {
+                for (int chunk = nextChunk.getAndIncrement(); chunk < bounds.length - 1 && failure.get() == null;
+                     chunk = nextChunk.getAndIncrement()) {
+                    parseChunk(channel, bounds[chunk], bounds[chunk + 1], batch -> {
+                        try {
+                            queue.put(batch);
+                        } catch (InterruptedException e) {
+                            throw new CancellationSignal();
+                        }
+                    });
+                }
+            } catch (IOException | RuntimeException e) {
+                if (e instanceof CancellationSignal) return;
+                failure.compareAndSet(null, e);
+            }
+            // End marker
+            queue.put(List.of());
+        } catch (InterruptedException e) {
+            // The stream was closed
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Thrown out of the batch consumer when a worker is interrupted by closing the stream
+     */
+    private static final class CancellationSignal extends RuntimeException {
+        CancellationSignal() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Chunk start offsets followed by the file size
+     */
+    long[] split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        for (long offset = chunkSize; offset < size; ) {
+            long boundary = nextBoundary(channel, offset, size);
+            if (boundary >= size) break;
+            starts.add(boundary);
+            offset = boundary + chunkSize;
+        }
+
+        long[] bounds = new long[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) {
+            bounds[i] = starts.get(i);
+        }
+        bounds[starts.size()] = size;
+        return bounds;
+    }
+
+    /**
+     * Offset of the first game starting after the given one, or the file size if there is none
+     */
+    private long nextBoundary(FileChannel channel, long offset, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        Boundaries boundaries = new Boundaries(pgn);
+        long position = offset;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (boundaries.accept(buffer.get(i))) {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parse the games of one chunk, handing them out in batches
+     */
+    private void parseChunk(FileChannel channel, long start, long end, Consumer<List<Game>> sink)
+            throws IOException {
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        Boundaries boundaries = new Boundaries(pgn);
+        List<Game> batch = new ArrayList<>(BATCH_SIZE);
+        int gameStart = 0;
+
+        for (int i = 0; i <= chunk.limit(); i++) {
+            boolean boundary = i == chunk.limit() || boundaries.accept(chunk.get(i));
+            if (!boundary || i == gameStart) continue;
+
+            Game game = parse(StandardCharsets.UTF_8.decode(chunk.slice(gameStart, i - gameStart)).toString());
+            gameStart = i;
+            if (game == null) continue;
+            batch.add(game);
+            if (batch.size() == BATCH_SIZE) {
+                sink.accept(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+    }
+
+    /**
+     * @return The game, or null for blank or unreadable text
+     */
+    private Game parse(String text) {
+        if (text.isBlank()) return null;
+        try {
+            Game game = pgn ? PgnReader.parse(text) : gson.fromJson(text, Game.class);
+            if (game != null) return game;
+        } catch (JsonParseException e) {
+            // Counted below
+        }
+        skipped.incrementAndGet();
+        return null;
+    }
+
+    private Stream<Game> streamSequential() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(Files.newInputStream(path), 1 << 16), StandardCharsets.UTF_8));
+        PgnReader pgnReader = pgn ? new PgnReader(reader) : null;
+
+        Iterator<Game> games = new Iterator<>() {
+            private Game next = read();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Game next() {
+                if (next == null) throw new NoSuchElementException();
+                Game game = next;
+                next = read();
+                return game;
+            }
+
+            private Game read() {
+                try {
+                    while (true) {
+                        String text = pgn ? pgnReader.nextGameText() : reader.readLine();
+                        if (text == null) return null;
+                        Game game = parse(text);
+                        if (game != null) return game;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(games, Spliterator.NONNULL), false)
+            .onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    /**
+     * Finds game starts in a byte stream: the byte after a line break for
+     * NDJSON, or a '[' opening a line after a blank one for PGN (blank lines
+     * only separate tags from movetext and games from each other, and
+     * movetext never starts with '[').
+     */
+    private static final class Boundaries {
+        private final boolean pgn;
+        private int lineBreaks;
+        private boolean afterLineBreak;
+
+        Boundaries(boolean pgn) {
+            this.pgn = pgn;
+        }
+
+        /**
+         * @return true if a game starts at this byte
+         */
+        boolean accept(byte b) {
+            if (!pgn) {
+                boolean start = afterLineBreak;
+                afterLineBreak = b == '\n';
+                return start;
+            }
+            if (b == '\n') {
+                lineBreaks++;
+                return false;
+            }
+            if (b == '\r' || b == ' ' || b == '\t') return false;
+            boolean start = b == '[' && lineBreaks >= 2;
+            lineBreaks = 0;
+            return start;
+        }
+    }
+}
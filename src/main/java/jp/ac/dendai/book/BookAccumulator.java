@@ -0,0 +1,121 @@
+package jp.ac.dendai.book;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Per-worker (position, move) statistics in an open-addressing table of
+ * parallel primitive arrays. When full, the entries are written as a run
+ * sorted by (position key, move) and the table starts over.
+ */
+final class BookAccumulator {
+    static final int WHITE_WINS = 0;
+    static final int DRAW = 1;
+    static final int BLACK_WINS = 2;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] keys;
+    private final short[] moves;
+    private final short[] sans;
+    private final int[] white;
+    private final int[] draws;
+    private final int[] black;
+    private final long[] ratingSum;
+    private final int[] ratingCount;
+    private int size;
+
+    /**
+     * @param capacity Maximum number of entries before {@link #isFull()}
+     */
+    BookAccumulator(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+        this.capacity = capacity;
+        this.mask = slots - 1;
+        this.keys = new long[slots];
+        this.moves = new short[slots];
+        this.sans = new short[slots];
+        this.white = new int[slots];
+        this.draws = new int[slots];
+        this.black = new int[slots];
+        this.ratingSum = new long[slots];
+        this.ratingCount = new int[slots];
+    }
+
+    /**
+     * @param move Move code (never MoveCodec.NONE, which marks a free slot)
+     * @param san Index into the builder's SAN dictionary
+     * @param result WHITE_WINS, DRAW or BLACK_WINS
+     * @param rating Average rating of the two players, or 0 if unknown
+     */
+    void add(long key, int move, int san, int result, int rating) {
+        int slot = slot(key, move);
+        while (moves[slot] != 0 && (keys[slot] != key || moves[slot] != (short) move)) {
+            slot = (slot + 1) & mask;
+        }
+        if (moves[slot] == 0) {
+            keys[slot] = key;
+            moves[slot] = (short) move;
+            sans[slot] = (short) san;
+            size++;
+        }
+
+        switch (result) {
+            case WHITE_WINS -> white[slot]++;
+            case DRAW -> draws[slot]++;
+            default -> black[slot]++;
+        }
+        if (rating > 0) {
+            ratingSum[slot] += rating;
+            ratingCount[slot]++;
+        }
+    }
+
+    boolean isFull() {
+        return size >= capacity;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Write all entries sorted by (key, move) and clear the table
+     */
+    void writeRun(Path file) throws IOException {
+        Integer[] order = new Integer[size];
+        int n = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            if (moves[slot] != 0) order[n++] = slot;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byKey = Long.compare(keys[a], keys[b]);
+            return byKey != 0 ? byKey : Integer.compare(moves[a] & 0xFFFF, moves[b] & 0xFFFF);
+        });
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            for (int slot : order) {
+                BookRun.write(out, keys[slot], moves[slot] & 0xFFFF, sans[slot] & 0xFFFF,
+                    white[slot], draws[slot], black[slot], ratingSum[slot], ratingCount[slot]);
+            }
+        }
+
+        Arrays.fill(moves, (short) 0);
+        Arrays.fill(white, 0);
+        Arrays.fill(draws, 0);
+        Arrays.fill(black, 0);
+        Arrays.fill(ratingSum, 0);
+        Arrays.fill(ratingCount, 0);
+        size = 0;
+    }
+
+    private int slot(long key, int move) {
+        long h = (key ^ (move * 0x9E3779B97F4A7C15L)) * 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,76 @@
+package jp.ac.dendai.book;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sequential reader of one sorted run written by {@link BookAccumulator}.
+ * Runs are temporary files that only live while a book is being built.
+ */
+final class BookRun implements Closeable {
+    private final DataInputStream in;
+
+    long key;
+    int move;
+    int san;
+    long white;
+    long draws;
+    long black;
+    long ratingSum;
+    long ratingCount;
+
+    BookRun(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+    }
+
+    static void write(DataOutputStream out, long key, int move, int san, long white, long draws,
+                      long black, long ratingSum, long ratingCount) throws IOException {
+        out.writeLong(key);
+        out.writeShort(move);
+        out.writeShort(san);
+        out.writeLong(white);
+        out.writeLong(draws);
+        out.writeLong(black);
+        out.writeLong(ratingSum);
+        out.writeLong(ratingCount);
+    }
+
+    /**
+     * Load the next record into the fields
+     * @return false at the end of the run
+     */
+    boolean next() throws IOException {
+        try {
+            key = in.readLong();
+        } catch (EOFException e) {
+            return false;
+        }
+        move = in.readUnsignedShort();
+        san = in.readUnsignedShort();
+        white = in.readLong();
+        draws = in.readLong();
+        black = in.readLong();
+        ratingSum = in.readLong();
+        ratingCount = in.readLong();
+        return true;
+    }
+
+    /**
+     * Order of records within a run and of the final book
+     */
+    int compareTo(BookRun other) {
+        int byKey = Long.compare(key, other.key);
+        return byKey != 0 ? byKey : Integer.compare(move, other.move);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,172 @@
+package jp.ac.dendai.book;
+
+import jp.ac.dendai.model.OpeningMove;
+import jp.ac.dendai.model.OpeningResponse;
+import jp.ac.dendai.util.MoveCodec;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Read-only opening book built by {@link OpeningBookBuilder}.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * header   magic, version, entry count, SAN table offset, max ply, reserved
+ * entries  sorted by (position key, move):
+ *          key long, move short, SAN index short, white/draws/black int, average rating int
+ * SAN      count int, then each SAN as modified UTF-8
+ * </pre>
+ * The entry section is memory-mapped; a lookup is a binary search for the
+ * first entry of a position followed by a scan over its moves.
+ */
+public class OpeningBook {
+    static final int MAGIC = 0x4F424B31; // "OBK1"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int ENTRY_SIZE = 28;
+    // A single mapping is limited to 2 GB
+    private static final int ENTRIES_PER_SEGMENT = Integer.MAX_VALUE / ENTRY_SIZE;
+
+    private final MappedByteBuffer[] segments;
+    private final long entryCount;
+    private final String[] sans;
+    private final int maxPly;
+
+    private OpeningBook(MappedByteBuffer[] segments, long entryCount, String[] sans, int maxPly) {
+        this.segments = segments;
+        this.entryCount = entryCount;
+        this.sans = sans;
+        this.maxPly = maxPly;
+    }
+
+    /**
+     * Map a book file into memory
+     * @throws IOException If the file is missing or not a book
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read fully
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not an opening book: " + file);
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported book version " + version + ": " + file);
+            }
+            long entryCount = header.getLong();
+            long sanTableOffset = header.getLong();
+            int maxPly = header.getInt();
+            if (sanTableOffset != HEADER_SIZE + entryCount * ENTRY_SIZE || sanTableOffset > channel.size()) {
+                throw new IOException("Corrupt opening book: " + file);
+            }
+
+            int segmentCount = (int) ((entryCount + ENTRIES_PER_SEGMENT - 1) / ENTRIES_PER_SEGMENT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long first = (long) i * ENTRIES_PER_SEGMENT;
+                long count = Math.min(ENTRIES_PER_SEGMENT, entryCount - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + first * ENTRY_SIZE, count * ENTRY_SIZE);
+            }
+
+            // Closed together with the channel
+            channel.position(sanTableOffset);
+            InputStream sanStream = Channels.newInputStream(channel);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(sanStream));
+            String[] sans = new String[in.readInt()];
+            for (int i = 0; i < sans.length; i++) {
+                sans[i] = in.readUTF();
+            }
+
+            return new OpeningBook(segments, entryCount, sans, maxPly);
+        }
+    }
+
+    /**
+     * Get the book moves of a position, most played first
+     * @param positionKey Zobrist key of the position (PositionTracker.getPositionKey())
+     * @return Statistics in the Opening Explorer format; no moves if the position is not in the book
+     */
+    public OpeningResponse lookup(long positionKey) {
+        List<OpeningMove> moves = new ArrayList<>();
+        long white = 0;
+        long draws = 0;
+        long black = 0;
+
+        for (long index = lowerBound(positionKey); index < entryCount && key(index) == positionKey; index++) {
+            ByteBuffer segment = segments[(int) (index / ENTRIES_PER_SEGMENT)];
+            int offset = (int) (index % ENTRIES_PER_SEGMENT) * ENTRY_SIZE;
+
+            OpeningMove move = new OpeningMove();
+            move.setUci(MoveCodec.toUci(segment.getShort(offset + 8) & 0xFFFF));
+            move.setSan(sans[segment.getShort(offset + 10) & 0xFFFF]);
+            move.setWhite(Integer.toUnsignedLong(segment.getInt(offset + 12)));
+            move.setDraws(Integer.toUnsignedLong(segment.getInt(offset + 16)));
+            move.setBlack(Integer.toUnsignedLong(segment.getInt(offset + 20)));
+            move.setAverageRating(segment.getInt(offset + 24));
+            moves.add(move);
+
+            white += move.getWhite();
+            draws += move.getDraws();
+            black += move.getBlack();
+        }
+        moves.sort(Comparator.comparingLong(OpeningMove::getTotalGames).reversed());
+
+        OpeningResponse response = new OpeningResponse();
+        response.setWhite(white);
+        response.setDraws(draws);
+        response.setBlack(black);
+        response.setMoves(moves);
+        return response;
+    }
+
+    /**
+     * Get the number of (position, move) entries
+     */
+    public long size() {
+        return entryCount;
+    }
+
+    /**
+     * Get the number of plies per game the book was built from
+     */
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    // First index whose key is not less than the given key
+    private long lowerBound(long positionKey) {
+        long low = 0;
+        long high = entryCount;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (key(mid) < positionKey) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long key(long index) {
+        ByteBuffer segment = segments[(int) (index / ENTRIES_PER_SEGMENT)];
+        return segment.getLong((int) (index % ENTRIES_PER_SEGMENT) * ENTRY_SIZE);
+    }
+}
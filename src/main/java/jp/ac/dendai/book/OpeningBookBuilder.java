@@ -0,0 +1,437 @@
+package jp.ac.dendai.book;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.util.PgnReader;
+import jp.ac.dendai.util.PositionTracker;
+import jp.ac.dendai.util.ThreadPools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Builds an {@link OpeningBook} from a PGN or Lichess NDJSON dump (optionally gzipped).
+ *
+ * The input is read sequentially and handed out in batches to worker threads,
+ * which replay the first plies of each game and count results per
+ * (position, move). Each worker spills its table to a sorted run file when
+ * it fills up, so memory stays bounded however large the input is; the runs
+ * are merged into the final book at the end.
+ *
+ * Usage: OpeningBookBuilder input.(pgn|ndjson)[.gz] output.book
+ *        [--threads=N] [--max-ply=N] [--min-games=N] [--max-entries=N]
+ */
+public class OpeningBookBuilder {
+    public static final int DEFAULT_MAX_PLY = 30;
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 21;
+    private static final int BATCH_SIZE = 256;
+
+    private final int threads;
+    private final int maxPly;
+    private final long minGames;
+    private final int maxEntries;
+    private final Gson gson = new Gson();
+
+    // SAN dictionary shared by all workers; the index is stored in the book
+    private final ConcurrentHashMap<String, Integer> sanIds = new ConcurrentHashMap<>();
+    private final List<String> sanTable = new ArrayList<>();
+
+    /**
+     * Result of one build
+     */
+    public static final class Stats {
+        private final long games;
+        private final long skipped;
+        private final long entries;
+
+        Stats(long games, long skipped, long entries) {
+            this.games = games;
+            this.skipped = skipped;
+            this.entries = entries;
+        }
+
+        public long getGames() { return games; }
+
+        /**
+         * Games without a result or with unreadable moves
+         */
+        public long getSkipped() { return skipped; }
+
+        public long getEntries() { return entries; }
+    }
+
+    public OpeningBookBuilder() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_PLY, 1, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param threads Number of worker threads
+     * @param maxPly Plies replayed per game
+     * @param minGames Moves played in fewer games are left out of the book
+     * @param maxEntries (position, move) entries held in memory across all workers before spilling
+     */
+    public OpeningBookBuilder(int threads, int maxPly, long minGames, int maxEntries) {
+        this.threads = Math.max(1, threads);
+        this.maxPly = maxPly;
+        this.minGames = minGames;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Build a book
+     * @param input PGN (".pgn") or NDJSON dump, optionally ending in ".gz"
+     * @param output Book file; replaced atomically when complete
+     */
+    public Stats build(Path input, Path output) throws IOException {
+        Path absolute = output.toAbsolutePath();
+        Path runDir = Files.createTempDirectory(absolute.getParent(), "book-runs");
+        List<Path> runs = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong runIds = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        boolean pgn = isPgn(input);
+
+        BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(threads * 2);
+        ExecutorService workers = Executors.newFixedThreadPool(threads, ThreadPools.daemonThreads("book-builder"));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(workers.submit(() -> {
+                    BookAccumulator accumulator = new BookAccumulator(Math.max(1024, maxEntries / threads));
+                    runWorker(queue, pgn, accumulator, runDir, runs, runIds, skipped, failure);
+                }));
+            }
+
+            long games = readInput(input, pgn, queue, failure);
+            for (int i = 0; i < threads; i++) {
+                queue.put(List.of());
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            if (failure.get() != null) {
+                throw failure.get() instanceof IOException e ? e : new IOException(failure.get());
+            }
+
+            long entries = merge(runs, absolute);
+            return new Stats(games, skipped.get(), entries);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            Files.deleteIfExists(runDir);
+        }
+    }
+
+    /**
+     * Read games as raw text and queue them in batches
+     * @return Number of games read
+     */
+    private long readInput(Path input, boolean pgn, BlockingQueue<List<String>> queue,
+                           AtomicReference<Throwable> failure) throws IOException, InterruptedException {
+        long games = 0;
+        try (BufferedReader reader = open(input)) {
+            PgnReader pgnReader = pgn ? new PgnReader(reader) : null;
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+
+            while (failure.get() == null) {
+                String text = pgn ? pgnReader.nextGameText() : reader.readLine();
+                if (text == null) break;
+                if (text.isBlank()) continue;
+
+                batch.add(text);
+                games++;
+                if (batch.size() == BATCH_SIZE) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                queue.put(batch);
+            }
+        }
+        return games;
+    }
+
+    private void runWorker(BlockingQueue<List<String>> queue, boolean pgn, BookAccumulator accumulator,
+                           Path runDir, List<Path> runs, AtomicLong runIds, AtomicLong skipped,
+                           AtomicReference<Throwable> failure) {
+        // One tracker per worker, reset for every game
+        PositionTracker tracker = new PositionTracker();
+        try {
+            while (true) {
+                List<String> batch = queue.take();
+                if (batch.isEmpty()) break;
+                // Keep draining after a failure so the reader never blocks
+                if (failure.get() != null) continue;
+
+                for (String text : batch) {
+                    if (!replay(parse(text, pgn), tracker, accumulator)) {
+                        skipped.incrementAndGet();
+                    }
+                    if (accumulator.isFull()) {
+                        spill(accumulator, runDir, runs, runIds);
+                    }
+                }
+            }
+            if (failure.get() == null && !accumulator.isEmpty()) {
+                spill(accumulator, runDir, runs, runIds);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+            // Drain until the end marker
+            try {
+                while (!queue.take().isEmpty()) {
+                    // discard
+                }
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Game parse(String text, boolean pgn) {
+        try {
+            return pgn ? PgnReader.parse(text) : gson.fromJson(text, Game.class);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Count the first plies of a game
+     * @return false if the game was skipped
+     */
+    private boolean replay(Game game, PositionTracker tracker, BookAccumulator accumulator) {
+        if (game == null) return false;
+        int result = result(game);
+        if (result < 0 || game.getMoves() == null || game.getMoves().isBlank()) return false;
+        int rating = averageRating(game);
+
+        tracker.reset();
+        String[] moves = game.getMoves().trim().split("\\s+");
+        for (int ply = 0; ply < Math.min(moves.length, maxPly); ply++) {
+            long key = tracker.getPositionKey();
+            try {
+                tracker.applyMoveSan(moves[ply]);
+            } catch (RuntimeException e) {
+                // Count the plies before an unreadable move
+                return ply > 0;
+            }
+            accumulator.add(key, tracker.getLastMoveCode(), sanId(moves[ply]), result, rating);
+        }
+        return true;
+    }
+
+    private void spill(BookAccumulator accumulator, Path runDir, List<Path> runs, AtomicLong runIds)
+            throws IOException {
+        Path run = runDir.resolve("run-" + runIds.incrementAndGet() + ".bin");
+        runs.add(run);
+        accumulator.writeRun(run);
+    }
+
+    /**
+     * Merge the sorted runs, summing entries of the same (position, move)
+     * @return Number of entries written
+     */
+    private long merge(List<Path> runPaths, Path output) throws IOException {
+        Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+        List<BookRun> runs = new ArrayList<>();
+        PriorityQueue<BookRun> heads = new PriorityQueue<>(BookRun::compareTo);
+        long entries = 0;
+        long sanTableOffset;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            for (Path path : runPaths) {
+                BookRun run = new BookRun(path);
+                runs.add(run);
+                if (run.next()) heads.add(run);
+            }
+
+            // Header is rewritten once the counts are known
+            out.write(new byte[OpeningBook.HEADER_SIZE]);
+
+            while (!heads.isEmpty()) {
+                BookRun first = heads.poll();
+                long key = first.key;
+                int move = first.move;
+                int san = first.san;
+                long white = first.white;
+                long draws = first.draws;
+                long black = first.black;
+                long ratingSum = first.ratingSum;
+                long ratingCount = first.ratingCount;
+                if (first.next()) heads.add(first);
+
+                while (!heads.isEmpty() && heads.peek().key == key && heads.peek().move == move) {
+                    BookRun same = heads.poll();
+                    white += same.white;
+                    draws += same.draws;
+                    black += same.black;
+                    ratingSum += same.ratingSum;
+                    ratingCount += same.ratingCount;
+                    if (same.next()) heads.add(same);
+                }
+
+                if (white + draws + black < minGames) continue;
+                out.writeLong(key);
+                out.writeShort(move);
+                out.writeShort(san);
+                out.writeInt(saturate(white));
+                out.writeInt(saturate(draws));
+                out.writeInt(saturate(black));
+                out.writeInt(ratingCount > 0 ? (int) (ratingSum / ratingCount) : 0);
+                entries++;
+            }
+
+            sanTableOffset = OpeningBook.HEADER_SIZE + entries * OpeningBook.ENTRY_SIZE;
+            synchronized (sanTable) {
+                out.writeInt(sanTable.size());
+                for (String san : sanTable) {
+                    out.writeUTF(san);
+                }
+            }
+        } finally {
+            for (BookRun run : runs) {
+                run.close();
+            }
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(tmp.toFile(), "rw")) {
+            file.writeInt(OpeningBook.MAGIC);
+            file.writeInt(OpeningBook.FORMAT_VERSION);
+            file.writeLong(entries);
+            file.writeLong(sanTableOffset);
+            file.writeInt(maxPly);
+            file.writeInt(0);
+            file.getFD().sync();
+        }
+        Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return entries;
+    }
+
+    private int sanId(String san) {
+        Integer id = sanIds.get(san);
+        if (id != null) return id;
+        synchronized (sanTable) {
+            return sanIds.computeIfAbsent(san, s -> {
+                if (sanTable.size() > 0xFFFF) {
+                    throw new IllegalStateException("Too many distinct moves");
+                }
+                sanTable.add(s);
+                return sanTable.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * @return BookAccumulator result, or -1 for unfinished games
+     */
+    private static int result(Game game) {
+        if ("white".equals(game.getWinner())) return BookAccumulator.WHITE_WINS;
+        if ("black".equals(game.getWinner())) return BookAccumulator.BLACK_WINS;
+        if (!game.isFinished()) return -1;
+        return BookAccumulator.DRAW;
+    }
+
+    private static int averageRating(Game game) {
+        if (game.getPlayers() == null) return 0;
+        int white = game.getPlayers().getWhite() != null ? game.getPlayers().getWhite().getRating() : 0;
+        int black = game.getPlayers().getBlack() != null ? game.getPlayers().getBlack().getRating() : 0;
+        if (white > 0 && black > 0) return (white + black) / 2;
+        return Math.max(white, black);
+    }
+
+    private static int saturate(long count) {
+        return (int) Math.min(count, 0xFFFFFFFFL);
+    }
+
+    private static boolean isPgn(Path input) {
+        String name = input.getFileName().toString().toLowerCase();
+        if (name.endsWith(".gz")) name = name.substring(0, name.length() - 3);
+        return name.endsWith(".pgn");
+    }
+
+    private static BufferedReader open(Path input) throws IOException {
+        InputStream in = Files.newInputStream(input);
+        if (input.getFileName().toString().toLowerCase().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    public static void main(String[] args) {
+        List<String> paths = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxPly = DEFAULT_MAX_PLY;
+        long minGames = 1;
+        int maxEntries = DEFAULT_MAX_ENTRIES;
+
+        try {
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    paths.add(arg);
+                    continue;
+                }
+                String[] option = arg.substring(2).split("=", 2);
+                String value = option.length > 1 ? option[1] : "";
+                switch (option[0]) {
+                    case "threads" -> threads = Integer.parseInt(value);
+                    case "max-ply" -> maxPly = Integer.parseInt(value);
+                    case "min-games" -> minGames = Long.parseLong(value);
+                    case "max-entries" -> maxEntries = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (paths.size() != 2) {
+                throw new IllegalArgumentException("Usage: OpeningBookBuilder <input.pgn|input.ndjson> <output.book>");
+            }
+
+            System.out.println("定石ブックを作成中: " + paths.get(0));
+            long start = System.nanoTime();
+            Stats stats = new OpeningBookBuilder(threads, maxPly, minGames, maxEntries)
+                .build(Paths.get(paths.get(0)), Paths.get(paths.get(1)));
+            long seconds = (System.nanoTime() - start) / 1_000_000_000L;
+
+            System.out.println("対局数: " + stats.getGames() + " (スキップ: " + stats.getSkipped() + ")");
+            System.out.println("登録手数: " + stats.getEntries());
+            System.out.println("所要時間: " + seconds + " 秒");
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("エラー: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package jp.ac.dendai.cache;
+
+import jp.ac.dendai.model.EngineResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Engine results keyed by position, bounded in memory with LRU eviction and
+ * optionally persisted as an append-only log (same scheme as ExplorerCache).
+ *
+ * The key is the FEN without the halfmove and fullmove counters, so the same
+ * position reached at a different move number is a hit. A result answers
+ * any request of equal or lower depth; a deeper result replaces a shallower one.
+ */
+public class EngineCache implements Closeable {
+    private static final int MAGIC = 0x454E4743; // "ENGC"
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path file;
+    private final Map<String, Entry> entries;
+    private DataOutputStream out;
+
+    private static class Entry {
+        final int depth;
+        final EngineResponse response;
+
+        Entry(int depth, EngineResponse response) {
+            this.depth = depth;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Create an in-memory cache
+     * @param maxEntries Least recently used positions are evicted beyond this
+     */
+    public EngineCache(int maxEntries) {
+        this(null, maxEntries);
+    }
+
+    private EngineCache(Path file, int maxEntries) {
+        this.file = file;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Open (or create) a persistent cache and load the most recent entries from it
+     * @param file Cache file
+     * @param maxEntries Least recently used positions are evicted beyond this
+     */
+    public static EngineCache open(Path file, int maxEntries) throws IOException {
+        EngineCache cache = new EngineCache(file, maxEntries);
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * Get the position key: FEN without the move counters
+     */
+    public static String normalize(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length <= 4) return String.join(" ", fields);
+        return fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3];
+    }
+
+    /**
+     * Get a cached result searched at least as deep as requested
+     * @param fen Position (move counters are ignored)
+     * @param depth Requested depth
+     * @return Cached result, or null if missing or too shallow
+     */
+    public synchronized EngineResponse get(String fen, int depth) {
+        Entry entry = entries.get(normalize(fen));
+        return entry != null && entry.depth >= depth ? entry.response : null;
+    }
+
+    /**
+     * Store a result unless a deeper one is already cached
+     * @param depth Depth the result answers
+     */
+    public void put(String fen, int depth, EngineResponse response) throws IOException {
+        String key = normalize(fen);
+        synchronized (this) {
+            Entry existing = entries.get(key);
+            if (existing != null && existing.depth >= depth) return;
+
+            entries.put(key, new Entry(depth, response));
+            if (out != null) {
+                writeRecord(out, key, depth, response);
+                out.flush();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        int records = 0;
+        boolean rewrite = true;
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION) {
+                    rewrite = false;
+                    while (true) {
+                        String key;
+                        try {
+                            key = in.readUTF();
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        int depth = in.readInt();
+                        EngineResponse response = readResponse(in);
+                        records++;
+                        // Later records are more recent; keep the deepest result
+                        Entry existing = entries.get(key);
+                        if (existing == null || existing.depth <= depth) {
+                            entries.put(key, new Entry(depth, response));
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                // A record cut short by a crash - keep what was read and rewrite the log
+                rewrite = true;
+            }
+        }
+
+        // Compact when the log holds mostly superseded or evicted records
+        if (rewrite || records > entries.size() * 2) {
+            compact();
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream tmpOut = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            tmpOut.writeInt(MAGIC);
+            tmpOut.writeInt(FORMAT_VERSION);
+            // Oldest first, so the recency order survives a reload
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                writeRecord(tmpOut, e.getKey(), e.getValue().depth, e.getValue().response);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeRecord(DataOutputStream out, String key, int depth,
+                                    EngineResponse response) throws IOException {
+        out.writeUTF(key);
+        out.writeInt(depth);
+        writeNullable(out, response.getFrom());
+        writeNullable(out, response.getTo());
+        writeNullable(out, response.getSan());
+        writeNullable(out, response.getText());
+        out.writeBoolean(response.getEval() != null);
+        if (response.getEval() != null) out.writeDouble(response.getEval());
+        out.writeInt(response.getDepth() != null ? response.getDepth() : -1);
+
+        List<String> pv = response.getPv() != null ? response.getPv() : List.of();
+        out.writeShort(pv.size());
+        for (String move : pv) {
+            out.writeUTF(move);
+        }
+    }
+
+    private static EngineResponse readResponse(DataInputStream in) throws IOException {
+        EngineResponse response = new EngineResponse();
+        response.setFrom(readNullable(in));
+        response.setTo(readNullable(in));
+        response.setSan(readNullable(in));
+        response.setText(readNullable(in));
+        if (in.readBoolean()) response.setEval(in.readDouble());
+        int depth = in.readInt();
+        response.setDepth(depth >= 0 ? depth : null);
+
+        int count = in.readUnsignedShort();
+        List<String> pv = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pv.add(in.readUTF());
+        }
+        response.setPv(pv);
+        return response;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,211 @@
+package jp.ac.dendai.cache;
+
+import jp.ac.dendai.model.OpeningMove;
+import jp.ac.dendai.model.OpeningResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent Opening Explorer cache keyed by the Zobrist hash of a position.
+ *
+ * The file is an append-only log of binary records behind a small header
+ * (magic + format version). It is read completely on open (warm start), and
+ * every newly fetched position is appended. Transpositions share one entry
+ * because the key is the position hash, not the move order.
+ *
+ * Loaded entries are held in a {@link PositionStore}, so memory stays
+ * within the given bound; positions evicted from it are also dropped from
+ * the file on the next compaction.
+ */
+public class ExplorerCache implements Closeable {
+    private static final int MAGIC = 0x4F455843; // "OEXC"
+    private static final int FORMAT_VERSION = 1;
+    public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+    private final Path file;
+    private final long ttlMillis;
+    private final PositionStore entries;
+    private DataOutputStream out;
+
+    private ExplorerCache(Path file, Duration ttl, long maxBytes) {
+        this.file = file;
+        this.ttlMillis = ttl.toMillis();
+        this.entries = new PositionStore(maxBytes);
+    }
+
+    /**
+     * Open (or create) a cache file and load all live entries from it
+     * @param file Cache file
+     * @param ttl Entries older than this are ignored and dropped on compaction
+     */
+    public static ExplorerCache open(Path file, Duration ttl) throws IOException {
+        return open(file, ttl, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Open (or create) a cache file, keeping at most about maxBytes of entries in memory
+     * @param file Cache file
+     * @param ttl Entries older than this are ignored and dropped on compaction
+     * @param maxBytes Off-heap memory for entries; the least used positions are evicted beyond it
+     */
+    public static ExplorerCache open(Path file, Duration ttl, long maxBytes) throws IOException {
+        ExplorerCache cache = new ExplorerCache(file, ttl, maxBytes);
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * Get the cached explorer response for a position
+     * @param positionKey Zobrist hash of the position
+     * @return Cached response, or null if missing or expired
+     */
+    public OpeningResponse get(long positionKey) {
+        return entries.get(positionKey, System.currentTimeMillis() - ttlMillis);
+    }
+
+    /**
+     * Store an explorer response and append it to the cache file;
+     * does nothing once the cache is closed
+     */
+    public void put(long positionKey, OpeningResponse response) throws IOException {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (out == null) return;
+            entries.put(positionKey, now, response);
+            writeRecord(out, positionKey, now, response);
+            out.flush();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private boolean isExpired(long fetchedAt, long now) {
+        return now - fetchedAt > ttlMillis;
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        int records = 0;
+        boolean rewrite = true;
+        if (Files.exists(file)) {
+            long now = System.currentTimeMillis();
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION) {
+                    rewrite = false;
+                    while (true) {
+                        long key;
+                        try {
+                            key = in.readLong();
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        long fetchedAt = in.readLong();
+                        OpeningResponse response = readResponse(in);
+                        records++;
+                        if (!isExpired(fetchedAt, now)) {
+                            entries.put(key, fetchedAt, response);
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                // A record cut short by a crash - keep what was read and rewrite the log
+                rewrite = true;
+            }
+        }
+
+        // Compact when the log holds mostly superseded or expired records
+        if (rewrite || records > entries.size() * 2) {
+            compact();
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream tmpOut = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            tmpOut.writeInt(MAGIC);
+            tmpOut.writeInt(FORMAT_VERSION);
+            IOException[] failure = {null};
+            entries.forEach((key, fetchedAt, response) -> {
+                if (failure[0] != null) return;
+                try {
+                    writeRecord(tmpOut, key, fetchedAt, response);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeRecord(DataOutputStream out, long key, long fetchedAt,
+                                    OpeningResponse response) throws IOException {
+        out.writeLong(key);
+        out.writeLong(fetchedAt);
+        out.writeLong(response.getWhite());
+        out.writeLong(response.getDraws());
+        out.writeLong(response.getBlack());
+
+        List<OpeningMove> moves = response.getMoves() != null ? response.getMoves() : List.of();
+        out.writeShort(moves.size());
+        for (OpeningMove move : moves) {
+            out.writeUTF(move.getUci());
+            out.writeUTF(move.getSan());
+            out.writeLong(move.getWhite());
+            out.writeLong(move.getDraws());
+            out.writeLong(move.getBlack());
+            out.writeInt(move.getAverageRating());
+        }
+    }
+
+    private static OpeningResponse readResponse(DataInputStream in) throws IOException {
+        OpeningResponse response = new OpeningResponse();
+        response.setWhite(in.readLong());
+        response.setDraws(in.readLong());
+        response.setBlack(in.readLong());
+
+        int count = in.readUnsignedShort();
+        List<OpeningMove> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            OpeningMove move = new OpeningMove();
+            move.setUci(in.readUTF());
+            move.setSan(in.readUTF());
+            move.setWhite(in.readLong());
+            move.setDraws(in.readLong());
+            move.setBlack(in.readLong());
+            move.setAverageRating(in.readInt());
+            moves.add(move);
+        }
+        response.setMoves(moves);
+        return response;
+    }
+}
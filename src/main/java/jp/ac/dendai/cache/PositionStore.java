@@ -0,0 +1,374 @@
+package jp.ac.dendai.cache;
+
+import jp.ac.dendai.model.OpeningMove;
+import jp.ac.dendai.model.OpeningResponse;
+import jp.ac.dendai.util.MoveCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, size-bounded store of explorer statistics keyed by position hash.
+ *
+ * Records live off-heap in a ring of direct buffer segments, allocated as
+ * the ring first reaches them. A record holds the position totals and, per
+ * move, a 16-bit move code (see {@link MoveCodec}), a 16-bit index into a
+ * shared SAN dictionary, the result counts and the average rating - about 30
+ * bytes per move instead of a few hundred for OpeningMove objects and their
+ * strings. A primitive open-addressing table maps position keys to record
+ * offsets.
+ *
+ * New records are appended at the head of the ring. When it is full, the
+ * record at the tail is evicted unless it was read since it last reached
+ * the tail, in which case it is moved to the head instead (each read buys
+ * one more pass, up to three). Eviction therefore frees exactly the bytes a
+ * new record needs and favours positions that are read often.
+ *
+ * All methods are synchronized; each holds the lock only to copy one record.
+ */
+public class PositionStore {
+    static final int DEFAULT_SEGMENT_SIZE = 4 << 20;
+
+    // Record layout: length, key, fetchedAt, white, draws, black, move count, moves
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 8 + 8 + 8 + 2;
+    // Move layout: code, SAN index, white, draws, black, average rating
+    private static final int MOVE_SIZE = 2 + 2 + 8 + 8 + 8 + 2;
+    private static final int NO_SAN = 0xFFFF;
+    private static final int MAX_HITS = 3;
+    private static final int EMPTY = -1;
+
+    private final int segmentSize;
+    private final ByteBuffer[] segments;
+    private final int capacity;
+    private int head;
+    private int tail;
+    private int used;
+
+    // Open-addressing index: key -> record offset, plus the read count driving eviction
+    private long[] keys;
+    private int[] offsets;
+    private byte[] hits;
+    private int size;
+
+    private final Map<String, Integer> sanIds = new HashMap<>();
+    private final List<String> sans = new ArrayList<>();
+
+    /**
+     * Receives stored records
+     */
+    public interface Visitor {
+        void visit(long positionKey, long fetchedAt, OpeningResponse response);
+    }
+
+    /**
+     * @param maxBytes Off-heap memory for records, rounded up to whole 4 MB segments
+     */
+    public PositionStore(long maxBytes) {
+        this(maxBytes, DEFAULT_SEGMENT_SIZE);
+    }
+
+    PositionStore(long maxBytes, int segmentSize) {
+        long count = Math.max(1, (maxBytes + segmentSize - 1) / segmentSize);
+        if (count * segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Store too large: " + maxBytes);
+        }
+        this.segmentSize = segmentSize;
+        this.segments = new ByteBuffer[(int) count];
+        this.capacity = (int) count * segmentSize;
+        resizeIndex(1024);
+    }
+
+    /**
+     * Get the statistics of a position
+     * @param notBefore Records fetched before this time (epoch milliseconds) are dropped
+     * @return Decoded response, or null if the position is missing or too old
+     */
+    public synchronized OpeningResponse get(long positionKey, long notBefore) {
+        int slot = find(positionKey);
+        if (slot < 0) return null;
+        int offset = offsets[slot];
+        if (segment(offset).getLong(position(offset) + 12) < notBefore) {
+            removeSlot(slot);
+            return null;
+        }
+        if (hits[slot] < MAX_HITS) hits[slot]++;
+        return read(offset);
+    }
+
+    /**
+     * Store the statistics of a position, replacing any older record.
+     * Responses that cannot be encoded (unknown move notation, too many
+     * distinct SAN strings) are not stored.
+     * @param fetchedAt Fetch time in epoch milliseconds
+     */
+    public synchronized void put(long positionKey, long fetchedAt, OpeningResponse response) {
+        List<OpeningMove> moves = response.getMoves() != null ? response.getMoves() : List.of();
+        int length = align(HEADER_SIZE + moves.size() * MOVE_SIZE);
+        if (length > segmentSize || moves.size() > 0xFFFF) return;
+
+        int[] codes = new int[moves.size()];
+        int[] sanIndexes = new int[moves.size()];
+        for (int i = 0; i < codes.length; i++) {
+            OpeningMove move = moves.get(i);
+            try {
+                codes[i] = MoveCodec.encode(move.getUci());
+            } catch (RuntimeException e) {
+                return;
+            }
+            sanIndexes[i] = sanId(move.getSan());
+            if (sanIndexes[i] < 0) return;
+        }
+
+        int offset = allocate(length);
+        ByteBuffer segment = segment(offset);
+        int p = position(offset);
+        segment.putInt(p, length);
+        segment.putLong(p + 4, positionKey);
+        segment.putLong(p + 12, fetchedAt);
+        segment.putLong(p + 20, response.getWhite());
+        segment.putLong(p + 28, response.getDraws());
+        segment.putLong(p + 36, response.getBlack());
+        segment.putShort(p + 44, (short) codes.length);
+        p += HEADER_SIZE;
+        for (int i = 0; i < codes.length; i++, p += MOVE_SIZE) {
+            OpeningMove move = moves.get(i);
+            segment.putShort(p, (short) codes[i]);
+            segment.putShort(p + 2, (short) sanIndexes[i]);
+            segment.putLong(p + 4, move.getWhite());
+            segment.putLong(p + 12, move.getDraws());
+            segment.putLong(p + 20, move.getBlack());
+            segment.putChar(p + 28, (char) Math.max(0, Math.min(0xFFFF, move.getAverageRating())));
+        }
+
+        int slot = find(positionKey);
+        if (slot >= 0) {
+            offsets[slot] = offset;
+        } else {
+            insert(positionKey, offset);
+        }
+    }
+
+    /**
+     * Visit every stored record, oldest first
+     */
+    public synchronized void forEach(Visitor visitor) {
+        for (int offset = tail, remaining = used; remaining > 0; ) {
+            int length = segment(offset).getInt(position(offset));
+            int skip = Math.abs(length);
+            if (length > 0) {
+                long key = segment(offset).getLong(position(offset) + 4);
+                int slot = find(key);
+                if (slot >= 0 && offsets[slot] == offset) {
+                    visitor.visit(key, segment(offset).getLong(position(offset) + 12), read(offset));
+                }
+            }
+            offset = (offset + skip) % capacity;
+            remaining -= skip;
+        }
+    }
+
+    /**
+     * Number of positions stored
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Bytes of the ring taken by records, including superseded ones not reclaimed yet
+     */
+    public synchronized long getUsedBytes() {
+        return used;
+    }
+
+    private OpeningResponse read(int offset) {
+        ByteBuffer segment = segment(offset);
+        int p = position(offset);
+        OpeningResponse response = new OpeningResponse();
+        response.setWhite(segment.getLong(p + 20));
+        response.setDraws(segment.getLong(p + 28));
+        response.setBlack(segment.getLong(p + 36));
+
+        int count = Short.toUnsignedInt(segment.getShort(p + 44));
+        List<OpeningMove> moves = new ArrayList<>(count);
+        p += HEADER_SIZE;
+        for (int i = 0; i < count; i++, p += MOVE_SIZE) {
+            OpeningMove move = new OpeningMove();
+            move.setUci(MoveCodec.toUci(Short.toUnsignedInt(segment.getShort(p))));
+            int san = Short.toUnsignedInt(segment.getShort(p + 2));
+            move.setSan(san != NO_SAN ? sans.get(san) : null);
+            move.setWhite(segment.getLong(p + 4));
+            move.setDraws(segment.getLong(p + 12));
+            move.setBlack(segment.getLong(p + 20));
+            move.setAverageRating(segment.getChar(p + 28));
+            moves.add(move);
+        }
+        response.setMoves(moves);
+        return response;
+    }
+
+    /**
+     * @return Dictionary index of a SAN string, or -1 if the dictionary is full
+     */
+    private int sanId(String san) {
+        if (san == null) return NO_SAN;
+        Integer id = sanIds.get(san);
+        if (id != null) return id;
+        if (sans.size() >= NO_SAN) return -1;
+        sanIds.put(san, sans.size());
+        sans.add(san);
+        return sans.size() - 1;
+    }
+
+    // ---- Ring ----
+
+    /**
+     * Reserve space at the head, evicting from the tail until it fits
+     */
+    private int allocate(int length) {
+        while (true) {
+            int offset = reserve(length);
+            if (offset >= 0) return offset;
+            evictTail();
+        }
+    }
+
+    /**
+     * Reserve space at the head without evicting. A record never spans two
+     * segments; the rest of a segment too small for it is skipped.
+     * @return Offset of the space, or -1 if the ring is too full
+     */
+    private int reserve(int length) {
+        if (used == 0) {
+            head = 0;
+            tail = 0;
+        }
+        int room = segmentSize - position(head);
+        if (room < length) {
+            if (capacity - used < room + length) return -1;
+            // A negative length marks skipped space
+            segment(head).putInt(position(head), -room);
+            head = (head + room) % capacity;
+            used += room;
+        }
+        if (capacity - used < length) return -1;
+        int offset = head;
+        head = (head + length) % capacity;
+        used += length;
+        return offset;
+    }
+
+    private void evictTail() {
+        int offset = tail;
+        ByteBuffer segment = segment(offset);
+        int length = segment.getInt(position(offset));
+        int skip = Math.abs(length);
+        tail = (tail + skip) % capacity;
+        used -= skip;
+        if (length < 0) return;
+
+        long key = segment.getLong(position(offset) + 4);
+        int slot = find(key);
+        // Superseded by a newer record, or removed
+        if (slot < 0 || offsets[slot] != offset) return;
+
+        if (hits[slot] > 0) {
+            // Give a record read since its last pass another one. The space it
+            // just freed is reused at once, so this never evicts anything else.
+            byte[] record = new byte[length];
+            segment.get(position(offset), record);
+            int moved = reserve(length);
+            if (moved >= 0) {
+                segment(moved).put(position(moved), record);
+                offsets[slot] = moved;
+                hits[slot]--;
+                return;
+            }
+        }
+        removeSlot(slot);
+    }
+
+    private ByteBuffer segment(int offset) {
+        int index = offset / segmentSize;
+        ByteBuffer segment = segments[index];
+        if (segment == null) {
+            segment = ByteBuffer.allocateDirect(segmentSize);
+            segments[index] = segment;
+        }
+        return segment;
+    }
+
+    private int position(int offset) {
+        return offset % segmentSize;
+    }
+
+    // Keeps room for a skip marker at the end of every segment
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+
+    // ---- Index (linear probing, backward-shift deletion) ----
+
+    private int home(long key) {
+        return Long.hashCode(key * 0x9E3779B97F4A7C15L) & (keys.length - 1);
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int slot = home(key); offsets[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return slot;
+        }
+        return -1;
+    }
+
+    private void insert(long key, int offset) {
+        if ((size + 1) * 2 > keys.length) {
+            resizeIndex(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = home(key);
+        while (offsets[slot] != EMPTY) slot = (slot + 1) & mask;
+        keys[slot] = key;
+        offsets[slot] = offset;
+        hits[slot] = 0;
+        size++;
+    }
+
+    private void removeSlot(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; offsets[next] != EMPTY; next = (next + 1) & mask) {
+            // Move an entry back into the hole unless its home lies between the hole and itself
+            if (((next - home(keys[next])) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                offsets[hole] = offsets[next];
+                hits[hole] = hits[next];
+                hole = next;
+            }
+        }
+        offsets[hole] = EMPTY;
+        size--;
+    }
+
+    private void resizeIndex(int slots) {
+        long[] oldKeys = keys;
+        int[] oldOffsets = offsets;
+        byte[] oldHits = hits;
+        keys = new long[slots];
+        offsets = new int[slots];
+        hits = new byte[slots];
+        Arrays.fill(offsets, EMPTY);
+        size = 0;
+        if (oldKeys == null) return;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldOffsets[i] == EMPTY) continue;
+            insert(oldKeys[i], oldOffsets[i]);
+            hits[find(oldKeys[i])] = oldHits[i];
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package jp.ac.dendai.engine;
+
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.cache.EngineCache;
+import jp.ac.dendai.metrics.Metrics;
+import jp.ac.dendai.model.EngineResponse;
+import jp.ac.dendai.util.Futures;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Engine decorator that answers repeated positions from an EngineCache.
+ * Concurrent requests for the same position and depth share one search.
+ * Results are cached under the depth the engine reports, so give every
+ * engine backend its own cache.
+ *
+ * A time-limited engine reaches whatever depth its budget allows, rarely
+ * the requested one. For such an engine any cached result is accepted:
+ * searching again with the same budget would not get deeper. Give each
+ * budget its own cache too.
+ */
+public class CachingEngine implements ChessEngine {
+    private final ChessEngine engine;
+    private final EngineCache cache;
+    private final boolean timeLimited;
+    private final Map<String, CompletableFuture<EngineResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public CachingEngine(ChessEngine engine, EngineCache cache) {
+        this(engine, cache, false);
+    }
+
+    /**
+     * @param timeLimited Whether the engine stops on a time budget rather than at the requested depth
+     */
+    public CachingEngine(ChessEngine engine, EngineCache cache, boolean timeLimited) {
+        this.engine = engine;
+        this.cache = cache;
+        this.timeLimited = timeLimited;
+    }
+
+    @Override
+    public CompletableFuture<EngineResponse> analyze(String fen, int depth, RequestScheduler.Lane lane) {
+        EngineResponse cached = cache.get(fen, timeLimited ? 0 : depth);
+        Metrics.shared().cache("engine").record(cached != null);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        String key = depth + " " + EngineCache.normalize(fen);
+        CompletableFuture<EngineResponse> search = inFlight.computeIfAbsent(key, k -> {
+            CompletableFuture<EngineResponse> started = engine.analyze(fen, depth, lane);
+            return Futures.propagateCancel(started, started.thenApply(response -> {
+                store(fen, response);
+                return response;
+            }));
+        });
+        search.whenComplete((response, error) -> inFlight.remove(key, search));
+        return search.copy();
+    }
+
+    private void store(String fen, EngineResponse response) {
+        // Without a depth the result cannot tell which requests it is good enough for
+        if (response == null || response.getDepth() == null) return;
+        // File it under the depth actually searched; a search cut short by its
+        // time budget only answers shallower requests, and a deeper one replaces it
+        try {
+            cache.put(fen, response.getDepth(), response);
+        } catch (IOException e) {
+            // The result is still good; the position is just searched again next run
+        }
+    }
+}
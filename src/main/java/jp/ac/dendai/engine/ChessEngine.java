@@ -0,0 +1,21 @@
+package jp.ac.dendai.engine;
+
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.model.EngineResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of best moves for a position
+ */
+public interface ChessEngine {
+    /**
+     * Find the best move for a position
+     * @param fen Position in FEN format
+     * @param depth Requested search depth
+     * @param lane Priority of the request, for engines that queue requests
+     * @return Future of the best move; the reported depth may be lower when
+     *         the engine stops early (e.g. on a time budget)
+     */
+    CompletableFuture<EngineResponse> analyze(String fen, int depth, RequestScheduler.Lane lane);
+}
@@ -0,0 +1,116 @@
+package jp.ac.dendai.engine;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.move.Move;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.model.EngineResponse;
+import jp.ac.dendai.util.MoveCodec;
+import jp.ac.dendai.util.ThreadPools;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process engine: iterative-deepening alpha-beta on chesslib's move
+ * generation. Positions are searched in parallel, one per core, each within
+ * a fixed time budget; all searches share one transposition table.
+ */
+public class LocalSearchEngine implements ChessEngine, Closeable {
+    private static final int TABLE_SIZE_BITS = 22; // 4M entries, 64 MB
+    private static final int MAX_PV_LENGTH = 16;
+
+    private final ExecutorService executor;
+    private final TranspositionTable table;
+    private final long timeBudgetNanos;
+
+    /**
+     * @param timeBudget Maximum search time per position
+     * @param threads Number of positions searched in parallel
+     */
+    public LocalSearchEngine(Duration timeBudget, int threads) {
+        this.executor = Executors.newFixedThreadPool(threads, ThreadPools.daemonThreads("local-engine"));
+        this.table = new TranspositionTable(TABLE_SIZE_BITS);
+        this.timeBudgetNanos = timeBudget.toNanos();
+    }
+
+    @Override
+    public CompletableFuture<EngineResponse> analyze(String fen, int depth, RequestScheduler.Lane lane) {
+        return CompletableFuture.supplyAsync(() -> search(fen, depth), executor);
+    }
+
+    /**
+     * Search a position on the calling thread
+     * @return Best move, or null if the side to move has no legal move
+     */
+    public EngineResponse search(String fen, int depth) {
+        Board board = new Board();
+        board.loadFromFen(fen);
+        long deadline = System.nanoTime() + timeBudgetNanos;
+
+        Search.Result result = new Search(board, table, deadline).run(depth);
+        if (result == null) return null;
+
+        Board root = new Board();
+        root.loadFromFen(fen);
+        return toResponse(root, result);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private EngineResponse toResponse(Board root, Search.Result result) {
+        Move best = MoveCodec.toMove(result.move, root.getSideToMove());
+        String uci = MoveCodec.toUci(result.move);
+
+        // Scores are from the side to move; the remote API reports pawns from White's side
+        int whiteScore = root.getSideToMove() == Side.WHITE ? result.score : -result.score;
+
+        EngineResponse response = new EngineResponse();
+        response.setFrom(uci.substring(0, 2));
+        response.setTo(uci.substring(2, 4));
+        response.setSan(toSan(root.getFen(), best));
+        response.setEval(whiteScore / 100.0);
+        response.setDepth(result.depth);
+        response.setPv(principalVariation(root.getFen(), result.move, result.depth));
+        response.setText("Move " + response.getSan() + " [" + response.getEval() + "]. Depth " + result.depth + ".");
+        return response;
+    }
+
+    /**
+     * Follow transposition table moves from the root, keeping only legal ones
+     */
+    private List<String> principalVariation(String fen, int firstMove, int depth) {
+        Board board = new Board();
+        board.loadFromFen(fen);
+
+        List<String> pv = new ArrayList<>();
+        int move = firstMove;
+        while (move != MoveCodec.NONE && pv.size() < Math.min(depth, MAX_PV_LENGTH)) {
+            Move next = MoveCodec.toMove(move, board.getSideToMove());
+            if (!board.legalMoves().contains(next)) break;
+            board.doMove(next);
+            pv.add(MoveCodec.toUci(move));
+            move = TranspositionTable.move(table.probe(board.getZobristKey()));
+        }
+        return pv;
+    }
+
+    private static String toSan(String fen, Move move) {
+        try {
+            MoveList moves = new MoveList(fen);
+            moves.add(move);
+            return moves.toSanArray()[0];
+        } catch (Exception e) {
+            return MoveCodec.toUci(MoveCodec.encode(move));
+        }
+    }
+}
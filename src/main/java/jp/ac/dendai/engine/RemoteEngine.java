@@ -0,0 +1,30 @@
+package jp.ac.dendai.engine;
+
+import com.google.gson.Gson;
+import jp.ac.dendai.api.ChessEngineApi;
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.model.EngineResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Engine backed by chess-api.com
+ */
+public class RemoteEngine implements ChessEngine {
+    private final ChessEngineApi client;
+    private final RequestScheduler scheduler;
+    private final Gson gson;
+
+    public RemoteEngine(ChessEngineApi client, RequestScheduler scheduler) {
+        this.client = client;
+        this.scheduler = scheduler;
+        this.gson = new Gson();
+    }
+
+    @Override
+    public CompletableFuture<EngineResponse> analyze(String fen, int depth, RequestScheduler.Lane lane) {
+        return scheduler.submit(RequestScheduler.ENGINE, depth + " " + fen, lane,
+                () -> client.getBestMoveAsync(fen, depth))
+            .thenApply(json -> gson.fromJson(json, EngineResponse.class));
+    }
+}
@@ -0,0 +1,286 @@
+package jp.ac.dendai.engine;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.move.Move;
+import jp.ac.dendai.util.MoveCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One iterative-deepening alpha-beta search (negamax with principal variation
+ * search and quiescence). Moves are ordered by transposition table move,
+ * captures (MVV-LVA), killer moves and the history heuristic.
+ * Not thread-safe; create one per position.
+ */
+final class Search {
+    static final int MATE = 100_000;
+    private static final int INFINITY = MATE + 1;
+    private static final int MAX_PLY = 128;
+    private static final int TIME_CHECK_INTERVAL = 1024;
+
+    private final Board board;
+    private final TranspositionTable table;
+    private final long deadline;
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[] history = new int[64 * 64];
+    private int rootBestMove;
+    private long nodes;
+
+    /**
+     * Signals that the time budget ran out; the board is discarded afterwards
+     */
+    private static final class Timeout extends RuntimeException {
+        Timeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    static final class Result {
+        final int move;
+        final int score;
+        final int depth;
+
+        Result(int move, int score, int depth) {
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * @param board Position to search; modified during the search
+     * @param table Shared transposition table
+     * @param deadline System.nanoTime() after which the search stops
+     */
+    Search(Board board, TranspositionTable table, long deadline) {
+        this.board = board;
+        this.table = table;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Search deeper and deeper until maxDepth or the deadline
+     * @return Best move of the deepest completed iteration, or null if there is no legal move
+     */
+    Result run(int maxDepth) {
+        List<Move> rootMoves = board.legalMoves();
+        if (rootMoves.isEmpty()) return null;
+
+        // Always have a move, even if the first iteration does not finish
+        Result best = new Result(MoveCodec.encode(rootMoves.get(0)), 0, 0);
+        for (int depth = 1; depth <= Math.min(maxDepth, MAX_PLY - 1); depth++) {
+            try {
+                rootBestMove = MoveCodec.NONE;
+                int score = negamax(depth, -INFINITY, INFINITY, 0);
+                if (rootBestMove != MoveCodec.NONE) {
+                    best = new Result(rootBestMove, score, depth);
+                }
+                if (Math.abs(score) >= MATE - MAX_PLY) break;
+            } catch (Timeout e) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    private int negamax(int depth, int alpha, int beta, int ply) {
+        checkTime();
+
+        if (ply > 0 && (board.isRepetition() || board.isInsufficientMaterial()
+                || board.getHalfMoveCounter() >= 100)) {
+            return 0;
+        }
+
+        long key = board.getZobristKey();
+        long entry = table.probe(key);
+        int ttMove = MoveCodec.NONE;
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        boolean inCheck = board.isKingAttacked();
+        if ((depth <= 0 && !inCheck) || ply >= MAX_PLY - 1) {
+            return quiesce(alpha, beta, ply);
+        }
+
+        List<Move> moves = new ArrayList<>(board.legalMoves());
+        if (moves.isEmpty()) {
+            return inCheck ? -MATE + ply : 0;
+        }
+
+        int[] codes = new int[moves.size()];
+        int[] scores = new int[moves.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = MoveCodec.encode(moves.get(i));
+            scores[i] = orderScore(moves.get(i), codes[i], ttMove, ply);
+        }
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = MoveCodec.NONE;
+        // Check extension keeps forcing lines from being cut short
+        int nextDepth = inCheck ? depth : depth - 1;
+
+        for (int i = 0; i < codes.length; i++) {
+            int index = selectNext(scores, i, codes, moves);
+            Move move = moves.get(index);
+            boolean quiet = !isCapture(move);
+
+            board.doMove(move);
+            int score;
+            if (i == 0) {
+                score = -negamax(nextDepth, -beta, -alpha, ply + 1);
+            } else {
+                score = -negamax(nextDepth, -alpha - 1, -alpha, ply + 1);
+                if (score > alpha && score < beta) {
+                    score = -negamax(nextDepth, -beta, -alpha, ply + 1);
+                }
+            }
+            board.undoMove();
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = codes[index];
+                if (ply == 0) rootBestMove = bestMove;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                if (quiet) {
+                    rememberKiller(codes[index], ply);
+                    history[(codes[index] & 0xFFF)] += depth * depth;
+                }
+                break;
+            }
+        }
+
+        int bound = bestScore <= originalAlpha ? TranspositionTable.UPPER
+            : bestScore >= beta ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        table.store(key, bestMove, toTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    private int quiesce(int alpha, int beta, int ply) {
+        checkTime();
+
+        int standPat = Evaluator.evaluate(board);
+        if (standPat >= beta) return standPat;
+        if (standPat > alpha) alpha = standPat;
+        if (ply >= MAX_PLY - 1) return standPat;
+
+        List<Move> captures = new ArrayList<>();
+        for (Move move : board.legalMoves()) {
+            if (isCapture(move) || move.getPromotion() != Piece.NONE) {
+                captures.add(move);
+            }
+        }
+
+        int[] scores = new int[captures.size()];
+        int[] codes = new int[captures.size()];
+        for (int i = 0; i < scores.length; i++) {
+            codes[i] = MoveCodec.encode(captures.get(i));
+            scores[i] = mvvLva(captures.get(i));
+        }
+
+        int best = standPat;
+        for (int i = 0; i < scores.length; i++) {
+            Move move = captures.get(selectNext(scores, i, codes, captures));
+            board.doMove(move);
+            int score = -quiesce(-beta, -alpha, ply + 1);
+            board.undoMove();
+
+            if (score > best) best = score;
+            if (score > alpha) alpha = score;
+            if (alpha >= beta) break;
+        }
+        return best;
+    }
+
+    private int orderScore(Move move, int code, int ttMove, int ply) {
+        if (code == ttMove) return 1_000_000;
+        if (isCapture(move)) return 100_000 + mvvLva(move);
+        if (move.getPromotion() != Piece.NONE) return 90_000;
+        if (killers[ply][0] == code) return 80_000;
+        if (killers[ply][1] == code) return 70_000;
+        return Math.min(history[code & 0xFFF], 60_000);
+    }
+
+    private int mvvLva(Move move) {
+        Piece victim = board.getPiece(move.getTo());
+        PieceType victimType = victim == Piece.NONE ? PieceType.PAWN : victim.getPieceType();
+        PieceType attacker = board.getPiece(move.getFrom()).getPieceType();
+        return Evaluator.pieceValue(victimType) * 10 - Evaluator.pieceValue(attacker) / 100;
+    }
+
+    private boolean isCapture(Move move) {
+        if (board.getPiece(move.getTo()) != Piece.NONE) return true;
+        // En passant: a pawn changing file onto an empty square
+        Piece mover = board.getPiece(move.getFrom());
+        return mover.getPieceType() == PieceType.PAWN
+            && move.getFrom().ordinal() % 8 != move.getTo().ordinal() % 8;
+    }
+
+    private void rememberKiller(int code, int ply) {
+        if (killers[ply][0] != code) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = code;
+        }
+    }
+
+    // Selection sort step: move the best remaining entry to position i
+    private static int selectNext(int[] scores, int i, int[] codes, List<Move> moves) {
+        int best = i;
+        for (int j = i + 1; j < scores.length; j++) {
+            if (scores[j] > scores[best]) best = j;
+        }
+        if (best != i) {
+            swap(scores, i, best);
+            swap(codes, i, best);
+            moves.set(i, moves.set(best, moves.get(i)));
+        }
+        return i;
+    }
+
+    private static void swap(int[] values, int i, int j) {
+        int tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+
+    // Mate scores are stored relative to the node, not the root
+    private static int toTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) return score + ply;
+        if (score <= -MATE + MAX_PLY) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) return score - ply;
+        if (score <= -MATE + MAX_PLY) return score + ply;
+        return score;
+    }
+
+    private void checkTime() {
+        if (++nodes % TIME_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+            throw new Timeout();
+        }
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+}
@@ -0,0 +1,69 @@
+package jp.ac.dendai.engine;
+
+/**
+ * Fixed-size transposition table shared by all searches of one engine.
+ *
+ * Entries are packed into a single long (move, score, depth, bound) and the
+ * slot key is stored XOR-ed with the data, so a torn write from a concurrent
+ * search is detected as a miss instead of returning a wrong entry.
+ */
+final class TranspositionTable {
+    static final int EXACT = 0;
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * @param sizeBits Table holds 2^sizeBits entries (16 bytes each)
+     */
+    TranspositionTable(int sizeBits) {
+        keys = new long[1 << sizeBits];
+        data = new long[1 << sizeBits];
+        mask = (1 << sizeBits) - 1;
+    }
+
+    /**
+     * Get the packed entry for a position, or 0 if absent
+     */
+    long probe(long key) {
+        int slot = (int) key & mask;
+        long entry = data[slot];
+        return (keys[slot] ^ entry) == key ? entry : 0;
+    }
+
+    void store(long key, int move, int score, int depth, int bound) {
+        int slot = (int) key & mask;
+        long existing = data[slot];
+        // Keep deeper results of the same position
+        if ((keys[slot] ^ existing) == key && depth(existing) > depth && bound != EXACT) {
+            return;
+        }
+
+        long entry = (move & 0xFFFFL)
+            | ((score & 0xFFFFFFFFL) << 16)
+            | ((long) (depth & 0xFF) << 48)
+            | ((long) (bound & 0x3) << 56)
+            | (1L << 58);
+        data[slot] = entry;
+        keys[slot] = key ^ entry;
+    }
+
+    static int move(long entry) {
+        return (int) (entry & 0xFFFF);
+    }
+
+    static int score(long entry) {
+        return (int) (entry >>> 16);
+    }
+
+    static int depth(long entry) {
+        return (int) ((entry >>> 48) & 0xFF);
+    }
+
+    static int bound(long entry) {
+        return (int) ((entry >>> 56) & 0x3);
+    }
+}
@@ -0,0 +1,240 @@
+package jp.ac.dendai.metrics;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the counters, histograms and cache statistics of a run.
+ *
+ * A metric is identified by its name plus label pairs, e.g.
+ * {@code timer("api_request_seconds", "endpoint", "explorer")}; asking for
+ * the same name and labels again returns the same instance, so callers can
+ * look metrics up on every use. Everything can be exported at any time as
+ * JSON or in the Prometheus text format.
+ */
+public class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    private static final Metrics SHARED = new Metrics();
+
+    public enum Format { JSON, PROMETHEUS }
+
+    private final Map<Key, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<Key, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<Key, CacheStats> caches = new ConcurrentHashMap<>();
+
+    private record Key(String name, String[] labels) implements Comparable<Key> {
+        Key {
+            if (labels.length % 2 != 0) {
+                throw new IllegalArgumentException("Labels must be name/value pairs: " + name);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && name.equals(other.name)
+                && Arrays.equals(labels, other.labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + Arrays.hashCode(labels);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : Arrays.compare(labels, other.labels);
+        }
+    }
+
+    /**
+     * Registry the API clients and services record into
+     */
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    public LongAdder counter(String name, String... labels) {
+        return counters.computeIfAbsent(new Key(name, labels), k -> new LongAdder());
+    }
+
+    /**
+     * Histogram of durations recorded in nanoseconds and exported in seconds
+     */
+    public Histogram timer(String name, String... labels) {
+        return histograms.computeIfAbsent(new Key(name, labels), k -> new Histogram(1e-9));
+    }
+
+    /**
+     * Histogram of plain values (e.g. requests per game)
+     */
+    public Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(new Key(name, labels), k -> new Histogram(1));
+    }
+
+    /**
+     * Hit statistics of a cache layer, exported with the label cache=name
+     */
+    public CacheStats cache(String name) {
+        return caches.computeIfAbsent(new Key("cache", new String[] {"cache", name}), k -> new CacheStats());
+    }
+
+    public String toJson() {
+        JsonObject root = new JsonObject();
+
+        JsonObject counterSection = new JsonObject();
+        for (Map.Entry<Key, LongAdder> e : new TreeMap<>(counters).entrySet()) {
+            JsonObject entry = labelsObject(e.getKey());
+            entry.addProperty("value", e.getValue().sum());
+            append(counterSection, e.getKey().name(), entry);
+        }
+        root.add("counters", counterSection);
+
+        JsonObject histogramSection = new JsonObject();
+        for (Map.Entry<Key, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = e.getValue();
+            JsonObject entry = labelsObject(e.getKey());
+            entry.addProperty("count", histogram.getCount());
+            entry.addProperty("sum", histogram.getSum());
+            for (double q : QUANTILES) {
+                entry.addProperty("p" + Math.round(q * 100), histogram.percentile(q));
+            }
+            append(histogramSection, e.getKey().name(), entry);
+        }
+        root.add("histograms", histogramSection);
+
+        JsonObject cacheSection = new JsonObject();
+        for (Map.Entry<Key, CacheStats> e : new TreeMap<>(caches).entrySet()) {
+            CacheStats stats = e.getValue();
+            JsonObject entry = new JsonObject();
+            entry.addProperty("hits", stats.getHits());
+            entry.addProperty("misses", stats.getMisses());
+            entry.addProperty("hitRatio", stats.getHitRatio());
+            cacheSection.add(e.getKey().labels()[1], entry);
+        }
+        root.add("caches", cacheSection);
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+
+        String type = null;
+        for (Map.Entry<Key, LongAdder> e : new TreeMap<>(counters).entrySet()) {
+            type = typeLine(out, type, e.getKey().name(), "counter");
+            sample(out, e.getKey().name(), labels(e.getKey().labels(), null), e.getValue().sum());
+        }
+
+        type = null;
+        for (Map.Entry<Key, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            String name = e.getKey().name();
+            Histogram histogram = e.getValue();
+            type = typeLine(out, type, name, "summary");
+            for (double q : QUANTILES) {
+                sample(out, name, labels(e.getKey().labels(), Double.toString(q)), histogram.percentile(q));
+            }
+            sample(out, name + "_sum", labels(e.getKey().labels(), null), histogram.getSum());
+            sample(out, name + "_count", labels(e.getKey().labels(), null), histogram.getCount());
+        }
+
+        Map<Key, CacheStats> sortedCaches = new TreeMap<>(caches);
+        if (!sortedCaches.isEmpty()) {
+            out.append("# TYPE cache_hits_total counter\n");
+            sortedCaches.forEach((k, s) -> sample(out, "cache_hits_total", labels(k.labels(), null), s.getHits()));
+            out.append("# TYPE cache_misses_total counter\n");
+            sortedCaches.forEach((k, s) -> sample(out, "cache_misses_total", labels(k.labels(), null), s.getMisses()));
+            out.append("# TYPE cache_hit_ratio gauge\n");
+            sortedCaches.forEach((k, s) -> sample(out, "cache_hit_ratio", labels(k.labels(), null), s.getHitRatio()));
+        }
+        return out.toString();
+    }
+
+    public String format(Format format) {
+        return format == Format.PROMETHEUS ? toPrometheus() : toJson();
+    }
+
+    /**
+     * Write a snapshot to a file, replacing it atomically so readers never see half a dump
+     */
+    public void writeTo(Path file, Format format) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        Files.writeString(tmp, format(format));
+        Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Pick the format from a file name: .prom and .txt are Prometheus text, anything else JSON
+     */
+    public static Format formatOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".prom") || name.endsWith(".txt") ? Format.PROMETHEUS : Format.JSON;
+    }
+
+    private static JsonObject labelsObject(Key key) {
+        JsonObject entry = new JsonObject();
+        if (key.labels().length > 0) {
+            JsonObject labels = new JsonObject();
+            for (int i = 0; i < key.labels().length; i += 2) {
+                labels.addProperty(key.labels()[i], key.labels()[i + 1]);
+            }
+            entry.add("labels", labels);
+        }
+        return entry;
+    }
+
+    private static void append(JsonObject section, String name, JsonObject entry) {
+        if (!section.has(name)) section.add(name, new JsonArray());
+        section.getAsJsonArray(name).add(entry);
+    }
+
+    private static String typeLine(StringBuilder out, String previous, String name, String type) {
+        if (!name.equals(previous)) {
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+        return name;
+    }
+
+    private static String labels(String[] pairs, String quantile) {
+        Map<String, String> labels = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            labels.put(pairs[i], pairs[i + 1]);
+        }
+        if (quantile != null) labels.put("quantile", quantile);
+        if (labels.isEmpty()) return "";
+
+        StringBuilder out = new StringBuilder("{");
+        labels.forEach((name, value) -> {
+            if (out.length() > 1) out.append(',');
+            out.append(name).append("=\"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                .append('"');
+        });
+        return out.append('}').toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
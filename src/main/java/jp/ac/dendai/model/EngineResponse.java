@@ -1,7 +1,10 @@
 package jp.ac.dendai.model;
 
+import com.google.gson.annotations.JsonAdapter;
+
 import java.util.List;
 
+@JsonAdapter(EngineResponseAdapter.class)
 public class EngineResponse {
     private String text;
     private String from;
@@ -0,0 +1,74 @@
+package jp.ac.dendai.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static jp.ac.dendai.model.JsonFields.nextDouble;
+import static jp.ac.dendai.model.JsonFields.nextInteger;
+import static jp.ac.dendai.model.JsonFields.nextPooledString;
+import static jp.ac.dendai.model.JsonFields.nextString;
+
+/**
+ * Streaming decoder for chess-api.com responses, which carry about thirty
+ * fields of which {@link EngineResponse} uses seven
+ */
+final class EngineResponseAdapter extends TypeAdapter<EngineResponse> {
+    @Override
+    public EngineResponse read(JsonReader in) throws IOException {
+        EngineResponse response = new EngineResponse();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "text" -> response.setText(nextString(in));
+                case "from" -> response.setFrom(nextPooledString(in));
+                case "to" -> response.setTo(nextPooledString(in));
+                case "san" -> response.setSan(nextPooledString(in));
+                case "eval" -> response.setEval(nextDouble(in));
+                case "depth" -> response.setDepth(nextInteger(in));
+                case "pv" -> response.setPv(readMoves(in));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return response;
+    }
+
+    private static List<String> readMoves(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<String> moves = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            moves.add(nextPooledString(in));
+        }
+        in.endArray();
+        return moves;
+    }
+
+    @Override
+    public void write(JsonWriter out, EngineResponse response) throws IOException {
+        out.beginObject();
+        out.name("text").value(response.getText());
+        out.name("from").value(response.getFrom());
+        out.name("to").value(response.getTo());
+        out.name("san").value(response.getSan());
+        out.name("eval").value(response.getEval());
+        out.name("depth").value(response.getDepth());
+        if (response.getPv() != null) {
+            out.name("pv").beginArray();
+            for (String move : response.getPv()) {
+                out.value(move);
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+}
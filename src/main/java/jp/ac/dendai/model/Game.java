@@ -1,10 +1,20 @@
 package jp.ac.dendai.model;
 
+import com.google.gson.annotations.JsonAdapter;
+
+import java.util.Set;
+
+@JsonAdapter(GameAdapter.class)
 public class Game {
+    private static final Set<String> UNFINISHED = Set.of("created", "started", "aborted", "noStart", "unknownFinish");
+
     private String id;
     private String moves;
     private Opening opening;
     private Players players;
+    private String status;
+    private String winner;
+    private long createdAt;
 
     public static class Opening {
         private String name;
@@ -58,6 +68,32 @@ public class Game {
     public Players getPlayers() { return players; }
     public void setPlayers(Players players) { this.players = players; }
 
+    /**
+     * Lichess game status ("mate", "resign", "draw", "aborted", ...)
+     */
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    /**
+     * "white" or "black"; null for draws and unfinished games
+     */
+    public String getWinner() { return winner; }
+    public void setWinner(String winner) { this.winner = winner; }
+
+    /**
+     * Whether the game has a result: a winner, or a status other than
+     * aborted or still running (PGN games with result "*" are "started")
+     */
+    public boolean isFinished() {
+        return winner != null || (status != null && !UNFINISHED.contains(status));
+    }
+
+    /**
+     * Start of the game in epoch milliseconds; 0 if unknown (e.g. games read from PGN)
+     */
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
     /**
      * Get the color of the specified player
      * @param username Username to check
@@ -0,0 +1,129 @@
+package jp.ac.dendai.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import static jp.ac.dendai.model.JsonFields.beginObject;
+import static jp.ac.dendai.model.JsonFields.nextInt;
+import static jp.ac.dendai.model.JsonFields.nextLong;
+import static jp.ac.dendai.model.JsonFields.nextPooledString;
+import static jp.ac.dendai.model.JsonFields.nextString;
+
+/**
+ * Streaming decoder for Lichess game exports. Only the fields {@link Game}
+ * maps are read; clocks, analysis and everything else are skipped token by
+ * token without building a tree.
+ */
+final class GameAdapter extends TypeAdapter<Game> {
+    @Override
+    public Game read(JsonReader in) throws IOException {
+        Game game = new Game();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> game.setId(nextString(in));
+                case "moves" -> game.setMoves(nextString(in));
+                case "opening" -> game.setOpening(readOpening(in));
+                case "players" -> game.setPlayers(readPlayers(in));
+                case "status" -> game.setStatus(nextPooledString(in));
+                case "winner" -> game.setWinner(nextPooledString(in));
+                case "createdAt" -> game.setCreatedAt(nextLong(in, 0));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return game;
+    }
+
+    private static Game.Opening readOpening(JsonReader in) throws IOException {
+        if (!beginObject(in)) return null;
+        Game.Opening opening = new Game.Opening();
+        while (in.hasNext()) {
+            if (in.nextName().equals("name")) {
+                opening.setName(nextPooledString(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return opening;
+    }
+
+    private static Game.Players readPlayers(JsonReader in) throws IOException {
+        if (!beginObject(in)) return null;
+        Game.Players players = new Game.Players();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "white" -> players.setWhite(readPlayer(in));
+                case "black" -> players.setBlack(readPlayer(in));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return players;
+    }
+
+    private static Game.Player readPlayer(JsonReader in) throws IOException {
+        if (!beginObject(in)) return null;
+        Game.Player player = new Game.Player();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "user" -> player.setUser(readUser(in));
+                case "rating" -> player.setRating(nextInt(in, 0));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return player;
+    }
+
+    private static Game.Player.UserInfo readUser(JsonReader in) throws IOException {
+        if (!beginObject(in)) return null;
+        Game.Player.UserInfo user = new Game.Player.UserInfo();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> user.setId(nextPooledString(in));
+                case "name" -> user.setName(nextPooledString(in));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return user;
+    }
+
+    @Override
+    public void write(JsonWriter out, Game game) throws IOException {
+        out.beginObject();
+        out.name("id").value(game.getId());
+        out.name("moves").value(game.getMoves());
+        if (game.getOpening() != null) {
+            out.name("opening").beginObject().name("name").value(game.getOpening().getName()).endObject();
+        }
+        if (game.getPlayers() != null) {
+            out.name("players").beginObject();
+            writePlayer(out, "white", game.getPlayers().getWhite());
+            writePlayer(out, "black", game.getPlayers().getBlack());
+            out.endObject();
+        }
+        out.name("status").value(game.getStatus());
+        out.name("winner").value(game.getWinner());
+        if (game.getCreatedAt() != 0) out.name("createdAt").value(game.getCreatedAt());
+        out.endObject();
+    }
+
+    private static void writePlayer(JsonWriter out, String color, Game.Player player) throws IOException {
+        if (player == null) return;
+        out.name(color).beginObject();
+        if (player.getUser() != null) {
+            out.name("user").beginObject()
+                .name("name").value(player.getUser().getName())
+                .name("id").value(player.getUser().getId())
+                .endObject();
+        }
+        out.name("rating").value(player.getRating());
+        out.endObject();
+    }
+}
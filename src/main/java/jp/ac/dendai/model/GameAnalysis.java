@@ -0,0 +1,48 @@
+package jp.ac.dendai.model;
+
+import java.util.List;
+
+/**
+ * Analysis result of one game
+ */
+public class GameAnalysis {
+    private Game game;
+    private String playerColor;
+    private List<MoveAnalysis> analyses;
+    private String[] theoryLine;
+    private String error;
+    private boolean truncated;
+
+    public GameAnalysis(Game game) {
+        this.game = game;
+    }
+
+    public Game getGame() { return game; }
+    public void setGame(Game game) { this.game = game; }
+
+    public String getPlayerColor() { return playerColor; }
+    public void setPlayerColor(String playerColor) { this.playerColor = playerColor; }
+
+    public List<MoveAnalysis> getAnalyses() { return analyses; }
+    public void setAnalyses(List<MoveAnalysis> analyses) { this.analyses = analyses; }
+
+    public String[] getTheoryLine() { return theoryLine; }
+    public void setTheoryLine(String[] theoryLine) { this.theoryLine = theoryLine; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    /**
+     * True if the analysis deadline passed first, so the analyses may stop
+     * early or lack punishment moves
+     */
+    public boolean isTruncated() { return truncated; }
+    public void setTruncated(boolean truncated) { this.truncated = truncated; }
+
+    /**
+     * True if the game was analyzed without error
+     */
+    public boolean isSuccessful() {
+        return error == null;
+    }
+}
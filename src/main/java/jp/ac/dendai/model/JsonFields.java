@@ -0,0 +1,77 @@
+package jp.ac.dendai.model;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import jp.ac.dendai.util.StringPool;
+
+import java.io.IOException;
+
+/**
+ * Null-tolerant field readers shared by the streaming model decoders.
+ * A JSON null leaves the field at its default, as reflective Gson does.
+ */
+final class JsonFields {
+    /**
+     * Pool for the small set of strings that repeat across responses
+     */
+    static final StringPool STRINGS = new StringPool(1 << 14);
+
+    private JsonFields() {
+    }
+
+    static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    static String nextPooledString(JsonReader in) throws IOException {
+        return STRINGS.intern(nextString(in));
+    }
+
+    static long nextLong(JsonReader in, long defaultValue) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        return in.nextLong();
+    }
+
+    static int nextInt(JsonReader in, int defaultValue) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        return in.nextInt();
+    }
+
+    static Double nextDouble(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextDouble();
+    }
+
+    static Integer nextInteger(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+
+    /**
+     * @return True if the next value is an object to read, false if it was null and has been consumed
+     */
+    static boolean beginObject(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return false;
+        }
+        in.beginObject();
+        return true;
+    }
+}
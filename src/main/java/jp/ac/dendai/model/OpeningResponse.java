@@ -1,7 +1,10 @@
 package jp.ac.dendai.model;
 
+import com.google.gson.annotations.JsonAdapter;
+
 import java.util.List;
 
+@JsonAdapter(OpeningResponseAdapter.class)
 public class OpeningResponse {
     private long white;
     private long draws;
@@ -0,0 +1,89 @@
+package jp.ac.dendai.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static jp.ac.dendai.model.JsonFields.beginObject;
+import static jp.ac.dendai.model.JsonFields.nextInt;
+import static jp.ac.dendai.model.JsonFields.nextLong;
+import static jp.ac.dendai.model.JsonFields.nextPooledString;
+
+/**
+ * Streaming decoder for Opening Explorer responses. Top games, recent games
+ * and the opening name are skipped; move UCIs and SANs are pooled.
+ */
+final class OpeningResponseAdapter extends TypeAdapter<OpeningResponse> {
+    @Override
+    public OpeningResponse read(JsonReader in) throws IOException {
+        OpeningResponse response = new OpeningResponse();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "white" -> response.setWhite(nextLong(in, 0));
+                case "draws" -> response.setDraws(nextLong(in, 0));
+                case "black" -> response.setBlack(nextLong(in, 0));
+                case "moves" -> response.setMoves(readMoves(in));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return response;
+    }
+
+    private static List<OpeningMove> readMoves(JsonReader in) throws IOException {
+        List<OpeningMove> moves = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            OpeningMove move = readMove(in);
+            if (move != null) moves.add(move);
+        }
+        in.endArray();
+        return moves;
+    }
+
+    private static OpeningMove readMove(JsonReader in) throws IOException {
+        if (!beginObject(in)) return null;
+        OpeningMove move = new OpeningMove();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "uci" -> move.setUci(nextPooledString(in));
+                case "san" -> move.setSan(nextPooledString(in));
+                case "white" -> move.setWhite(nextLong(in, 0));
+                case "draws" -> move.setDraws(nextLong(in, 0));
+                case "black" -> move.setBlack(nextLong(in, 0));
+                case "averageRating" -> move.setAverageRating(nextInt(in, 0));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return move;
+    }
+
+    @Override
+    public void write(JsonWriter out, OpeningResponse response) throws IOException {
+        out.beginObject();
+        out.name("white").value(response.getWhite());
+        out.name("draws").value(response.getDraws());
+        out.name("black").value(response.getBlack());
+        if (response.getMoves() != null) {
+            out.name("moves").beginArray();
+            for (OpeningMove move : response.getMoves()) {
+                out.beginObject()
+                    .name("uci").value(move.getUci())
+                    .name("san").value(move.getSan())
+                    .name("white").value(move.getWhite())
+                    .name("draws").value(move.getDraws())
+                    .name("black").value(move.getBlack())
+                    .name("averageRating").value(move.getAverageRating())
+                    .endObject();
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+}
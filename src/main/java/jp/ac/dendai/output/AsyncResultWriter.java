@@ -0,0 +1,117 @@
+package jp.ac.dendai.output;
+
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.util.ThreadPools;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats and writes results on a background thread, so the caller only
+ * hands results over. At most a fixed number of results wait at a time;
+ * beyond that write() blocks until the writer catches up. The first write
+ * error, whether an IOException or a formatting bug, is reported by the
+ * next write() or by close(). Should the background thread die anyway,
+ * write() and close() fail instead of waiting for it forever.
+ */
+public class AsyncResultWriter implements ResultWriter {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final GameAnalysis END = new GameAnalysis(null);
+    private static final long POLL_MILLIS = 100;
+
+    private final ResultWriter target;
+    private final BlockingQueue<GameAnalysis> queue;
+    private final Thread thread;
+    private volatile Exception failure;
+    private volatile boolean drained;
+    private boolean closed;
+
+    public AsyncResultWriter(ResultWriter target) {
+        this(target, DEFAULT_CAPACITY);
+    }
+
+    public AsyncResultWriter(ResultWriter target, int capacity) {
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = ThreadPools.daemonThreads("result-writer").newThread(this::run);
+        thread.start();
+    }
+
+    @Override
+    public void write(GameAnalysis result) throws IOException {
+        checkFailure();
+        try {
+            if (!enqueue(result)) throw stopped();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing a result");
+        }
+    }
+
+    /**
+     * Write the queued results, then close the target
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            enqueue(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the result writer");
+        } finally {
+            target.close();
+        }
+        checkFailure();
+        if (!drained) throw stopped();
+    }
+
+    /**
+     * Queue an item, waiting for room only while the writer thread is alive
+     * @return False if the writer thread is gone
+     */
+    private boolean enqueue(GameAnalysis item) throws InterruptedException {
+        while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!thread.isAlive()) return false;
+        }
+        return true;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                GameAnalysis result = queue.take();
+                if (result == END) {
+                    drained = true;
+                    return;
+                }
+                // Keep draining after a failure so writers never block
+                if (failure != null) continue;
+                try {
+                    target.write(result);
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Exception error = failure;
+        if (error != null) {
+            throw new IOException("Writing results failed", error);
+        }
+    }
+
+    private static IOException stopped() {
+        return new IOException("The result writer thread stopped");
+    }
+}
@@ -0,0 +1,98 @@
+package jp.ac.dendai.output;
+
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.model.MoveAnalysis;
+import jp.ac.dendai.model.OpeningMove;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * One CSV row per analyzed move (RFC 4180 quoting), after a header row.
+ * Games without analyses, such as failed ones, get a single row with the
+ * move columns empty. Move lists are space-separated within their column.
+ */
+public class CsvResultWriter implements ResultWriter {
+    static final String HEADER = "game_id,color,opening,move_number,side,played,in_theory,out_of_theory,"
+        + "recommended,punishment,top_moves,theory_line,truncated,error";
+
+    private final Writer out;
+    private boolean headerWritten;
+
+    public CsvResultWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(GameAnalysis result) throws IOException {
+        if (!headerWritten) {
+            out.write(HEADER);
+            out.write('\n');
+            headerWritten = true;
+        }
+
+        List<MoveAnalysis> analyses = result.getAnalyses();
+        if (analyses == null || analyses.isEmpty()) {
+            writeRow(result, null);
+            return;
+        }
+        for (MoveAnalysis analysis : analyses) {
+            writeRow(result, analysis);
+        }
+    }
+
+    private void writeRow(GameAnalysis result, MoveAnalysis analysis) throws IOException {
+        Game game = result.getGame();
+        field(game != null ? game.getId() : null);
+        field(result.getPlayerColor());
+        field(game != null && game.getOpening() != null ? game.getOpening().getName() : null);
+        if (analysis != null) {
+            field(Integer.toString(analysis.getMoveNumber()));
+            field(analysis.isWhite() ? "white" : "black");
+            field(analysis.getPlayedMove());
+            field(Boolean.toString(analysis.isOpeningMove()));
+            field(Boolean.toString(analysis.isOutOfTheory()));
+            field(analysis.getRecommendedMove());
+            field(analysis.getPunishmentMove());
+            field(topMoves(analysis.getTopOpeningMoves()));
+        } else {
+            for (int i = 0; i < 8; i++) field(null);
+        }
+        field(result.getTheoryLine() != null ? String.join(" ", result.getTheoryLine()) : null);
+        field(Boolean.toString(result.isTruncated()));
+        out.write(quote(result.getError()));
+        out.write('\n');
+    }
+
+    private void field(String value) throws IOException {
+        out.write(quote(value));
+        out.write(',');
+    }
+
+    private static String topMoves(List<OpeningMove> moves) {
+        if (moves == null) return null;
+        StringBuilder text = new StringBuilder();
+        for (OpeningMove move : moves) {
+            if (text.length() > 0) text.append(' ');
+            text.append(move.getSan());
+        }
+        return text.toString();
+    }
+
+    static String quote(String value) {
+        if (value == null) return "";
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return needsQuotes ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,92 @@
+package jp.ac.dendai.output;
+
+import com.google.gson.stream.JsonWriter;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.model.MoveAnalysis;
+import jp.ac.dendai.model.OpeningMove;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * One JSON object per game and line:
+ * <pre>
+ * {"id":"abc","color":"white","opening":"Italian Game","truncated":false,
+ *  "analyses":[{"moveNumber":3,"white":true,"played":"Bc4","inTheory":false,"outOfTheory":false,
+ *               "recommended":"Bb5","punishment":"Nxe4","topMoves":[{"san":"Bb5","games":1200}]}],
+ *  "theoryLine":["e4","e5","Nf3"]}
+ * </pre>
+ * Failed games carry "error" instead of analyses. Objects are streamed
+ * straight to the writer without building a tree.
+ */
+public class NdjsonResultWriter implements ResultWriter {
+    private final Writer out;
+
+    public NdjsonResultWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(GameAnalysis result) throws IOException {
+        // A JsonWriter holds a single top-level value, so use one per line
+        JsonWriter json = new JsonWriter(out);
+        json.setSerializeNulls(false);
+        Game game = result.getGame();
+
+        json.beginObject();
+        json.name("id").value(game != null ? game.getId() : null);
+        json.name("color").value(result.getPlayerColor());
+        if (game != null && game.getOpening() != null) {
+            json.name("opening").value(game.getOpening().getName());
+        }
+        if (!result.isSuccessful()) {
+            json.name("error").value(result.getError());
+        }
+        json.name("truncated").value(result.isTruncated());
+
+        if (result.getAnalyses() != null) {
+            json.name("analyses").beginArray();
+            for (MoveAnalysis analysis : result.getAnalyses()) {
+                writeAnalysis(json, analysis);
+            }
+            json.endArray();
+        }
+        if (result.getTheoryLine() != null) {
+            json.name("theoryLine").beginArray();
+            for (String move : result.getTheoryLine()) {
+                json.value(move);
+            }
+            json.endArray();
+        }
+        json.endObject();
+        out.write('\n');
+    }
+
+    private static void writeAnalysis(JsonWriter json, MoveAnalysis analysis) throws IOException {
+        json.beginObject();
+        json.name("moveNumber").value(analysis.getMoveNumber());
+        json.name("white").value(analysis.isWhite());
+        json.name("played").value(analysis.getPlayedMove());
+        json.name("inTheory").value(analysis.isOpeningMove());
+        json.name("outOfTheory").value(analysis.isOutOfTheory());
+        json.name("recommended").value(analysis.getRecommendedMove());
+        json.name("punishment").value(analysis.getPunishmentMove());
+        if (analysis.getTopOpeningMoves() != null) {
+            json.name("topMoves").beginArray();
+            for (OpeningMove move : analysis.getTopOpeningMoves()) {
+                json.beginObject();
+                json.name("san").value(move.getSan());
+                json.name("games").value(move.getTotalGames());
+                json.endObject();
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
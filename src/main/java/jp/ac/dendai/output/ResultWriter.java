@@ -0,0 +1,42 @@
+package jp.ac.dendai.output;
+
+import jp.ac.dendai.model.GameAnalysis;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Writes game results in a machine-readable format, one game at a time
+ */
+public interface ResultWriter extends Closeable {
+    enum Format { NDJSON, CSV }
+
+    /**
+     * Write the result of one game
+     */
+    void write(GameAnalysis result) throws IOException;
+
+    /**
+     * Open a file writer that formats and writes on a background thread
+     * @param file Output file; replaced if it exists
+     * @param format Output format
+     */
+    static ResultWriter open(Path file, Format format) throws IOException {
+        BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        ResultWriter writer = format == Format.CSV ? new CsvResultWriter(out) : new NdjsonResultWriter(out);
+        return new AsyncResultWriter(writer);
+    }
+
+    /**
+     * Format implied by a file name: CSV for ".csv", NDJSON otherwise
+     */
+    static Format formatOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".csv") ? Format.CSV : Format.NDJSON;
+    }
+}
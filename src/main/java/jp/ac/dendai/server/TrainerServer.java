@@ -0,0 +1,213 @@
+package jp.ac.dendai.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import jp.ac.dendai.api.LichessApi;
+import jp.ac.dendai.metrics.Metrics;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.service.BatchAnalyzer;
+import jp.ac.dendai.service.OpeningTrainerService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * HTTP front end keeping one OpeningTrainerService (and so its position memo,
+ * explorer cache and engine cache) warm across requests.
+ *
+ * Endpoints, all GET and answering JSON unless noted:
+ * <ul>
+ *   <li>/analyze/user?username=NAME&amp;games=N[&amp;color=white|black] - analyze a user's latest games</li>
+ *   <li>/analyze/moves?moves=e4+e5+Nf3&amp;color=white|black - analyze a move list</li>
+ *   <li>/metrics[?format=json] - run metrics, Prometheus text by default</li>
+ *   <li>/health - liveness check</li>
+ * </ul>
+ * Bad parameters and illegal moves are answered with 400 and {"error": message}.
+ */
+public class TrainerServer implements Closeable {
+    public static final int MAX_GAMES = 100;
+
+    private final HttpServer server;
+    private final OpeningTrainerService trainer;
+    private final LichessApi lichess;
+    private final BatchAnalyzer batch;
+    private final Gson gson = new Gson();
+
+    /**
+     * @param address Address to listen on
+     * @param trainer Service shared by all requests
+     * @param lichess Client for fetching users' games
+     * @param analysisExecutor Runs the games of /analyze/user concurrently
+     * @param requestExecutor Runs the request handlers; one virtual thread per request where available
+     */
+    public TrainerServer(InetSocketAddress address, OpeningTrainerService trainer, LichessApi lichess,
+                         ExecutorService analysisExecutor, ExecutorService requestExecutor) throws IOException {
+        this.trainer = trainer;
+        this.lichess = lichess;
+        this.batch = new BatchAnalyzer(trainer, analysisExecutor);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/analyze/user", handler(this::analyzeUser));
+        server.createContext("/analyze/moves", handler(this::analyzeMoves));
+        server.createContext("/metrics", this::metrics);
+        server.createContext("/health", handler(params -> Map.of("status", "ok")));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop accepting requests; requests in progress get a second to finish
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+    }
+
+    private interface JsonEndpoint {
+        Object handle(Map<String, String> params) throws Exception;
+    }
+
+    private List<GameAnalysis> analyzeUser(Map<String, String> params) throws IOException {
+        String username = required(params, "username");
+        int games = params.containsKey("games") ? parseInt(params.get("games"), "games") : 1;
+        if (games < 1 || games > MAX_GAMES) {
+            throw new IllegalArgumentException("games must be between 1 and " + MAX_GAMES);
+        }
+
+        List<Game> downloaded;
+        try (Stream<Game> stream = lichess.streamGames(username, games)) {
+            downloaded = stream.collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return batch.analyzeAll(downloaded, username, color(params, false));
+    }
+
+    private Map<String, Object> analyzeMoves(Map<String, String> params) throws IOException {
+        String[] moves = required(params, "moves").trim().split("[\\s,]+");
+        String color = color(params, true);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("analyses", trainer.analyzeGame(moves, color));
+        result.put("theoryLine", trainer.getTheoryLine(moves));
+        return result;
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Metrics.Format format = "json".equals(query(exchange).get("format"))
+                ? Metrics.Format.JSON : Metrics.Format.PROMETHEUS;
+            String contentType = format == Metrics.Format.JSON
+                ? "application/json" : "text/plain; version=0.0.4";
+            send(exchange, 200, contentType, Metrics.shared().format(format));
+        }
+    }
+
+    private HttpHandler handler(JsonEndpoint endpoint) {
+        return exchange -> {
+            try (exchange) {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    sendJson(exchange, 405, error("Method not allowed"));
+                    return;
+                }
+                long start = System.nanoTime();
+                int status = 200;
+                String body;
+                try {
+                    body = gson.toJson(endpoint.handle(query(exchange)));
+                } catch (IllegalArgumentException e) {
+                    status = 400;
+                    body = error(e.getMessage());
+                } catch (Exception e) {
+                    status = 500;
+                    body = error(e.toString());
+                }
+                Metrics.shared().timer("server_request_seconds", "path", exchange.getHttpContext().getPath())
+                    .record(System.nanoTime() - start);
+                sendJson(exchange, status, body);
+            }
+        };
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + name + "=" + value);
+        }
+    }
+
+    /**
+     * @param mandatory Whether the color must be given (it can be detected for a user's games)
+     */
+    private static String color(Map<String, String> params, boolean mandatory) {
+        String color = mandatory ? required(params, "color") : params.get("color");
+        if (color != null && !color.equalsIgnoreCase("white") && !color.equalsIgnoreCase("black")) {
+            throw new IllegalArgumentException("color must be white or black");
+        }
+        return color;
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return params;
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private String error(String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        return gson.toJson(error);
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        send(exchange, status, "application/json; charset=utf-8", json);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package jp.ac.dendai.service;
+
+import jp.ac.dendai.api.RequestScheduler;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-analysis settings passed along with every request made for it.
+ * A context also counts the explorer requests it caused, so use a new one
+ * per game.
+ */
+public class AnalysisContext {
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final RequestScheduler.Lane lane;
+    private final long deadline;
+    private final boolean engineDeferred;
+    private final LongAdder explorerRequests = new LongAdder();
+    private volatile boolean truncated;
+
+    private AnalysisContext(RequestScheduler.Lane lane, long deadline, boolean engineDeferred) {
+        this.lane = lane;
+        this.deadline = deadline;
+        this.engineDeferred = engineDeferred;
+    }
+
+    private AnalysisContext(RequestScheduler.Lane lane) {
+        this(lane, NO_DEADLINE, false);
+    }
+
+    /**
+     * Context for a user waiting on a single result
+     */
+    public static AnalysisContext interactive() {
+        return new AnalysisContext(RequestScheduler.Lane.INTERACTIVE);
+    }
+
+    /**
+     * Context for bulk analysis that may yield to interactive requests
+     */
+    public static AnalysisContext batch() {
+        return new AnalysisContext(RequestScheduler.Lane.BATCH);
+    }
+
+    /**
+     * Same lane with a deadline; waits for explorer and engine results give
+     * up when it passes and the analysis returns what it has so far
+     * @param timeout Time from now, or null for no deadline
+     */
+    public AnalysisContext withDeadline(Duration timeout) {
+        if (timeout == null) return new AnalysisContext(lane, deadline, engineDeferred);
+        return new AnalysisContext(lane, System.nanoTime() + timeout.toNanos(), engineDeferred);
+    }
+
+    /**
+     * Same settings, but the walk leaves punishment moves empty; fill them in
+     * later with {@link OpeningTrainerService#findPunishmentMoves}
+     */
+    public AnalysisContext deferringEngine() {
+        return new AnalysisContext(lane, deadline, true);
+    }
+
+    public RequestScheduler.Lane getLane() { return lane; }
+
+    public boolean isEngineDeferred() { return engineDeferred; }
+
+    /**
+     * Nanoseconds left until the deadline, or Long.MAX_VALUE without one
+     */
+    public long remainingNanos() {
+        return deadline == NO_DEADLINE ? NO_DEADLINE : deadline - System.nanoTime();
+    }
+
+    /**
+     * Whether the deadline cut the analysis short
+     */
+    public boolean isTruncated() { return truncated; }
+
+    void markTruncated() {
+        truncated = true;
+    }
+
+    /**
+     * Number of positions this analysis had to fetch from the Opening Explorer
+     * (lookups answered by a cache or by another game's request are not counted)
+     */
+    public long getExplorerRequests() { return explorerRequests.sum(); }
+
+    void countExplorerRequest() {
+        explorerRequests.increment();
+    }
+}
@@ -0,0 +1,229 @@
+package jp.ac.dendai.service;
+
+import jp.ac.dendai.metrics.Metrics;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.util.ThreadPools;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Analyzes a stream of games in stages connected by bounded queues:
+ * <pre>
+ *   games (fetch + decode) -&gt; theory walk -&gt; engine lookups -&gt; report
+ * </pre>
+ * The stream is read on the calling thread. Each later stage runs on its
+ * own threads, so it can be sized for its own bottleneck (explorer
+ * requests, engine time, output). When a stage falls behind, its input
+ * queue fills and puts block, so the stages before it slow down instead of
+ * buffering. Reading the stream stops too, and with it the download.
+ *
+ * With a per-game deadline, the theory walk and the engine lookups each
+ * get the full budget, counted from when their stage takes the game, so
+ * time spent waiting in a queue never truncates a game.
+ *
+ * Games without a deviation skip the engine stage. The report stage is a
+ * single thread, so the sink needs no locking. If the sink throws, reading
+ * stops, the stages are shut down and run() rethrows the failure. Time spent waiting in each
+ * queue is recorded as pipeline_wait_seconds{stage}.
+ */
+public class AnalysisPipeline {
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final long FAILURE_POLL_MILLIS = 100;
+
+    private final BatchAnalyzer batch;
+    private final OpeningTrainerService trainer;
+    private final int analysisThreads;
+    private final int engineThreads;
+    private final int queueCapacity;
+
+    /**
+     * @param batch Analyzes one game's theory walk (and carries the per-game deadline for each stage)
+     * @param trainer Service the walk runs on, used for the engine lookups
+     * @param analysisThreads Games walked through the opening explorer at once
+     * @param engineThreads Games whose punishment moves are looked up at once
+     * @param queueCapacity Items each queue holds before the stage feeding it blocks
+     */
+    public AnalysisPipeline(BatchAnalyzer batch, OpeningTrainerService trainer,
+                            int analysisThreads, int engineThreads, int queueCapacity) {
+        this.batch = batch;
+        this.trainer = trainer;
+        this.analysisThreads = Math.max(1, analysisThreads);
+        this.engineThreads = Math.max(1, engineThreads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * A game on its way through the stages
+     */
+    private static final class Item {
+        private static final Item END = new Item(null, null, null);
+
+        final Game game;
+        GameAnalysis result;
+        AnalysisContext context;
+        long queuedAt;
+
+        Item(Game game, GameAnalysis result, AnalysisContext context) {
+            this.game = game;
+            this.result = result;
+            this.context = context;
+        }
+    }
+
+    /**
+     * Run every game of the stream through the pipeline
+     * @param games Games to analyze, consumed on the calling thread
+     * @param username Player whose moves are analyzed (used to detect the color)
+     * @param playerColor "white", "black", or null to detect it per game
+     * @param sink Receives each result when its game is done, always from the same thread
+     * @return Number of games analyzed
+     */
+    public int run(Stream<Game> games, String username, String playerColor,
+                   Consumer<GameAnalysis> sink) throws InterruptedException {
+        BlockingQueue<Item> toAnalyze = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Item> toEngine = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Item> toReport = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<RuntimeException> sinkFailure = new AtomicReference<>();
+
+        ExecutorService analysis = ThreadPools.newTaskExecutor(analysisThreads, "pipeline-analysis");
+        ExecutorService engine = ThreadPools.newTaskExecutor(engineThreads, "pipeline-engine");
+        ExecutorService report = ThreadPools.newTaskExecutor(1, "pipeline-report");
+        try {
+            AtomicInteger analyzing = new AtomicInteger(analysisThreads);
+            for (int i = 0; i < analysisThreads; i++) {
+                analysis.execute(() -> runStage("analysis", toAnalyze, item -> {
+                    item.context = batch.newContext().deferringEngine();
+                    try {
+                        item.result = batch.analyze(item.game, username, playerColor, item.context);
+                    } catch (RuntimeException e) {
+                        item.result = new GameAnalysis(item.game);
+                        item.result.setError(e.toString());
+                    }
+                    put(needsEngine(item.result) ? toEngine : toReport, item);
+                }, () -> {
+                    if (analyzing.decrementAndGet() == 0) endAll(toEngine, engineThreads);
+                }));
+            }
+
+            AtomicInteger looking = new AtomicInteger(engineThreads);
+            for (int i = 0; i < engineThreads; i++) {
+                engine.execute(() -> runStage("engine", toEngine, item -> {
+                    GameAnalysis result = item.result;
+                    // A budget of its own: the walk's ran on while the game was queued
+                    AnalysisContext lookups = batch.newContext();
+                    try {
+                        trainer.findPunishmentMoves(item.game.getMoves().split(" "),
+                            result.getAnalyses(), lookups);
+                    } catch (RuntimeException e) {
+                        result.setError(e.toString());
+                    }
+                    result.setTruncated(item.context.isTruncated() || lookups.isTruncated());
+                    put(toReport, item);
+                }, () -> {
+                    if (looking.decrementAndGet() == 0) endAll(toReport, 1);
+                }));
+            }
+
+            report.execute(() -> runStage("report", toReport, item -> {
+                // Keep draining after a failure until the reading thread shuts the stages down
+                if (sinkFailure.get() != null) return;
+                try {
+                    sink.accept(item.result);
+                } catch (RuntimeException e) {
+                    sinkFailure.compareAndSet(null, e);
+                }
+            }, () -> { }));
+
+            int count = 0;
+            Iterator<Game> iterator = games.iterator();
+            while (sinkFailure.get() == null && iterator.hasNext()) {
+                if (!putUnlessFailed(toAnalyze, new Item(iterator.next(), null, null), sinkFailure)) break;
+                count++;
+            }
+            // Stop reading and requesting once the results cannot be delivered;
+            // the finally block interrupts the stages
+            if (sinkFailure.get() != null) throw sinkFailure.get();
+            endAll(toAnalyze, analysisThreads);
+
+            report.shutdown();
+            while (!report.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Large batches against rate-limited APIs take a while
+            }
+            if (sinkFailure.get() != null) throw sinkFailure.get();
+            return count;
+        } finally {
+            analysis.shutdownNow();
+            engine.shutdownNow();
+            report.shutdownNow();
+        }
+    }
+
+    private interface Step {
+        void accept(Item item) throws InterruptedException;
+    }
+
+    /**
+     * Take items until the end marker
+     * @param onEnd Runs once this worker has seen the end marker
+     */
+    private static void runStage(String stage, BlockingQueue<Item> input, Step step, Runnable onEnd) {
+        try {
+            while (true) {
+                Item item = input.take();
+                if (item == Item.END) break;
+                Metrics.shared().timer("pipeline_wait_seconds", "stage", stage)
+                    .record(System.nanoTime() - item.queuedAt);
+                step.accept(item);
+            }
+            onEnd.run();
+        } catch (InterruptedException e) {
+            // The pipeline was shut down
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean needsEngine(GameAnalysis result) {
+        return result.isSuccessful() && result.getAnalyses() != null
+            && result.getAnalyses().stream().anyMatch(a -> !a.isOpeningMove());
+    }
+
+    private static void put(BlockingQueue<Item> queue, Item item) throws InterruptedException {
+        item.queuedAt = System.nanoTime();
+        queue.put(item);
+    }
+
+    /**
+     * Queue an item, giving up if the sink fails while the queue is full
+     * @return False if the sink failed
+     */
+    private static boolean putUnlessFailed(BlockingQueue<Item> queue, Item item,
+                                           AtomicReference<RuntimeException> failure) throws InterruptedException {
+        item.queuedAt = System.nanoTime();
+        while (!queue.offer(item, FAILURE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tell every worker of the next stage that no more items follow
+     */
+    private static void endAll(BlockingQueue<Item> queue, int workers) {
+        try {
+            for (int i = 0; i < workers; i++) {
+                queue.put(Item.END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
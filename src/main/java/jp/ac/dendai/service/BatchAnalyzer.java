@@ -0,0 +1,102 @@
+package jp.ac.dendai.service;
+
+import jp.ac.dendai.metrics.Metrics;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Analyzes many games concurrently on top of one OpeningTrainerService.
+ *
+ * Every game runs as its own task, so a batch is bound by how many requests
+ * the per-host limits allow in flight rather than by the sum of round trips.
+ * Positions shared between games are still fetched once through the
+ * service's position memo. Requests go through the batch lane, so interactive
+ * lookups sharing the service are served first.
+ */
+public class BatchAnalyzer {
+    private final OpeningTrainerService trainer;
+    private final ExecutorService executor;
+    private volatile Duration deadline;
+
+    public BatchAnalyzer(OpeningTrainerService trainer, ExecutorService executor) {
+        this.trainer = trainer;
+        this.executor = executor;
+    }
+
+    /**
+     * Limit the time spent on each game; when it runs out the game's result
+     * keeps what was analyzed so far and is marked truncated
+     * @param deadline Time per game, or null for no limit
+     */
+    public void setDeadline(Duration deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Analyze all games concurrently
+     * @param games Games to analyze
+     * @param username Player whose moves are analyzed (used to detect the color)
+     * @param playerColor "white", "black", or null to detect it per game
+     * @return Results in the same order as the games
+     */
+    public List<GameAnalysis> analyzeAll(List<Game> games, String username, String playerColor) {
+        List<CompletableFuture<GameAnalysis>> futures = new ArrayList<>(games.size());
+        for (Game game : games) {
+            futures.add(CompletableFuture.supplyAsync(
+                () -> analyze(game, username, playerColor), executor));
+        }
+
+        List<GameAnalysis> results = new ArrayList<>(games.size());
+        for (CompletableFuture<GameAnalysis> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Analyze one game on the calling thread; failures are recorded in the result
+     */
+    public GameAnalysis analyze(Game game, String username, String playerColor) {
+        return analyze(game, username, playerColor, newContext());
+    }
+
+    /**
+     * Fresh context for one game, carrying the per-game deadline
+     */
+    AnalysisContext newContext() {
+        return AnalysisContext.batch().withDeadline(deadline);
+    }
+
+    GameAnalysis analyze(Game game, String username, String playerColor, AnalysisContext context) {
+        GameAnalysis result = new GameAnalysis(game);
+
+        String color = playerColor != null ? playerColor : game.getPlayerColor(username);
+        if (color == null) {
+            result.setError("プレイヤーの手番を判定できませんでした．");
+            return result;
+        }
+        result.setPlayerColor(color);
+
+        if (game.getMoves() == null || game.getMoves().isBlank()) {
+            result.setError("指し手がありません．");
+            return result;
+        }
+
+        try {
+            String[] moves = game.getMoves().split(" ");
+            result.setAnalyses(trainer.analyzeGame(moves, color, context));
+            result.setTheoryLine(trainer.getTheoryLine(moves, context));
+            result.setTruncated(context.isTruncated());
+            Metrics.shared().histogram("explorer_requests_per_game").record(context.getExplorerRequests());
+        } catch (Exception e) {
+            result.setError(e.toString());
+        }
+        return result;
+    }
+}
@@ -2,66 +2,141 @@ package jp.ac.dendai.service;
 
 import com.google.gson.Gson;
 import jp.ac.dendai.api.ChessEngineClient;
+import jp.ac.dendai.api.OpeningExplorerApi;
 import jp.ac.dendai.api.OpeningExplorerClient;
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.book.OpeningBook;
+import jp.ac.dendai.cache.ExplorerCache;
+import jp.ac.dendai.engine.ChessEngine;
+import jp.ac.dendai.engine.RemoteEngine;
+import jp.ac.dendai.metrics.Metrics;
 import jp.ac.dendai.model.EngineResponse;
 import jp.ac.dendai.model.MoveAnalysis;
 import jp.ac.dendai.model.OpeningMove;
 import jp.ac.dendai.model.OpeningResponse;
+import jp.ac.dendai.util.DeadlineExceededException;
+import jp.ac.dendai.util.Futures;
 import jp.ac.dendai.util.PositionTracker;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class OpeningTrainerService {
-    private final OpeningExplorerClient explorerClient;
-    private final ChessEngineClient engineClient;
+    private final OpeningExplorerApi explorerClient;
+    private final OpeningBook book;
+    private final ChessEngine engine;
+    private final ExplorerCache explorerCache;
+    private final RequestScheduler scheduler;
+    private final PositionMemo positions;
     private final Gson gson;
     private static final long MIN_GAMES = 100;
+    private static final int ENGINE_DEPTH = 12;
+    private static final int MAX_PLY = 30;
+    // Positions requested ahead of the last one known to stay in theory
+    private static final int PREFETCH_AHEAD = 6;
+    // Positions kept in memory; each holds one explorer response
+    private static final int MEMO_POSITIONS = 100_000;
 
     public OpeningTrainerService() {
-        this.explorerClient = new OpeningExplorerClient();
-        this.engineClient = new ChessEngineClient();
+        this(null);
+    }
+
+    /**
+     * @param explorerCache Persistent explorer cache consulted before the network, or null
+     */
+    public OpeningTrainerService(ExplorerCache explorerCache) {
+        this(new OpeningExplorerClient(), explorerCache, new RequestScheduler());
+    }
+
+    private OpeningTrainerService(OpeningExplorerApi explorerClient, ExplorerCache explorerCache,
+                                  RequestScheduler scheduler) {
+        this(explorerClient, new RemoteEngine(new ChessEngineClient(), scheduler), explorerCache, scheduler);
+    }
+
+    /**
+     * @param explorerClient Opening Explorer client
+     * @param engine Engine used to find the punishment of a deviation
+     * @param explorerCache Persistent explorer cache consulted before the network, or null
+     * @param scheduler Rate-limits and deduplicates explorer requests
+     */
+    public OpeningTrainerService(OpeningExplorerApi explorerClient, ChessEngine engine,
+                                 ExplorerCache explorerCache, RequestScheduler scheduler) {
+        this(explorerClient, null, engine, explorerCache, scheduler);
+    }
+
+    /**
+     * Look up theory in a local opening book instead of the Opening Explorer
+     * @param book Opening book built by OpeningBookBuilder
+     * @param engine Engine used to find the punishment of a deviation
+     */
+    public OpeningTrainerService(OpeningBook book, ChessEngine engine) {
+        this(null, book, engine, null, null);
+    }
+
+    private OpeningTrainerService(OpeningExplorerApi explorerClient, OpeningBook book, ChessEngine engine,
+                                  ExplorerCache explorerCache, RequestScheduler scheduler) {
+        this.explorerClient = explorerClient;
+        this.book = book;
+        this.engine = engine;
+        this.explorerCache = explorerCache;
+        this.scheduler = scheduler;
+        this.positions = new PositionMemo(new PositionTracker().getPositionKey(), MEMO_POSITIONS);
         this.gson = new Gson();
     }
 
     public List<MoveAnalysis> analyzeGame(String[] moves, String playerColor) throws IOException {
+        return analyzeGame(moves, playerColor, AnalysisContext.interactive());
+    }
+
+    public List<MoveAnalysis> analyzeGame(String[] moves, String playerColor, AnalysisContext context)
+            throws IOException {
+        Prefetch prefetch = new Prefetch(moves, context);
+        try {
+            return walkGame(moves, playerColor, context);
+        } finally {
+            prefetch.cancel();
+        }
+    }
+
+    private List<MoveAnalysis> walkGame(String[] moves, String playerColor, AnalysisContext context)
+            throws IOException {
         List<MoveAnalysis> analyses = new ArrayList<>();
         PositionTracker tracker = new PositionTracker();
+        PositionMemo.Node node = positions.start();
         boolean isPlayerWhite = "white".equalsIgnoreCase(playerColor);
 
-        for (int i = 0; i < Math.min(moves.length, 30); i++) {
+        for (int i = 0; i < Math.min(moves.length, MAX_PLY); i++) {
             boolean isWhiteMove = (i % 2 == 0);
             int moveNumber = (i / 2) + 1;
             String move = moves[i];
 
-            List<OpeningMove> theoryMoves = getTheoryMoves(tracker);
-            
+            List<OpeningMove> theoryMoves = getTheoryMoves(node, tracker, context);
+            if (theoryMoves == null) break;
+
             if (theoryMoves.isEmpty()) {
                 if (isWhiteMove == isPlayerWhite) {
                     MoveAnalysis analysis = new MoveAnalysis(moveNumber, isWhiteMove, move);
                     analysis.setOutOfTheory(true);
-                    analysis.setPunishmentMove(getBestResponse(tracker, move));
+                    punish(analysis, tracker, move, context);
                     analyses.add(analysis);
                 }
                 break;
             }
 
-            boolean isInTheory = theoryMoves.stream()
-                .anyMatch(m -> m.getSan().equals(move));
-
-            if (!isInTheory) {
+            if (!isInTheory(theoryMoves, move)) {
                 if (isWhiteMove == isPlayerWhite) {
                     MoveAnalysis analysis = new MoveAnalysis(moveNumber, isWhiteMove, move);
                     analysis.setOpeningMove(false);
                     analysis.setRecommendedMove(theoryMoves.get(0).getSan());
                     analysis.setTopOpeningMoves(theoryMoves.stream().limit(3).toList());
-                    analysis.setPunishmentMove(getBestResponse(tracker, move));
+                    punish(analysis, tracker, move, context);
                     analyses.add(analysis);
                 } else {
                     MoveAnalysis analysis = new MoveAnalysis(moveNumber, isWhiteMove, move);
                     analysis.setOpeningMove(false);
-                    analysis.setPunishmentMove(getBestResponse(tracker, move));
+                    punish(analysis, tracker, move, context);
                     analyses.add(analysis);
                 }
                 break;
@@ -73,66 +148,273 @@ public class OpeningTrainerService {
                 analyses.add(analysis);
             }
 
-            tracker.applyMoveSan(move);
+            node = advance(tracker, move);
         }
 
         return analyses;
     }
 
     public String[] getTheoryLine(String[] actualMoves) throws IOException {
+        return getTheoryLine(actualMoves, AnalysisContext.interactive());
+    }
+
+    public String[] getTheoryLine(String[] actualMoves, AnalysisContext context) throws IOException {
+        Prefetch prefetch = new Prefetch(actualMoves, context);
+        try {
+            return walkTheoryLine(actualMoves, context);
+        } finally {
+            prefetch.cancel();
+        }
+    }
+
+    private String[] walkTheoryLine(String[] actualMoves, AnalysisContext context) throws IOException {
         List<String> theoryLine = new ArrayList<>();
         PositionTracker tracker = new PositionTracker();
-        
-        for (int i = 0; i < Math.min(actualMoves.length, 30); i++) {
+        PositionMemo.Node node = positions.start();
+
+        for (int i = 0; i < Math.min(actualMoves.length, MAX_PLY); i++) {
             String move = actualMoves[i];
             
-            List<OpeningMove> theoryMoves = getTheoryMoves(tracker);
-            
-            if (theoryMoves.isEmpty()) break;
+            List<OpeningMove> theoryMoves = getTheoryMoves(node, tracker, context);
             
-            boolean isInTheory = theoryMoves.stream()
-                .anyMatch(m -> m.getSan().equals(move));
+            if (theoryMoves == null || theoryMoves.isEmpty()) break;
             
-            if (!isInTheory) {
+            if (!isInTheory(theoryMoves, move)) {
                 OpeningMove correctMove = theoryMoves.get(0);
                 theoryLine.add(correctMove.getSan());
-                tracker.applyMoveSan(correctMove.getSan());
+                node = advance(tracker, correctMove.getSan());
                 break;
             }
             
             theoryLine.add(move);
-            tracker.applyMoveSan(move);
+            node = advance(tracker, move);
         }
         
-        while (theoryLine.size() < 30) {
-            List<OpeningMove> theoryMoves = getTheoryMoves(tracker);
-            if (theoryMoves.isEmpty()) break;
+        while (theoryLine.size() < MAX_PLY) {
+            List<OpeningMove> theoryMoves = getTheoryMoves(node, tracker, context);
+            if (theoryMoves == null || theoryMoves.isEmpty()) break;
             
             String move = theoryMoves.get(0).getSan();
             theoryLine.add(move);
-            tracker.applyMoveSan(move);
+            node = advance(tracker, move);
         }
         
         return theoryLine.toArray(new String[0]);
     }
 
-    private List<OpeningMove> getTheoryMoves(PositionTracker tracker) throws IOException {
-        String json = explorerClient.getOpeningMoves(tracker.getAllMovesAsUci());
-        OpeningResponse response = gson.fromJson(json, OpeningResponse.class);
-        
+    private PositionMemo.Node advance(PositionTracker tracker, String sanMove) {
+        tracker.applyMoveSan(sanMove);
+        return positions.node(tracker.getPositionKey());
+    }
+
+    /**
+     * Explorer lookups started ahead of the sequential walk, so it finds
+     * them already in flight in the position memo.
+     *
+     * Only positions up to PREFETCH_AHEAD plies past the last one known to
+     * stay in theory are requested. Each answer that keeps the game in
+     * theory moves the window on; one that shows the game leaving theory
+     * cancels the lookups past it, so those still queued in the scheduler
+     * never spend a rate-limit token. Cancel the rest when the walk stops.
+     */
+    private final class Prefetch {
+        private final String[] moves;
+        private final AnalysisContext context;
+        private final int length;
+        private final PositionTracker tracker = new PositionTracker();
+        private final List<CompletableFuture<OpeningResponse>> requests = new ArrayList<>();
+        private PositionMemo.Node node = positions.start();
+        // Plies past which nothing is requested
+        private int end;
+
+        Prefetch(String[] moves, AnalysisContext context) {
+            this.moves = moves;
+            this.context = context;
+            this.length = Math.min(moves.length, MAX_PLY);
+            this.end = length;
+            extend(PREFETCH_AHEAD);
+        }
+
+        /**
+         * Request the positions before the given ply that are not requested yet
+         */
+        void extend(int plies) {
+            while (true) {
+                int ply;
+                PositionMemo.Node target;
+                long key;
+                String play;
+                synchronized (this) {
+                    ply = requests.size();
+                    if (ply >= Math.min(plies, end)) return;
+                    if (ply > 0) {
+                        try {
+                            node = advance(tracker, moves[ply - 1]);
+                        } catch (RuntimeException e) {
+                            // Illegal move; the walk reports it
+                            end = ply;
+                            return;
+                        }
+                    }
+                    target = node;
+                    key = tracker.getPositionKey();
+                    play = tracker.getAllMovesAsUci();
+                    requests.add(null);
+                }
+
+                // Outside the lock: the request may complete, and run callbacks, right away
+                CompletableFuture<OpeningResponse> request = requestOpening(target, key, play, context);
+                boolean dropped;
+                synchronized (this) {
+                    requests.set(ply, request);
+                    dropped = ply >= end;
+                }
+                if (dropped) {
+                    request.cancel(false);
+                    return;
+                }
+                String move = moves[ply];
+                request.thenAccept(response -> {
+                    if (isInTheory(theoryMoves(response), move)) {
+                        extend(ply + 1 + PREFETCH_AHEAD);
+                    } else {
+                        stop(ply + 1);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Cancel the lookups from the given ply on and request no more
+         */
+        void stop(int ply) {
+            List<CompletableFuture<OpeningResponse>> dropped = new ArrayList<>();
+            synchronized (this) {
+                end = Math.min(end, ply);
+                for (int i = ply; i < requests.size(); i++) {
+                    if (requests.get(i) != null) dropped.add(requests.get(i));
+                }
+            }
+            for (CompletableFuture<OpeningResponse> request : dropped) {
+                request.cancel(false);
+            }
+        }
+
+        void cancel() {
+            stop(0);
+        }
+    }
+
+    /**
+     * @return Moves played often enough, or null if the context's deadline passed first
+     */
+    private List<OpeningMove> getTheoryMoves(PositionMemo.Node node, PositionTracker tracker,
+                                             AnalysisContext context) throws IOException {
+        OpeningResponse response;
+        try {
+            response = Futures.await(requestOpening(node, tracker, context), context.remainingNanos());
+        } catch (DeadlineExceededException e) {
+            context.markTruncated();
+            return null;
+        }
+
+        return theoryMoves(response);
+    }
+
+    private static List<OpeningMove> theoryMoves(OpeningResponse response) {
         if (response.getMoves() == null) return new ArrayList<>();
-        
+
         return response.getMoves().stream()
             .filter(m -> m.getTotalGames() >= MIN_GAMES)
             .toList();
     }
 
-    private String getBestResponse(PositionTracker tracker, String move) {
+    private static boolean isInTheory(List<OpeningMove> theoryMoves, String move) {
+        return theoryMoves.stream().anyMatch(m -> m.getSan().equals(move));
+    }
+
+    private CompletableFuture<OpeningResponse> requestOpening(PositionMemo.Node node, PositionTracker tracker,
+                                                              AnalysisContext context) {
+        // Read the tracker now; it moves on before the load runs
+        return requestOpening(node, tracker.getPositionKey(), tracker.getAllMovesAsUci(), context);
+    }
+
+    private CompletableFuture<OpeningResponse> requestOpening(PositionMemo.Node node, long key, String play,
+                                                              AnalysisContext context) {
+        // The loader runs inside request() only if no response or load exists yet
+        boolean[] loaded = {false};
+        CompletableFuture<OpeningResponse> response = node.request(() -> {
+            loaded[0] = true;
+            return fetchOpening(key, play, context);
+        });
+        Metrics.shared().cache("memo").record(!loaded[0]);
+        return response;
+    }
+
+    private CompletableFuture<OpeningResponse> fetchOpening(long key, String play, AnalysisContext context) {
+        if (book != null) {
+            return CompletableFuture.completedFuture(book.lookup(key));
+        }
+        if (explorerCache != null) {
+            OpeningResponse cached = explorerCache.get(key);
+            Metrics.shared().cache("explorer").record(cached != null);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+        }
+
+        context.countExplorerRequest();
+        CompletableFuture<String> json = scheduler.submit(RequestScheduler.EXPLORER, play,
+            context.getLane(), () -> explorerClient.getOpeningMovesAsync(play));
+        return Futures.propagateCancel(json, json.thenApply(body -> {
+            OpeningResponse response = gson.fromJson(body, OpeningResponse.class);
+            if (explorerCache != null) {
+                try {
+                    explorerCache.put(key, response);
+                } catch (IOException e) {
+                    // The response is still good; the position is just fetched again next run
+                    Metrics.shared().counter("cache_write_errors_total", "cache", "explorer").increment();
+                }
+            }
+            return response;
+        }));
+    }
+
+    private void punish(MoveAnalysis analysis, PositionTracker tracker, String move, AnalysisContext context) {
+        if (context.isEngineDeferred()) return;
+        analysis.setPunishmentMove(getBestResponse(tracker, move, context));
+    }
+
+    /**
+     * Look up the punishment moves of deviations left empty by a walk with
+     * {@link AnalysisContext#deferringEngine()}
+     * @param moves Moves of the game, as passed to analyzeGame
+     * @param analyses Result of analyzeGame
+     */
+    public void findPunishmentMoves(String[] moves, List<MoveAnalysis> analyses, AnalysisContext context) {
+        for (MoveAnalysis analysis : analyses) {
+            if (analysis.isOpeningMove() || analysis.getPunishmentMove() != null) continue;
+
+            int ply = (analysis.getMoveNumber() - 1) * 2 + (analysis.isWhite() ? 0 : 1);
+            PositionTracker tracker = new PositionTracker();
+            for (int i = 0; i < ply; i++) {
+                tracker.applyMoveSan(moves[i]);
+            }
+            analysis.setPunishmentMove(getBestResponse(tracker, moves[ply], context));
+        }
+    }
+
+    private String getBestResponse(PositionTracker tracker, String move, AnalysisContext context) {
         try {
-            PositionTracker after = tracker.clone();
+            PositionTracker after = tracker.copy();
             after.applyMoveSan(move);
-            String json = engineClient.getBestMove(after.getFen());
-            return gson.fromJson(json, EngineResponse.class).getSan();
+            long start = System.nanoTime();
+            EngineResponse best = Futures.await(engine.analyze(after.getFen(), ENGINE_DEPTH, context.getLane()),
+                context.remainingNanos());
+            Metrics.shared().timer("engine_seconds_per_deviation").record(System.nanoTime() - start);
+            return best != null ? best.getSan() : null;
+        } catch (DeadlineExceededException e) {
+            // Report the deviation without its punishment rather than wait
+            context.markTruncated();
+            return null;
         } catch (Exception e) {
             return null;
         }
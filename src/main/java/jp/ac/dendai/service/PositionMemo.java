@@ -0,0 +1,141 @@
+package jp.ac.dendai.service;
+
+import jp.ac.dendai.model.OpeningResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * In-memory explorer responses for one session, one node per position.
+ *
+ * Nodes are keyed by the position key the tracker already keeps, so walking
+ * a game costs one lookup per ply and transpositions share a node. Beyond
+ * maxNodes positions the least recently walked one is evicted, so a
+ * long-running server holds a bounded memo; an evicted position is fetched
+ * again the next time a game reaches it. The starting position is never
+ * evicted. Concurrent requests for a node share one load; the load is
+ * cancelled only when every requester has cancelled its view.
+ */
+public class PositionMemo {
+    private final Map<Long, Node> nodesByKey;
+    private final Node start;
+
+    /**
+     * Starts loading the explorer response of a node
+     */
+    public interface Loader {
+        CompletableFuture<OpeningResponse> load();
+    }
+
+    public static class Node {
+        private final long positionKey;
+        private volatile OpeningResponse response;
+        private CompletableFuture<OpeningResponse> pending;
+        private int interest;
+
+        private Node(long positionKey) {
+            this.positionKey = positionKey;
+        }
+
+        public long getPositionKey() { return positionKey; }
+
+        /**
+         * Get the cached response, or null if this position was not fetched yet
+         */
+        public OpeningResponse getResponse() { return response; }
+
+        /**
+         * Request the response of this position, starting a load if none is in flight.
+         * Cancel the returned view when the response is no longer needed; a failed
+         * or abandoned load is retried by the next request.
+         * @return Per-caller view of the shared load
+         */
+        public CompletableFuture<OpeningResponse> request(Loader loader) {
+            OpeningResponse cached = response;
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+
+            CompletableFuture<OpeningResponse> load;
+            boolean started = false;
+            synchronized (this) {
+                if (response != null) return CompletableFuture.completedFuture(response);
+                if (pending == null) {
+                    try {
+                        pending = loader.load();
+                    } catch (RuntimeException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                    started = true;
+                }
+                load = pending;
+                interest++;
+            }
+            if (started) {
+                load.whenComplete((result, error) -> finish(load, result));
+            }
+
+            CompletableFuture<OpeningResponse> view = load.copy();
+            view.whenComplete((result, error) -> {
+                if (view.isCancelled()) abandon(load);
+            });
+            return view;
+        }
+
+        private synchronized void finish(CompletableFuture<OpeningResponse> load, OpeningResponse result) {
+            if (pending != load) return;
+            pending = null;
+            interest = 0;
+            if (result != null) response = result;
+        }
+
+        private void abandon(CompletableFuture<OpeningResponse> load) {
+            synchronized (this) {
+                if (pending != load || --interest > 0) return;
+                pending = null;
+                interest = 0;
+            }
+            load.cancel(false);
+        }
+    }
+
+    /**
+     * @param startKey Position key of the starting position
+     * @param maxNodes Least recently walked positions are evicted beyond this
+     */
+    public PositionMemo(long startKey, int maxNodes) {
+        this.start = new Node(startKey);
+        this.nodesByKey = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Node> eldest) {
+                return size() > maxNodes;
+            }
+        };
+    }
+
+    /**
+     * Node of the starting position
+     */
+    public Node start() {
+        return start;
+    }
+
+    /**
+     * Get (or create) the node of a position
+     * @param positionKey Position key, e.g. after the move just played
+     */
+    public Node node(long positionKey) {
+        if (positionKey == start.positionKey) return start;
+        synchronized (nodesByKey) {
+            return nodesByKey.computeIfAbsent(positionKey, Node::new);
+        }
+    }
+
+    /**
+     * Number of distinct positions in the memo
+     */
+    public int size() {
+        synchronized (nodesByKey) {
+            return nodesByKey.size() + 1;
+        }
+    }
+}
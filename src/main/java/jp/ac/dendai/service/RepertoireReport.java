@@ -0,0 +1,183 @@
+package jp.ac.dendai.service;
+
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.model.MoveAnalysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collector;
+
+/**
+ * Where a player leaves opening theory, aggregated over many analyzed games.
+ *
+ * Every finished game is merged into a move trie of its color up to the
+ * player's first non-book move, or up to the last analyzed move if the player
+ * never left the book. Aborted and unfinished games are skipped. The games are split across the common fork-join pool
+ * with a parallel stream; each worker fills its own pair of tries and the
+ * partial tries are merged at the end, so no locking is needed.
+ */
+public class RepertoireReport {
+    private final List<Entry> white;
+    private final List<Entry> black;
+    private final int games;
+
+    /**
+     * One position in which the player left the book with one particular move
+     */
+    public static class Entry {
+        private final List<String> line;
+        private final int gamesReaching;
+        private final String move;
+        private final String bookMove;
+        private final String punishment;
+        private final int wins;
+        private final int draws;
+        private final int losses;
+
+        Entry(RepertoireTrie.Found found) {
+            RepertoireTrie.Deviation deviation = found.deviation();
+            this.line = found.line();
+            this.gamesReaching = found.gamesReaching();
+            this.move = found.move();
+            this.bookMove = deviation.bookMove;
+            this.punishment = deviation.punishment;
+            this.wins = deviation.wins;
+            this.draws = deviation.draws;
+            this.losses = deviation.losses;
+        }
+
+        /**
+         * SAN moves leading to the position
+         */
+        public List<String> getLine() { return line; }
+
+        /**
+         * Number of the player's games that reached the position
+         */
+        public int getGamesReaching() { return gamesReaching; }
+
+        /**
+         * The non-book move the player chose
+         */
+        public String getMove() { return move; }
+
+        /**
+         * Most played book move of the position
+         */
+        public String getBookMove() { return bookMove; }
+
+        /**
+         * Engine's best answer to the player's move, or null
+         */
+        public String getPunishment() { return punishment; }
+
+        public int getCount() { return wins + draws + losses; }
+
+        public int getWins() { return wins; }
+
+        public int getDraws() { return draws; }
+
+        public int getLosses() { return losses; }
+
+        /**
+         * Player's score with this move: 1 per win, 0.5 per draw, divided by the games
+         */
+        public double getScore() {
+            return (wins + draws * 0.5) / getCount();
+        }
+    }
+
+    /**
+     * Partial result of one worker: a trie per color
+     */
+    private static final class Tries {
+        final RepertoireTrie white = new RepertoireTrie();
+        final RepertoireTrie black = new RepertoireTrie();
+        int games;
+
+        void add(GameAnalysis analysis) {
+            if (!analysis.isSuccessful() || analysis.getAnalyses() == null
+                || analysis.getGame().getMoves() == null || !analysis.getGame().isFinished()) return;
+
+            boolean isWhite = "white".equalsIgnoreCase(analysis.getPlayerColor());
+            String[] moves = analysis.getGame().getMoves().split(" ");
+            RepertoireTrie.Deviation deviation = new RepertoireTrie.Deviation();
+            int ply = -1;
+            int analyzedPlies = 0;
+
+            for (MoveAnalysis move : analysis.getAnalyses()) {
+                analyzedPlies = (move.getMoveNumber() - 1) * 2 + (move.isWhite() ? 0 : 1) + 1;
+                if (move.isWhite() == isWhite && !move.isOpeningMove() && !move.isOutOfTheory()) {
+                    ply = (move.getMoveNumber() - 1) * 2 + (move.isWhite() ? 0 : 1);
+                    deviation.bookMove = move.getRecommendedMove();
+                    deviation.punishment = move.getPunishmentMove();
+                    break;
+                }
+            }
+
+            String winner = analysis.getGame().getWinner();
+            if (winner == null) {
+                deviation.draws = 1;
+            } else if (winner.equalsIgnoreCase(analysis.getPlayerColor())) {
+                deviation.wins = 1;
+            } else {
+                deviation.losses = 1;
+            }
+
+            (isWhite ? white : black).add(moves, analyzedPlies, ply, deviation);
+            games++;
+        }
+
+        Tries merge(Tries other) {
+            white.merge(other.white);
+            black.merge(other.black);
+            games += other.games;
+            return this;
+        }
+    }
+
+    private RepertoireReport(Tries tries) {
+        this.white = entries(tries.white);
+        this.black = entries(tries.black);
+        this.games = tries.games;
+    }
+
+    /**
+     * Aggregate analyzed games in parallel; failed analyses are skipped
+     */
+    public static RepertoireReport build(Collection<GameAnalysis> analyses) {
+        Tries tries = analyses.parallelStream()
+            .collect(Collector.of(Tries::new, Tries::add, Tries::merge));
+        return new RepertoireReport(tries);
+    }
+
+    private static List<Entry> entries(RepertoireTrie trie) {
+        List<Entry> entries = new ArrayList<>();
+        for (RepertoireTrie.Found found : trie.collect()) {
+            entries.add(new Entry(found));
+        }
+        // Most frequent first; earlier positions first among equals
+        entries.sort(Comparator.comparingInt(Entry::getCount).reversed()
+            .thenComparingInt(e -> e.getLine().size())
+            .thenComparing(e -> String.join(" ", e.getLine()))
+            .thenComparing(Entry::getMove));
+        return entries;
+    }
+
+    /**
+     * Deviations as white, most frequent first
+     */
+    public List<Entry> getWhite() { return white; }
+
+    /**
+     * Deviations as black, most frequent first
+     */
+    public List<Entry> getBlack() { return black; }
+
+    /**
+     * Number of games aggregated
+     */
+    public int getGames() { return games; }
+}
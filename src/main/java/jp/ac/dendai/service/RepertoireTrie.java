@@ -0,0 +1,120 @@
+package jp.ac.dendai.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Move trie of one color's games, counting at every position how many games
+ * reached it and which non-book moves the player chose there.
+ *
+ * Not thread-safe: every worker fills its own trie and the partial tries
+ * are merged at the end.
+ */
+class RepertoireTrie {
+    private final Node root = new Node();
+
+    static class Node {
+        final Map<String, Node> children = new HashMap<>();
+        final Map<String, Deviation> deviations = new HashMap<>();
+        int games;
+    }
+
+    /**
+     * Counts of one non-book move played in one position
+     */
+    static class Deviation {
+        String bookMove;
+        String punishment;
+        int wins;
+        int draws;
+        int losses;
+
+        int count() {
+            return wins + draws + losses;
+        }
+
+        void merge(Deviation other) {
+            if (bookMove == null) bookMove = other.bookMove;
+            if (punishment == null) punishment = other.punishment;
+            wins += other.wins;
+            draws += other.draws;
+            losses += other.losses;
+        }
+    }
+
+    /**
+     * One deviation found by {@link #collect()}
+     */
+    record Found(List<String> line, int gamesReaching, String move, Deviation deviation) {
+    }
+
+    Node root() {
+        return root;
+    }
+
+    /**
+     * Add one game
+     * @param moves SAN moves of the game
+     * @param analyzedPlies Plies covered by the analysis; a game that never left
+     *        the book is inserted only this far
+     * @param deviationPly Ply at which the player left the book, or -1 if they never did
+     * @param deviation Counts of this game (a single win, draw or loss) for the deviation
+     */
+    void add(String[] moves, int analyzedPlies, int deviationPly, Deviation deviation) {
+        Node node = root;
+        node.games++;
+        int end = deviationPly >= 0 ? deviationPly : analyzedPlies;
+        for (int ply = 0; ply < end && ply < moves.length; ply++) {
+            node = node.children.computeIfAbsent(moves[ply], m -> new Node());
+            node.games++;
+        }
+        if (deviationPly >= 0 && deviationPly < moves.length) {
+            node.deviations.merge(moves[deviationPly], deviation, (a, b) -> {
+                a.merge(b);
+                return a;
+            });
+        }
+    }
+
+    /**
+     * Fold another trie into this one
+     * @return This trie
+     */
+    RepertoireTrie merge(RepertoireTrie other) {
+        merge(root, other.root);
+        return this;
+    }
+
+    private static void merge(Node into, Node from) {
+        into.games += from.games;
+        from.deviations.forEach((move, deviation) -> into.deviations.merge(move, deviation, (a, b) -> {
+            a.merge(b);
+            return a;
+        }));
+        from.children.forEach((move, child) -> {
+            Node existing = into.children.putIfAbsent(move, child);
+            if (existing != null) merge(existing, child);
+        });
+    }
+
+    /**
+     * List every deviation together with the line leading to it
+     */
+    List<Found> collect() {
+        List<Found> found = new ArrayList<>();
+        collect(root, new ArrayList<>(), found);
+        return found;
+    }
+
+    private static void collect(Node node, List<String> line, List<Found> found) {
+        node.deviations.forEach((move, deviation) ->
+            found.add(new Found(List.copyOf(line), node.games, move, deviation)));
+        node.children.forEach((move, child) -> {
+            line.add(move);
+            collect(child, line, found);
+            line.remove(line.size() - 1);
+        });
+    }
+}
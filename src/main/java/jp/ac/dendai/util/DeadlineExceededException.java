@@ -0,0 +1,12 @@
+package jp.ac.dendai.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a result did not arrive before the deadline of the analysis waiting for it
+ */
+public class DeadlineExceededException extends IOException {
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,72 @@
+package jp.ac.dendai.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public final class Futures {
+    private Futures() {
+    }
+
+    /**
+     * Wait for a future, rethrowing its IOException (or RuntimeException) as is
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a result");
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * Wait for a future at most the given time. On timeout the future is
+     * cancelled, so pass a per-caller view rather than a shared future.
+     * @param timeoutNanos Time left; Long.MAX_VALUE waits indefinitely
+     * @throws DeadlineExceededException If no result arrived in time
+     */
+    public static <T> T await(CompletableFuture<T> future, long timeoutNanos) throws IOException {
+        if (timeoutNanos == Long.MAX_VALUE) return await(future);
+        try {
+            return future.get(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new DeadlineExceededException("Deadline exceeded while waiting for a result");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a result");
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * Cancel the source when the derived future is cancelled, so dropping a
+     * transformed result also drops the work behind it
+     * @return The derived future
+     */
+    public static <T> CompletableFuture<T> propagateCancel(CompletableFuture<?> source,
+                                                           CompletableFuture<T> derived) {
+        derived.whenComplete((result, error) -> {
+            if (derived.isCancelled()) source.cancel(false);
+        });
+        return derived;
+    }
+
+    private static IOException unwrap(Throwable cause) {
+        if (cause instanceof IOException io) return io;
+        if (cause instanceof UncheckedIOException unchecked) return unchecked.getCause();
+        if (cause instanceof RuntimeException runtime) throw runtime;
+        if (cause instanceof Error error) throw error;
+        return new IOException(cause);
+    }
+}
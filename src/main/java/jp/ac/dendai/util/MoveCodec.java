@@ -0,0 +1,105 @@
+package jp.ac.dendai.util;
+
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Packs a move into 16 bits: from square (bits 0-5), to square (bits 6-11)
+ * and promotion piece (bits 12-14: 0 none, 1 knight, 2 bishop, 3 rook, 4 queen).
+ * Square indexes follow chesslib's order (a1 = 0, h8 = 63). Code 0 (a1a1)
+ * never denotes a real move and is used as "no move".
+ */
+public final class MoveCodec {
+    public static final int NONE = 0;
+
+    private static final Square[] SQUARES = Square.values();
+    private static final String PROMOTIONS = " nbrq";
+    private static final PieceType[] PROMOTION_TYPES = {
+        PieceType.NONE, PieceType.KNIGHT, PieceType.BISHOP, PieceType.ROOK, PieceType.QUEEN
+    };
+
+    private MoveCodec() {
+    }
+
+    public static int encode(Move move) {
+        int promotion = 0;
+        if (move.getPromotion() != null && move.getPromotion() != Piece.NONE) {
+            promotion = promotionIndex(move.getPromotion().getPieceType());
+        }
+        return move.getFrom().ordinal() | (move.getTo().ordinal() << 6) | (promotion << 12);
+    }
+
+    /**
+     * Encode a move in UCI format (e.g. "e2e4", "e7e8q")
+     */
+    public static int encode(String uci) {
+        int from = squareIndex(uci, 0);
+        int to = squareIndex(uci, 2);
+        int promotion = uci.length() > 4 ? PROMOTIONS.indexOf(Character.toLowerCase(uci.charAt(4))) : 0;
+        if (promotion < 0) {
+            throw new IllegalArgumentException("Invalid promotion: " + uci);
+        }
+        return from | (to << 6) | (promotion << 12);
+    }
+
+    public static String toUci(int code) {
+        return appendUci(new StringBuilder(5), code).toString();
+    }
+
+    /**
+     * Append a move in UCI format without creating intermediate strings
+     */
+    public static StringBuilder appendUci(StringBuilder out, int code) {
+        appendSquare(out, code & 63);
+        appendSquare(out, (code >>> 6) & 63);
+        int promotion = (code >>> 12) & 7;
+        if (promotion != 0) {
+            out.append(PROMOTIONS.charAt(promotion));
+        }
+        return out;
+    }
+
+    /**
+     * Decode into a chesslib move; the side is needed for the promotion piece
+     */
+    public static Move toMove(int code, Side side) {
+        Square from = SQUARES[code & 63];
+        Square to = SQUARES[(code >>> 6) & 63];
+        int promotion = (code >>> 12) & 7;
+        if (promotion == 0) {
+            return new Move(from, to);
+        }
+        return new Move(from, to, Piece.valueOf(side.name() + "_" + PROMOTION_TYPES[promotion].name()));
+    }
+
+    public static int from(int code) {
+        return code & 63;
+    }
+
+    public static int to(int code) {
+        return (code >>> 6) & 63;
+    }
+
+    private static int promotionIndex(PieceType type) {
+        for (int i = 1; i < PROMOTION_TYPES.length; i++) {
+            if (PROMOTION_TYPES[i] == type) return i;
+        }
+        return 0;
+    }
+
+    private static int squareIndex(String uci, int offset) {
+        int file = uci.charAt(offset) - 'a';
+        int rank = uci.charAt(offset + 1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            throw new IllegalArgumentException("Invalid UCI move: " + uci);
+        }
+        return rank * 8 + file;
+    }
+
+    private static void appendSquare(StringBuilder out, int index) {
+        out.append((char) ('a' + index % 8)).append((char) ('1' + index / 8));
+    }
+}
@@ -0,0 +1,201 @@
+package jp.ac.dendai.util;
+
+import jp.ac.dendai.model.Game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal streaming PGN reader producing the same Game model as the Lichess API.
+ *
+ * Only what the analysis needs is kept: players, ratings, result, opening
+ * name and the main line in SAN. Comments, variations, NAGs and move numbers
+ * are dropped.
+ */
+public class PgnReader {
+    private final BufferedReader reader;
+    private String pendingLine;
+
+    public PgnReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read the next game
+     * @return Parsed game, or null at end of input
+     */
+    public Game next() throws IOException {
+        String text = nextGameText();
+        return text != null ? parse(text) : null;
+    }
+
+    /**
+     * Read the raw text (tag pairs and movetext) of the next game without parsing it
+     * @return Game text, or null at end of input
+     */
+    public String nextGameText() throws IOException {
+        StringBuilder text = new StringBuilder();
+        boolean inMovetext = false;
+
+        String line = pendingLine != null ? pendingLine : reader.readLine();
+        pendingLine = null;
+        for (; line != null; line = reader.readLine()) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("[")) {
+                // A tag pair after movetext starts the next game
+                if (inMovetext) {
+                    pendingLine = line;
+                    break;
+                }
+            } else if (!trimmed.isEmpty()) {
+                inMovetext = true;
+            }
+            text.append(line).append('\n');
+        }
+
+        return text.toString().isBlank() ? null : text.toString();
+    }
+
+    /**
+     * Parse the text of one game
+     */
+    public static Game parse(String text) {
+        Map<String, String> tags = new HashMap<>();
+        StringBuilder movetext = new StringBuilder();
+
+        for (String line : text.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+                int space = trimmed.indexOf(' ');
+                int open = trimmed.indexOf('"');
+                int close = trimmed.lastIndexOf('"');
+                if (space > 1 && open > space && close > open) {
+                    tags.put(trimmed.substring(1, space), trimmed.substring(open + 1, close));
+                }
+            } else if (!trimmed.isEmpty()) {
+                movetext.append(trimmed).append(' ');
+            }
+        }
+
+        Game game = new Game();
+        game.setId(gameId(tags));
+        game.setMoves(mainLine(movetext));
+        game.setWinner(winner(tags.get("Result")));
+        game.setStatus(status(tags.get("Result")));
+
+        if (tags.containsKey("Opening")) {
+            Game.Opening opening = new Game.Opening();
+            opening.setName(tags.get("Opening"));
+            game.setOpening(opening);
+        }
+
+        Game.Players players = new Game.Players();
+        players.setWhite(player(tags.get("White"), tags.get("WhiteElo")));
+        players.setBlack(player(tags.get("Black"), tags.get("BlackElo")));
+        game.setPlayers(players);
+        return game;
+    }
+
+    /**
+     * Strip comments, variations, NAGs, move numbers and the result from movetext
+     */
+    static String mainLine(CharSequence movetext) {
+        StringBuilder moves = new StringBuilder();
+        StringBuilder token = new StringBuilder();
+        int variationDepth = 0;
+        boolean inComment = false;
+
+        for (int i = 0; i <= movetext.length(); i++) {
+            char c = i < movetext.length() ? movetext.charAt(i) : ' ';
+
+            if (inComment) {
+                if (c == '}') inComment = false;
+                continue;
+            }
+            if (c == '{') {
+                inComment = true;
+                continue;
+            }
+            if (c == '(') {
+                variationDepth++;
+                continue;
+            }
+            if (c == ')') {
+                variationDepth = Math.max(0, variationDepth - 1);
+                continue;
+            }
+            if (variationDepth > 0) continue;
+
+            if (Character.isWhitespace(c)) {
+                appendMove(moves, token);
+                token.setLength(0);
+            } else {
+                token.append(c);
+            }
+        }
+        return moves.toString();
+    }
+
+    private static void appendMove(StringBuilder moves, StringBuilder token) {
+        if (token.length() == 0) return;
+
+        // "12." / "12..." / "12.e4"
+        int start = 0;
+        while (start < token.length() && Character.isDigit(token.charAt(start))) start++;
+        if (start > 0 && start < token.length() && token.charAt(start) == '.') {
+            while (start < token.length() && token.charAt(start) == '.') start++;
+        } else {
+            start = 0;
+        }
+
+        // Annotations such as "!", "?!"
+        int end = token.length();
+        while (end > start && (token.charAt(end - 1) == '!' || token.charAt(end - 1) == '?')) end--;
+        if (end <= start) return;
+
+        String move = token.substring(start, end);
+        if (move.startsWith("$") || move.equals("1-0") || move.equals("0-1")
+                || move.equals("1/2-1/2") || move.equals("*")) {
+            return;
+        }
+
+        if (moves.length() > 0) moves.append(' ');
+        moves.append(move);
+    }
+
+    private static String gameId(Map<String, String> tags) {
+        String id = tags.getOrDefault("GameId", tags.get("Site"));
+        if (id == null) return null;
+        int slash = id.lastIndexOf('/');
+        return slash >= 0 ? id.substring(slash + 1) : id;
+    }
+
+    private static String winner(String result) {
+        if ("1-0".equals(result)) return "white";
+        if ("0-1".equals(result)) return "black";
+        return null;
+    }
+
+    // PGN does not record how a decisive game ended, only who won
+    private static String status(String result) {
+        if ("1/2-1/2".equals(result)) return "draw";
+        if ("1-0".equals(result) || "0-1".equals(result)) return null;
+        return "started";
+    }
+
+    private static Game.Player player(String name, String elo) {
+        Game.Player player = new Game.Player();
+        Game.Player.UserInfo user = new Game.Player.UserInfo();
+        user.setName(name);
+        user.setId(name != null ? name.toLowerCase() : null);
+        player.setUser(user);
+        try {
+            player.setRating(elo != null ? Integer.parseInt(elo) : 0);
+        } catch (NumberFormatException e) {
+            player.setRating(0);
+        }
+        return player;
+    }
+}
@@ -2,12 +2,33 @@ package jp.ac.dendai.util;
 
 import com.github.bhlangonijr.chesslib.Board;
 import com.github.bhlangonijr.chesslib.move.Move;
+import com.github.bhlangonijr.chesslib.move.MoveBackup;
 
+import java.util.Arrays;
+
+/**
+ * Board plus the move history the explorer queries need.
+ *
+ * The comma-separated UCI prefix, the move codes and the Zobrist key of
+ * every ply are kept incrementally, so reading them costs nothing and
+ * undoing a move is a truncation. Arrays grow once and are reused by
+ * {@link #reset()}, so replaying many games through one tracker allocates
+ * little beyond what chesslib needs to make the move.
+ */
 public class PositionTracker {
+    private static final int INITIAL_CAPACITY = 64;
+
     private final Board board;
+    private final String startFen;
+    private final StringBuilder uciMoves = new StringBuilder(INITIAL_CAPACITY * 5);
+    private int[] uciLengths = new int[INITIAL_CAPACITY + 1];
+    private int[] moveCodes = new int[INITIAL_CAPACITY];
+    private long[] keys = new long[INITIAL_CAPACITY + 1];
+    private int ply;
+    private String uciCache = "";
 
     public PositionTracker() {
-        this.board = new Board();
+        this(null);
     }
 
     /**
@@ -15,14 +36,75 @@ public class PositionTracker {
      */
     public PositionTracker(String fen) {
         this.board = new Board();
-        this.board.loadFromFen(fen);
+        this.startFen = fen;
+        if (fen != null) {
+            board.loadFromFen(fen);
+        }
+        keys[0] = board.getZobristKey();
     }
 
     /**
      * Apply a move in SAN format (e.g., "e4", "Nf3")
+     * @throws IllegalArgumentException If the move is not legal here
      */
     public void applyMoveSan(String sanMove) {
-        board.doMove(sanMove);
+        int before = board.getBackup().size();
+        boolean moved;
+        try {
+            moved = board.doMove(sanMove);
+        } catch (RuntimeException e) {
+            // chesslib reports unreadable SAN with its own exception
+            throw new IllegalArgumentException("Illegal move: " + sanMove, e);
+        }
+        if (!moved || board.getBackup().size() == before) {
+            throw new IllegalArgumentException("Illegal move: " + sanMove);
+        }
+        record(board.getBackup().getLast().getMove());
+    }
+
+    /**
+     * Apply a legal move
+     */
+    public void applyMove(Move move) {
+        board.doMove(move);
+        record(move);
+    }
+
+    /**
+     * Take back the last move
+     */
+    public void undoMove() {
+        if (ply == 0) {
+            throw new IllegalStateException("No move to undo");
+        }
+        board.undoMove();
+        ply--;
+        uciMoves.setLength(uciLengths[ply]);
+        uciCache = null;
+    }
+
+    /**
+     * Go back to the starting position, keeping the allocated buffers
+     */
+    public void reset() {
+        while (ply > 0) {
+            board.undoMove();
+            ply--;
+        }
+        uciMoves.setLength(0);
+        uciCache = "";
+    }
+
+    /**
+     * Copy this tracker, including the move history
+     * (needed for the explorer query and for repetition detection)
+     */
+    public PositionTracker copy() {
+        PositionTracker copy = new PositionTracker(startFen);
+        for (MoveBackup backup : board.getBackup()) {
+            copy.applyMove(backup.getMove());
+        }
+        return copy;
     }
 
     /**
@@ -33,31 +115,59 @@ public class PositionTracker {
     }
 
     /**
-     * Get all moves in UCI format as comma-separated string
+     * Get Zobrist hash of current position (identical for transpositions)
      */
-    public String getAllMovesAsUci() {
-        if (board.getBackup().isEmpty()) {
-            return "";
-        }
+    public long getPositionKey() {
+        return keys[ply];
+    }
 
-        StringBuilder uciMoves = new StringBuilder();
+    /**
+     * Get the number of moves applied
+     */
+    public int getPly() {
+        return ply;
+    }
 
-        for (int i = 0; i < board.getBackup().size(); i++) {
-            Move move = board.getBackup().get(i).getMove();
-            if (i > 0) {
-                uciMoves.append(",");
-            }
-            uciMoves.append(move.toString());
-        }
+    /**
+     * Get the code (see MoveCodec) of the last applied move, or MoveCodec.NONE at the start
+     */
+    public int getLastMoveCode() {
+        return ply > 0 ? moveCodes[ply - 1] : MoveCodec.NONE;
+    }
 
-        return uciMoves.toString();
+    /**
+     * Get the last applied move in UCI format, or null at the starting position
+     */
+    public String getLastMoveUci() {
+        return ply > 0 ? MoveCodec.toUci(moveCodes[ply - 1]) : null;
     }
 
     /**
-     * Clone this tracker
+     * Get all moves in UCI format as comma-separated string
      */
-    public PositionTracker clone() {
-        PositionTracker clone = new PositionTracker(this.getFen());
-        return clone;
+    public String getAllMovesAsUci() {
+        if (uciCache == null) {
+            uciCache = uciMoves.toString();
+        }
+        return uciCache;
+    }
+
+    private void record(Move move) {
+        if (ply == moveCodes.length) {
+            moveCodes = Arrays.copyOf(moveCodes, ply * 2);
+            uciLengths = Arrays.copyOf(uciLengths, ply * 2 + 1);
+            keys = Arrays.copyOf(keys, ply * 2 + 1);
+        }
+
+        int code = MoveCodec.encode(move);
+        uciLengths[ply] = uciMoves.length();
+        if (ply > 0) {
+            uciMoves.append(',');
+        }
+        MoveCodec.appendUci(uciMoves, code);
+        moveCodes[ply] = code;
+        ply++;
+        keys[ply] = board.getZobristKey();
+        uciCache = null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package jp.ac.dendai.util;
+
+/**
+ * Lossy, fixed-size string deduplicator. Equal strings decoded over and over
+ * (SANs, squares, player ids, opening names) are replaced by one shared
+ * instance so they don't pile up in long-lived results. Each string maps to
+ * one slot and a colliding string simply takes the slot over, so memory stays
+ * bounded no matter how many distinct strings pass through.
+ *
+ * Thread-safe without locking: a racy read sees either an older or a newer
+ * string, both of which are valid.
+ */
+public final class StringPool {
+    private final String[] slots;
+    private final int mask;
+
+    /**
+     * @param size Number of slots, rounded up to a power of two
+     */
+    public StringPool(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new String[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return The pooled instance equal to s, s itself if there is none, or null for null
+     */
+    public String intern(String s) {
+        if (s == null) return null;
+        int hash = s.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String pooled = slots[index];
+        if (s.equals(pooled)) {
+            return pooled;
+        }
+        slots[index] = s;
+        return s;
+    }
+}
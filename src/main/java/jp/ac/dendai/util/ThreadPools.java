@@ -0,0 +1,51 @@
+package jp.ac.dendai.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ThreadPools {
+    private static final int FALLBACK_IO_THREADS = 16;
+
+    private ThreadPools() {
+    }
+
+    /**
+     * Create an executor for I/O-bound tasks
+     * @param parallelism Number of threads, or 0 to use one virtual thread per task
+     *                    when running on Java 21+ (a pool of 16 threads otherwise)
+     * @param name Thread name prefix
+     */
+    public static ExecutorService newTaskExecutor(int parallelism, String name) {
+        if (parallelism <= 0) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) return virtual;
+            parallelism = FALLBACK_IO_THREADS;
+        }
+        return Executors.newFixedThreadPool(parallelism, daemonThreads(name));
+    }
+
+    /**
+     * Thread factory creating named daemon threads
+     */
+    public static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Looked up reflectively so the project still targets Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
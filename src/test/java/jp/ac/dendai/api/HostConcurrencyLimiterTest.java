@@ -0,0 +1,66 @@
+package jp.ac.dendai.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class HostConcurrencyLimiterTest {
+
+    @Test
+    public void queuedRequestStartsWhenPermitIsReleased() {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter();
+        limiter.setLimit("example.org", 1);
+
+        CompletableFuture<String> first = new CompletableFuture<>();
+        AtomicBoolean secondStarted = new AtomicBoolean();
+
+        CompletableFuture<String> a = limiter.runAsync("example.org", () -> first);
+        CompletableFuture<String> b = limiter.runAsync("example.org", () -> {
+            secondStarted.set(true);
+            return CompletableFuture.completedFuture("second");
+        });
+
+        assertFalse(secondStarted.get());
+        first.complete("first");
+
+        assertEquals("first", a.join());
+        assertEquals("second", b.join());
+        assertTrue(secondStarted.get());
+    }
+
+    @Test
+    public void hostsAreLimitedIndependently() {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter();
+        limiter.setLimit("a.example", 1);
+
+        limiter.acquireAsync("a.example");
+        assertTrue(limiter.acquireAsync("b.example").isDone());
+        assertFalse(limiter.acquireAsync("a.example").isDone());
+    }
+
+    @Test
+    public void cancellingARequestCancelsTheCallAndFreesItsPermit() {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter();
+        limiter.setLimit("example.org", 1);
+
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> running = limiter.runAsync("example.org", () -> call);
+        AtomicBoolean queuedStarted = new AtomicBoolean();
+        CompletableFuture<String> queued = limiter.runAsync("example.org", () -> {
+            queuedStarted.set(true);
+            return new CompletableFuture<>();
+        });
+
+        // A request still waiting for its permit is withdrawn
+        queued.cancel(false);
+        running.cancel(false);
+        assertTrue(call.isCancelled());
+        assertFalse(queuedStarted.get());
+        assertTrue(limiter.acquireAsync("example.org").isDone());
+    }
+}
@@ -0,0 +1,172 @@
+package jp.ac.dendai.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jp.ac.dendai.util.Futures;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ReplayTransportTest {
+    private static final URI EXPLORER = URI.create("https://explorer.lichess.ovh/lichess?play=e2e4");
+    private static final URI ENGINE = URI.create("https://chess-api.com/v1");
+    private static final URI GAMES = URI.create("https://lichess.org/api/games/user/someone");
+
+    /**
+     * Transport that answers with the request itself
+     */
+    private static class EchoTransport implements Transport {
+        @Override
+        public CompletableFuture<String> getAsync(URI uri, String accept) {
+            return CompletableFuture.completedFuture("GET " + uri);
+        }
+
+        @Override
+        public CompletableFuture<String> postJsonAsync(URI uri, String json) {
+            return CompletableFuture.completedFuture("POST " + json);
+        }
+
+        @Override
+        public Stream<String> getLines(URI uri, String accept) {
+            return Stream.of("{\"id\":\"a\"}", "{\"id\":\"b\"}");
+        }
+    }
+
+    @Test
+    public void replaysRecordedResponses() throws Exception {
+        Path dir = Files.createTempDirectory("fixtures");
+        Transport recorder = new RecordingTransport(new EchoTransport(), dir);
+        recorder.get(EXPLORER, "application/json");
+        recorder.postJson(ENGINE, "{\"fen\":\"a\"}");
+        recorder.postJson(ENGINE, "{\"fen\":\"b\"}");
+        try (Stream<String> lines = recorder.getLines(GAMES, "application/x-ndjson")) {
+            assertEquals(2, lines.collect(Collectors.toList()).size());
+        }
+
+        try (ReplayTransport replay = new ReplayTransport(dir, FaultProfile.NONE, new HostConcurrencyLimiter())) {
+            assertEquals("GET " + EXPLORER, replay.get(EXPLORER, "application/json"));
+            // POSTs are told apart by their body
+            assertEquals("POST {\"fen\":\"b\"}", replay.postJson(ENGINE, "{\"fen\":\"b\"}"));
+            assertEquals("POST {\"fen\":\"a\"}", replay.postJson(ENGINE, "{\"fen\":\"a\"}"));
+            try (Stream<String> lines = replay.getLines(GAMES, "application/x-ndjson")) {
+                assertEquals(List.of("{\"id\":\"a\"}", "{\"id\":\"b\"}"), lines.collect(Collectors.toList()));
+            }
+
+            HttpStatusException missing = assertThrows(HttpStatusException.class,
+                () -> replay.get(URI.create("https://explorer.lichess.ovh/lichess?play=d2d4"), "application/json"));
+            assertEquals(404, missing.getStatusCode());
+        }
+    }
+
+    @Test
+    public void injectsLatencyAndFailures() throws Exception {
+        Path dir = Files.createTempDirectory("fixtures");
+        new RecordingTransport(new EchoTransport(), dir).get(EXPLORER, "application/json");
+
+        FaultProfile slow = new FaultProfile(Duration.ofMillis(50), Duration.ZERO, 0, 0);
+        try (ReplayTransport replay = new ReplayTransport(dir, slow, new HostConcurrencyLimiter())) {
+            long start = System.nanoTime();
+            CompletableFuture<String> response = replay.getAsync(EXPLORER, "application/json");
+            assertEquals("GET " + EXPLORER, Futures.await(response));
+            assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+        }
+
+        FaultProfile throttled = new FaultProfile(Duration.ZERO, Duration.ZERO, 0, 1,
+            Duration.ofSeconds(3), 7);
+        try (ReplayTransport replay = new ReplayTransport(dir, throttled, new HostConcurrencyLimiter())) {
+            HttpStatusException e = assertThrows(HttpStatusException.class,
+                () -> replay.get(EXPLORER, "application/json"));
+            assertEquals(429, e.getStatusCode());
+            assertEquals(Duration.ofSeconds(3), e.getRetryAfter());
+            assertTrue(e.isRetryable());
+        }
+
+        // The same seed fails the same requests
+        FaultProfile flaky = new FaultProfile(Duration.ZERO, Duration.ZERO, 0.5, 0, Duration.ofSeconds(1), 42);
+        assertEquals(outcomes(dir, flaky), outcomes(dir, flaky));
+    }
+
+    @Test
+    public void concurrentRequestsFailTheSameWayOnEveryRun() throws Exception {
+        Path dir = Files.createTempDirectory("fixtures");
+        Transport recorder = new RecordingTransport(new EchoTransport(), dir);
+        for (int i = 0; i < 40; i++) {
+            recorder.get(explorer(i), "application/json");
+        }
+
+        FaultProfile flaky = new FaultProfile(Duration.ofMillis(5), Duration.ofMillis(20), 0.3, 0.2,
+            Duration.ofSeconds(1), 42);
+        Map<URI, String> first = concurrentOutcomes(dir, flaky);
+        assertEquals(first, concurrentOutcomes(dir, flaky));
+        assertTrue(first.values().stream().anyMatch(outcome -> !outcome.equals("..")));
+        // Another seed fails other requests
+        assertNotEquals(first, concurrentOutcomes(dir, new FaultProfile(Duration.ofMillis(5),
+            Duration.ofMillis(20), 0.3, 0.2, Duration.ofSeconds(1), 43)));
+    }
+
+    /**
+     * Send every request twice at once; '.' for success, 'x' for 500, '?' for 429
+     */
+    private static Map<URI, String> concurrentOutcomes(Path dir, FaultProfile profile) {
+        Map<URI, String> outcomes = new TreeMap<>();
+        try (ReplayTransport replay = new ReplayTransport(dir, profile, new HostConcurrencyLimiter())) {
+            Map<URI, List<CompletableFuture<String>>> responses = new HashMap<>();
+            for (int attempt = 0; attempt < 2; attempt++) {
+                for (int i = 0; i < 40; i++) {
+                    responses.computeIfAbsent(explorer(i), uri -> new ArrayList<>())
+                        .add(replay.getAsync(explorer(i), "application/json"));
+                }
+            }
+            // Which of a request's two attempts ran first is up to the scheduling; compare them sorted
+            responses.forEach((uri, futures) -> outcomes.put(uri, futures.stream()
+                .map(ReplayTransportTest::outcome).sorted().collect(Collectors.joining())));
+        }
+        return outcomes;
+    }
+
+    private static String outcome(CompletableFuture<String> response) {
+        try {
+            Futures.await(response);
+            return ".";
+        } catch (HttpStatusException e) {
+            return e.getStatusCode() == 500 ? "x" : "?";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static URI explorer(int i) {
+        return URI.create("https://explorer.lichess.ovh/lichess?play=e2e4&n=" + i);
+    }
+
+    private static String outcomes(Path dir, FaultProfile profile) throws IOException {
+        StringBuilder outcomes = new StringBuilder();
+        try (ReplayTransport replay = new ReplayTransport(dir, profile, new HostConcurrencyLimiter())) {
+            for (int i = 0; i < 20; i++) {
+                try {
+                    replay.get(EXPLORER, "application/json");
+                    outcomes.append('.');
+                } catch (HttpStatusException e) {
+                    outcomes.append(e.getStatusCode() == 500 ? 'x' : '?');
+                }
+            }
+        }
+        return outcomes.toString();
+    }
+}
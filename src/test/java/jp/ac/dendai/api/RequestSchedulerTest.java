@@ -0,0 +1,126 @@
+package jp.ac.dendai.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestSchedulerTest {
+
+    @Test
+    public void concurrentRequestsWithSameKeyShareOneCall() throws Exception {
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            AtomicInteger calls = new AtomicInteger();
+            CompletableFuture<String> response = new CompletableFuture<>();
+
+            CompletableFuture<String> a = scheduler.submit(RequestScheduler.EXPLORER, "e2e4",
+                RequestScheduler.Lane.BATCH, () -> { calls.incrementAndGet(); return response; });
+            CompletableFuture<String> b = scheduler.submit(RequestScheduler.EXPLORER, "e2e4",
+                RequestScheduler.Lane.INTERACTIVE, () -> { calls.incrementAndGet(); return response; });
+
+            response.complete("{}");
+            assertEquals("{}", a.get(1, TimeUnit.SECONDS));
+            assertEquals("{}", b.get(1, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void tooManyRequestsIsRetriedAfterRetryAfter() throws Exception {
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            AtomicInteger calls = new AtomicInteger();
+
+            CompletableFuture<String> result = scheduler.submit(RequestScheduler.EXPLORER, "d2d4",
+                RequestScheduler.Lane.BATCH, () -> calls.incrementAndGet() == 1
+                    ? CompletableFuture.failedFuture(new HttpStatusException(429, Duration.ofMillis(10)))
+                    : CompletableFuture.completedFuture("ok"));
+
+            assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+            assertEquals(2, calls.get());
+        }
+    }
+
+    @Test
+    public void slowCallIsHedgedAndFirstAnswerWins() throws Exception {
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            scheduler.setHedgePercentile(0.95);
+            // Teach the endpoint that it usually answers at once
+            for (int i = 0; i < 20; i++) {
+                scheduler.submit("test", "warm" + i, RequestScheduler.Lane.BATCH,
+                    () -> CompletableFuture.completedFuture("ok")).get(1, TimeUnit.SECONDS);
+            }
+
+            AtomicInteger calls = new AtomicInteger();
+            CompletableFuture<String> stuck = new CompletableFuture<>();
+            CompletableFuture<String> result = scheduler.submit("test", "slow", RequestScheduler.Lane.BATCH,
+                () -> calls.incrementAndGet() == 1 ? stuck : CompletableFuture.completedFuture("hedged"));
+
+            assertEquals("hedged", result.get(5, TimeUnit.SECONDS));
+            assertEquals(2, calls.get());
+            // The losing call is dropped
+            assertThrows(CancellationException.class, () -> stuck.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void failedHedgeLeavesTheFirstCallRunning() throws Exception {
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            scheduler.setHedgePercentile(0.95);
+            for (int i = 0; i < 20; i++) {
+                scheduler.submit("test", "warm" + i, RequestScheduler.Lane.BATCH,
+                    () -> CompletableFuture.completedFuture("ok")).get(1, TimeUnit.SECONDS);
+            }
+
+            AtomicInteger calls = new AtomicInteger();
+            CompletableFuture<String> slow = new CompletableFuture<>();
+            CompletableFuture<String> result = scheduler.submit("test", "slow", RequestScheduler.Lane.BATCH,
+                () -> calls.incrementAndGet() == 1 ? slow
+                    : CompletableFuture.failedFuture(new HttpStatusException(404)));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (calls.get() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(2, calls.get());
+            assertFalse(result.isDone());
+            assertFalse(slow.isCancelled());
+
+            slow.complete("first");
+            assertEquals("first", result.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void losingHedgedCallReleasesItsHostPermit() throws Exception {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter();
+        limiter.setLimit("example.org", 2);
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            scheduler.setHedgePercentile(0.95);
+            for (int i = 0; i < 20; i++) {
+                scheduler.submit("test", "warm" + i, RequestScheduler.Lane.BATCH,
+                    () -> limiter.runAsync("example.org", () -> CompletableFuture.completedFuture("ok")))
+                    .get(1, TimeUnit.SECONDS);
+            }
+
+            AtomicInteger calls = new AtomicInteger();
+            CompletableFuture<String> stuck = new CompletableFuture<>();
+            CompletableFuture<String> result = scheduler.submit("test", "slow", RequestScheduler.Lane.BATCH,
+                () -> limiter.runAsync("example.org",
+                    () -> calls.incrementAndGet() == 1 ? stuck : CompletableFuture.completedFuture("hedged")));
+
+            assertEquals("hedged", result.get(5, TimeUnit.SECONDS));
+            assertThrows(CancellationException.class, () -> stuck.get(1, TimeUnit.SECONDS));
+            // Both permits are free again though the stuck call never answered
+            assertTrue(limiter.acquireAsync("example.org").isDone());
+            assertTrue(limiter.acquireAsync("example.org").isDone());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package jp.ac.dendai.archive;
+
+import static jp.ac.dendai.model.AnalysisFixtures.deviation;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.model.MoveAnalysis;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class AnalysisJournalTest {
+
+    @Test
+    public void resumeReusesJournalledResults() throws Exception {
+        Path file = Files.createTempFile("journal", ".ndjson");
+        try (AnalysisJournal journal = AnalysisJournal.open(file, false)) {
+            journal.append(deviation("g1"));
+            journal.append(deviation("g2"));
+            // Failed and truncated games are analyzed again on resume
+            GameAnalysis failed = deviation("g3");
+            failed.setError("timeout");
+            journal.append(failed);
+            GameAnalysis truncated = deviation("g4");
+            truncated.setTruncated(true);
+            journal.append(truncated);
+        }
+
+        try (AnalysisJournal journal = AnalysisJournal.open(file, true)) {
+            assertEquals(2, journal.getCompletedCount());
+            GameAnalysis result = journal.takeCompleted("g1");
+            assertEquals("g1", result.getGame().getId());
+            assertEquals("Italian Game, Two Knights", result.getGame().getOpening().getName());
+            assertEquals("white", result.getPlayerColor());
+            MoveAnalysis analysis = result.getAnalyses().get(0);
+            assertEquals(3, analysis.getMoveNumber());
+            assertFalse(analysis.isOpeningMove());
+            assertEquals("Nxe4", analysis.getPunishmentMove());
+            assertEquals("Nf3", result.getTheoryLine()[2]);
+            assertNull(journal.takeCompleted("g1"));
+            assertNull(journal.takeCompleted("g3"));
+        }
+    }
+
+    @Test
+    public void lineCutShortByACrashIsDropped() throws Exception {
+        Path file = Files.createTempFile("journal", ".ndjson");
+        try (AnalysisJournal journal = AnalysisJournal.open(file, false)) {
+            journal.append(deviation("g1"));
+        }
+        Files.write(file, "{\"game\":{\"id\":\"g2\",\"mov".getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+
+        try (AnalysisJournal journal = AnalysisJournal.open(file, true)) {
+            assertEquals(1, journal.getCompletedCount());
+            journal.append(deviation("g2"));
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        try (AnalysisJournal journal = AnalysisJournal.open(file, true)) {
+            assertEquals(2, journal.getCompletedCount());
+        }
+        // Without resume the journal starts over
+        try (AnalysisJournal journal = AnalysisJournal.open(file, false)) {
+            assertEquals(0, journal.getCompletedCount());
+        }
+        assertEquals(0, Files.size(file));
+    }
+}
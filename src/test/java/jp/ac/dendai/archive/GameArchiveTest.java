@@ -0,0 +1,91 @@
+package jp.ac.dendai.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import jp.ac.dendai.api.LichessApi;
+import jp.ac.dendai.model.Game;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class GameArchiveTest {
+    /**
+     * Serves games newest first, honouring since like Lichess does
+     */
+    private static class FakeLichess implements LichessApi {
+        final List<Game> games = new ArrayList<>();
+        final List<Long> requests = new ArrayList<>();
+
+        @Override
+        public Stream<Game> streamGames(String username, int max, long since) {
+            requests.add(since);
+            return games.stream()
+                .filter(game -> game.getCreatedAt() >= since)
+                .sorted(Comparator.comparingLong(Game::getCreatedAt).reversed());
+        }
+    }
+
+    @Test
+    public void syncFetchesOnlyNewerGames() throws Exception {
+        Path root = Files.createTempDirectory("archive");
+        FakeLichess lichess = new FakeLichess();
+        lichess.games.add(game("a", 1000));
+        lichess.games.add(game("b", 2000));
+
+        GameArchive archive = GameArchive.open(root, "Someone");
+        assertEquals(2, archive.sync(lichess, "Someone"));
+        assertEquals(2000, archive.getNewestTimestamp());
+
+        lichess.games.add(game("c", 3000));
+        GameArchive reopened = GameArchive.open(root, "someone");
+        assertEquals(1, reopened.sync(lichess, "someone"));
+        assertEquals(0, reopened.sync(lichess, "someone"));
+        assertEquals(List.of(0L, 2001L, 3001L), lichess.requests);
+
+        try (Stream<Game> games = reopened.stream()) {
+            List<Game> archived = games.collect(Collectors.toList());
+            assertEquals(List.of("c", "b", "a"), archived.stream().map(Game::getId).collect(Collectors.toList()));
+
+            Game c = archived.get(0);
+            assertEquals("e4 e5 Nf3", c.getMoves());
+            assertEquals("Italian Game", c.getOpening().getName());
+            assertEquals("someone", c.getPlayers().getWhite().getUser().getId());
+            assertEquals(1850, c.getPlayers().getWhite().getRating());
+            assertNull(c.getPlayers().getBlack().getUser());
+            assertEquals("white", c.getWinner());
+            assertEquals(3000, c.getCreatedAt());
+        }
+    }
+
+    private static Game game(String id, long createdAt) {
+        Game game = new Game();
+        game.setId(id);
+        game.setCreatedAt(createdAt);
+        game.setMoves("e4 e5 Nf3");
+        game.setStatus("mate");
+        game.setWinner("white");
+
+        Game.Opening opening = new Game.Opening();
+        opening.setName("Italian Game");
+        game.setOpening(opening);
+
+        Game.Player.UserInfo user = new Game.Player.UserInfo();
+        user.setId("someone");
+        user.setName("Someone");
+        Game.Player white = new Game.Player();
+        white.setUser(user);
+        white.setRating(1850);
+        Game.Players players = new Game.Players();
+        players.setWhite(white);
+        players.setBlack(new Game.Player());
+        game.setPlayers(players);
+        return game;
+    }
+}
@@ -0,0 +1,92 @@
+package jp.ac.dendai.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jp.ac.dendai.model.Game;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+public class GameFileTest {
+
+    @Test
+    public void pgnIsSplitAtGameBoundaries() throws Exception {
+        StringBuilder pgn = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            pgn.append("[Event \"Club\"]\n")
+                .append("[Site \"https://lichess.org/g").append(i).append("\"]\n")
+                .append("[White \"someone\"]\n[Black \"other\"]\n[Result \"1-0\"]\n\n")
+                .append("1. e4 { [%clk 0:03:00] } e5 2. Nf3\nNc6 1-0\n\n");
+        }
+        Path file = Files.createTempFile("games", ".pgn");
+        Files.writeString(file, pgn);
+
+        // Chunks far smaller than a game, so nearly every game starts a chunk
+        GameFile games = new GameFile(file, 64);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = games.split(channel);
+            assertEquals(51, bounds.length);
+            for (int i = 1; i < bounds.length - 1; i++) {
+                assertEquals('[', pgn.charAt((int) bounds[i]));
+                assertEquals('\n', pgn.charAt((int) bounds[i] - 1));
+            }
+        }
+
+        try (Stream<Game> stream = games.stream(4)) {
+            List<Game> read = stream.collect(Collectors.toList());
+            assertEquals(50, read.size());
+            assertEquals(ids(50), read.stream().map(Game::getId).collect(Collectors.toSet()));
+            assertEquals("e4 e5 Nf3 Nc6", read.get(0).getMoves());
+            assertEquals("white", read.get(0).getPlayerColor("someone"));
+        }
+    }
+
+    @Test
+    public void ndjsonIsReadInParallelChunks() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            ndjson.append("{\"id\":\"g").append(i).append("\",\"moves\":\"d4 d5\"}\n");
+            if (i % 100 == 0) ndjson.append("not json\n\n");
+        }
+        Path file = Files.createTempFile("games", ".ndjson");
+        Files.writeString(file, ndjson);
+
+        GameFile games = new GameFile(file, 1000);
+        try (Stream<Game> stream = games.stream(3)) {
+            assertEquals(ids(1000), stream.map(Game::getId).collect(Collectors.toSet()));
+        }
+        assertEquals(10, games.getSkipped());
+    }
+
+    @Test
+    public void upperCaseGzipExtensionIsDecompressed() throws Exception {
+        Path file = Files.createTempFile("games", ".PGN.GZ");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(("[Site \"https://lichess.org/g0\"]\n[White \"someone\"]\n[Black \"other\"]\n"
+                + "[Result \"1/2-1/2\"]\n\n1. d4 d5 1/2-1/2\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertTrue(GameFile.isPgn(file));
+        try (Stream<Game> stream = new GameFile(file).stream(2)) {
+            List<Game> read = stream.collect(Collectors.toList());
+            assertEquals(1, read.size());
+            assertEquals("d4 d5", read.get(0).getMoves());
+        }
+    }
+
+    private static Set<String> ids(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "g" + i).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,80 @@
+package jp.ac.dendai.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import jp.ac.dendai.model.EngineResponse;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class EngineCacheTest {
+    private static final String AFTER_E4 = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1";
+
+    @Test
+    public void deeperResultsAnswerShallowerRequests() throws Exception {
+        EngineCache cache = new EngineCache(10);
+        cache.put(AFTER_E4, 12, response("c5", 12));
+
+        assertEquals("c5", cache.get(AFTER_E4, 8).getSan());
+        assertEquals("c5", cache.get(AFTER_E4, 12).getSan());
+        assertNull(cache.get(AFTER_E4, 16));
+
+        // A shallower result never replaces a deeper one
+        cache.put(AFTER_E4, 6, response("e5", 6));
+        assertEquals("c5", cache.get(AFTER_E4, 1).getSan());
+        cache.put(AFTER_E4, 18, response("e5", 18));
+        assertEquals("e5", cache.get(AFTER_E4, 16).getSan());
+    }
+
+    @Test
+    public void moveCountersAreIgnored() throws Exception {
+        EngineCache cache = new EngineCache(10);
+        cache.put(AFTER_E4, 12, response("c5", 12));
+
+        assertNotNull(cache.get(AFTER_E4.replace(" 0 1", " 4 9"), 12));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws Exception {
+        EngineCache cache = new EngineCache(2);
+        cache.put("a w - -", 1, response("a", 1));
+        cache.put("b w - -", 1, response("b", 1));
+        cache.get("a w - -", 1);
+        cache.put("c w - -", 1, response("c", 1));
+
+        assertNotNull(cache.get("a w - -", 1));
+        assertNull(cache.get("b w - -", 1));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void entriesSurviveReopen() throws Exception {
+        Path file = Files.createTempDirectory("engine-cache").resolve("cache.bin");
+
+        try (EngineCache cache = EngineCache.open(file, 10)) {
+            cache.put(AFTER_E4, 12, response("c5", 12));
+        }
+
+        try (EngineCache cache = EngineCache.open(file, 10)) {
+            EngineResponse cached = cache.get(AFTER_E4, 12);
+            assertEquals("c5", cached.getSan());
+            assertEquals(List.of("c7c5", "g1f3"), cached.getPv());
+            assertEquals(0.3, cached.getEval());
+        }
+    }
+
+    private static EngineResponse response(String san, int depth) {
+        EngineResponse response = new EngineResponse();
+        response.setSan(san);
+        response.setFrom("c7");
+        response.setTo("c5");
+        response.setEval(0.3);
+        response.setDepth(depth);
+        response.setPv(List.of("c7c5", "g1f3"));
+        return response;
+    }
+}
@@ -0,0 +1,65 @@
+package jp.ac.dendai.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import jp.ac.dendai.model.OpeningMove;
+import jp.ac.dendai.model.OpeningResponse;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+public class ExplorerCacheTest {
+
+    @Test
+    public void entriesSurviveReopen() throws Exception {
+        Path file = Files.createTempDirectory("explorer-cache").resolve("cache.bin");
+
+        try (ExplorerCache cache = ExplorerCache.open(file, Duration.ofDays(1))) {
+            cache.put(42L, response("e2e4", "e4", 1200));
+        }
+
+        try (ExplorerCache cache = ExplorerCache.open(file, Duration.ofDays(1))) {
+            OpeningResponse cached = cache.get(42L);
+            assertEquals(1, cached.getMoves().size());
+            assertEquals("e4", cached.getMoves().get(0).getSan());
+            assertEquals(1200L, cached.getMoves().get(0).getWhite());
+            assertNull(cache.get(7L));
+        }
+    }
+
+    @Test
+    public void expiredEntriesAreIgnored() throws Exception {
+        Path file = Files.createTempDirectory("explorer-cache").resolve("cache.bin");
+
+        try (ExplorerCache cache = ExplorerCache.open(file, Duration.ZERO.minusMillis(1))) {
+            cache.put(42L, response("d2d4", "d4", 800));
+            assertNull(cache.get(42L));
+        }
+    }
+
+    @Test
+    public void putAfterCloseIsIgnored() throws Exception {
+        Path file = Files.createTempDirectory("explorer-cache").resolve("cache.bin");
+        ExplorerCache cache = ExplorerCache.open(file, Duration.ofDays(1));
+        cache.close();
+        cache.put(42L, response("e2e4", "e4", 1200));
+
+        try (ExplorerCache reopened = ExplorerCache.open(file, Duration.ofDays(1))) {
+            assertNull(reopened.get(42L));
+        }
+    }
+
+    private static OpeningResponse response(String uci, String san, long white) {
+        OpeningMove move = new OpeningMove();
+        move.setUci(uci);
+        move.setSan(san);
+        move.setWhite(white);
+        OpeningResponse response = new OpeningResponse();
+        response.setMoves(List.of(move));
+        return response;
+    }
+}
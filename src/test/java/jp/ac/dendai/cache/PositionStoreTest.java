@@ -0,0 +1,76 @@
+package jp.ac.dendai.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jp.ac.dendai.model.OpeningMove;
+import jp.ac.dendai.model.OpeningResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PositionStoreTest {
+
+    @Test
+    public void recordsRoundTrip() {
+        PositionStore store = new PositionStore(1 << 20, 1 << 16);
+        store.put(42L, 1000, response(move("e2e4", "e4", 1200, 2100), move("e7e8q", "e8=Q+", 3, 1500)));
+
+        OpeningResponse cached = store.get(42L, 0);
+        assertEquals(2, cached.getMoves().size());
+        OpeningMove e4 = cached.getMoves().get(0);
+        assertEquals("e2e4", e4.getUci());
+        assertEquals("e4", e4.getSan());
+        assertEquals(1200L, e4.getWhite());
+        assertEquals(2100, e4.getAverageRating());
+        assertEquals("e7e8q", cached.getMoves().get(1).getUci());
+        assertEquals("e8=Q+", cached.getMoves().get(1).getSan());
+        assertEquals(1203L, cached.getWhite());
+
+        assertNull(store.get(7L, 0));
+        // Too old
+        assertNull(store.get(42L, 1001));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void memoryStaysBoundedAndFrequentPositionsSurvive() {
+        PositionStore store = new PositionStore(1 << 14, 1 << 12);
+        store.put(-1L, 0, response(move("d2d4", "d4", 10, 2000)));
+
+        for (long key = 0; key < 10_000; key++) {
+            store.put(key, 0, response(move("e2e4", "e4", key, 2000), move("g1f3", "Nf3", 1, 2000)));
+            // A position read all the time is never evicted
+            assertNotNull(store.get(-1L, 0));
+            assertTrue(store.getUsedBytes() <= 1 << 14);
+        }
+
+        assertEquals("d4", store.get(-1L, 0).getMoves().get(0).getSan());
+        assertEquals(9_999L, store.get(9_999L, 0).getMoves().get(0).getWhite());
+        assertNull(store.get(0L, 0));
+        assertTrue(store.size() < 200);
+
+        List<Long> keys = new ArrayList<>();
+        store.forEach((key, fetchedAt, response) -> keys.add(key));
+        assertEquals(store.size(), keys.size());
+    }
+
+    private static OpeningMove move(String uci, String san, long white, int rating) {
+        OpeningMove move = new OpeningMove();
+        move.setUci(uci);
+        move.setSan(san);
+        move.setWhite(white);
+        move.setAverageRating(rating);
+        return move;
+    }
+
+    private static OpeningResponse response(OpeningMove... moves) {
+        OpeningResponse response = new OpeningResponse();
+        response.setWhite(List.of(moves).stream().mapToLong(OpeningMove::getWhite).sum());
+        response.setMoves(List.of(moves));
+        return response;
+    }
+}
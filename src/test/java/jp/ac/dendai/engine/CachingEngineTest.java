@@ -0,0 +1,71 @@
+package jp.ac.dendai.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.cache.EngineCache;
+import jp.ac.dendai.model.EngineResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class CachingEngineTest {
+    private static final String AFTER_E4 = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1";
+
+    @Test
+    public void shallowResultIsCachedAtItsOwnDepth() throws Exception {
+        List<Integer> reached = new ArrayList<>(List.of(5, 12));
+        List<Integer> searches = new ArrayList<>();
+        ChessEngine engine = (fen, depth, lane) -> {
+            searches.add(depth);
+            return CompletableFuture.completedFuture(response(reached.remove(0)));
+        };
+        EngineCache cache = new EngineCache(10);
+        CachingEngine caching = new CachingEngine(engine, cache);
+
+        // The time budget ran out at depth 5
+        assertEquals(5, caching.analyze(AFTER_E4, 12, RequestScheduler.Lane.BATCH).get().getDepth());
+        assertNull(cache.get(AFTER_E4, 12));
+        assertEquals(5, cache.get(AFTER_E4, 5).getDepth());
+
+        // So a depth-12 request searches again and upgrades the entry
+        assertEquals(12, caching.analyze(AFTER_E4, 12, RequestScheduler.Lane.BATCH).get().getDepth());
+        assertEquals(12, caching.analyze(AFTER_E4, 12, RequestScheduler.Lane.BATCH).get().getDepth());
+        assertEquals(List.of(12, 12), searches);
+    }
+
+    @Test
+    public void timeLimitedResultAnswersTheRequestedDepth() throws Exception {
+        List<Integer> searches = new ArrayList<>();
+        ChessEngine engine = (fen, depth, lane) -> {
+            searches.add(depth);
+            // The time budget always runs out at depth 5
+            return CompletableFuture.completedFuture(response(5));
+        };
+        CachingEngine caching = new CachingEngine(engine, new EngineCache(10), true);
+
+        assertEquals(5, caching.analyze(AFTER_E4, 12, RequestScheduler.Lane.BATCH).get().getDepth());
+        assertEquals(5, caching.analyze(AFTER_E4, 12, RequestScheduler.Lane.BATCH).get().getDepth());
+        assertEquals(List.of(12), searches);
+    }
+
+    @Test
+    public void resultWithoutDepthIsNotCached() throws Exception {
+        EngineCache cache = new EngineCache(10);
+        CachingEngine caching = new CachingEngine(
+            (fen, depth, lane) -> CompletableFuture.completedFuture(response(null)), cache);
+
+        caching.analyze(AFTER_E4, 12, RequestScheduler.Lane.BATCH).get();
+        assertEquals(0, cache.size());
+    }
+
+    private static EngineResponse response(Integer depth) {
+        EngineResponse response = new EngineResponse();
+        response.setSan("c5");
+        response.setDepth(depth);
+        return response;
+    }
+}
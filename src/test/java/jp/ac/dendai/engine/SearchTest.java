@@ -0,0 +1,65 @@
+package jp.ac.dendai.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.PieceType;
+import jp.ac.dendai.util.MoveCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class SearchTest {
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    @Test
+    public void findsMateInOne() {
+        Search.Result result = search("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1", 4, NO_LIMIT);
+
+        assertEquals("a1a8", MoveCodec.toUci(result.move));
+        assertEquals(Search.MATE - 1, result.score);
+    }
+
+    @Test
+    public void takesHangingPiece() {
+        Search.Result result = search("4k3/8/8/3r4/8/8/3Q4/4K3 w - - 0 1", 4, NO_LIMIT);
+
+        assertEquals("d2d5", MoveCodec.toUci(result.move));
+        // Queen against a bare king
+        assertTrue(result.score > Evaluator.pieceValue(PieceType.ROOK));
+    }
+
+    @Test
+    public void stopsAtTheDeadline() {
+        long start = System.nanoTime();
+        Search.Result result = search(new Board().getFen(), 64,
+            start + TimeUnit.MILLISECONDS.toNanos(100));
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(2), "search ran " + elapsed / 1_000_000 + " ms");
+        assertTrue(result.depth < 64);
+        assertTrue(result.move != MoveCodec.NONE);
+    }
+
+    @Test
+    public void alwaysHasAMoveAfterTheDeadline() {
+        Search.Result result = search(new Board().getFen(), 8, System.nanoTime() - 1);
+
+        assertNotNull(result);
+        assertTrue(result.move != MoveCodec.NONE);
+    }
+
+    @Test
+    public void noMoveWhenMated() {
+        assertNull(search("R5k1/5ppp/8/8/8/8/5PPP/6K1 b - - 1 1", 4, NO_LIMIT));
+    }
+
+    private static Search.Result search(String fen, int depth, long deadline) {
+        Board board = new Board();
+        board.loadFromFen(fen);
+        return new Search(board, new TranspositionTable(16), deadline).run(depth);
+    }
+}
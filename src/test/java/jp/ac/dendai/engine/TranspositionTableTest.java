@@ -0,0 +1,43 @@
+package jp.ac.dendai.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import jp.ac.dendai.util.MoveCodec;
+import org.junit.jupiter.api.Test;
+
+public class TranspositionTableTest {
+
+    @Test
+    public void storedEntryIsProbedBack() {
+        TranspositionTable table = new TranspositionTable(8);
+        int move = MoveCodec.encode("e7e8q");
+        table.store(0x1234_5678_9ABC_DEF0L, move, -Search.MATE + 3, 7, TranspositionTable.LOWER);
+
+        long entry = table.probe(0x1234_5678_9ABC_DEF0L);
+        assertEquals(move, TranspositionTable.move(entry));
+        assertEquals(-Search.MATE + 3, TranspositionTable.score(entry));
+        assertEquals(7, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(entry));
+    }
+
+    @Test
+    public void otherPositionInTheSameSlotIsAMiss() {
+        TranspositionTable table = new TranspositionTable(8);
+        table.store(0x100L, MoveCodec.encode("e2e4"), 25, 3, TranspositionTable.EXACT);
+
+        assertEquals(0, table.probe(0x100L | (1L << 40)));
+    }
+
+    @Test
+    public void deeperBoundIsKept() {
+        TranspositionTable table = new TranspositionTable(8);
+        long key = 0x42L;
+        table.store(key, MoveCodec.encode("e2e4"), 25, 6, TranspositionTable.EXACT);
+        table.store(key, MoveCodec.encode("d2d4"), 10, 2, TranspositionTable.UPPER);
+        assertEquals(6, TranspositionTable.depth(table.probe(key)));
+
+        // An exact result always replaces the entry
+        table.store(key, MoveCodec.encode("d2d4"), 10, 2, TranspositionTable.EXACT);
+        assertEquals(MoveCodec.encode("d2d4"), TranspositionTable.move(table.probe(key)));
+    }
+}
@@ -0,0 +1,68 @@
+package jp.ac.dendai.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+public class MetricsTest {
+    @Test
+    public void histogramPercentilesAreWithinBucketPrecision() {
+        Histogram histogram = new Metrics().histogram("values");
+        for (long v = 1; v <= 1000; v++) {
+            histogram.record(v);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getSum());
+        assertWithin(500, histogram.percentile(0.5));
+        assertWithin(950, histogram.percentile(0.95));
+        assertWithin(990, histogram.percentile(0.99));
+        assertEquals(0, new Metrics().histogram("empty").percentile(0.5));
+    }
+
+    @Test
+    public void bucketsCoverTheWholeRange() {
+        long previous = -1;
+        for (int bucket = 0; bucket < 960; bucket++) {
+            long upper = Histogram.upperBound(bucket);
+            assertTrue(upper > previous);
+            assertEquals(bucket, Histogram.bucket(upper));
+            assertEquals(bucket, Histogram.bucket(previous + 1));
+            previous = upper;
+        }
+        assertEquals(Long.MAX_VALUE, previous);
+    }
+
+    @Test
+    public void exportsJsonAndPrometheus() {
+        Metrics metrics = new Metrics();
+        assertSame(metrics.counter("api_requests_total", "endpoint", "explorer"),
+            metrics.counter("api_requests_total", "endpoint", "explorer"));
+        metrics.counter("api_requests_total", "endpoint", "explorer").add(3);
+        metrics.counter("api_requests_total", "endpoint", "engine").add(1);
+        metrics.timer("api_request_seconds", "endpoint", "explorer").record(250_000_000);
+        metrics.cache("trie").hit();
+        metrics.cache("trie").hit();
+        metrics.cache("trie").hit();
+        metrics.cache("trie").miss();
+
+        JsonObject json = JsonParser.parseString(metrics.toJson()).getAsJsonObject();
+        assertEquals(2, json.getAsJsonObject("counters").getAsJsonArray("api_requests_total").size());
+        assertEquals(0.75, json.getAsJsonObject("caches").getAsJsonObject("trie").get("hitRatio").getAsDouble());
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("# TYPE api_requests_total counter\n"));
+        assertTrue(text.contains("api_requests_total{endpoint=\"explorer\"} 3\n"));
+        assertTrue(text.contains("api_request_seconds_count{endpoint=\"explorer\"} 1\n"));
+        assertTrue(text.contains("api_request_seconds{endpoint=\"explorer\",quantile=\"0.99\"} "));
+        assertTrue(text.contains("cache_hit_ratio{cache=\"trie\"} 0.75\n"));
+    }
+
+    private static void assertWithin(double expected, double actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.07, "expected ~" + expected + " but was " + actual);
+    }
+}
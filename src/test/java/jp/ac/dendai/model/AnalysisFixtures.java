@@ -0,0 +1,35 @@
+package jp.ac.dendai.model;
+
+import java.util.List;
+
+/**
+ * Game results shared by the tests that store or print them
+ */
+public final class AnalysisFixtures {
+    private AnalysisFixtures() {
+    }
+
+    /**
+     * White's game in the Two Knights, leaving theory with 3. Bc4
+     * (Bb5 recommended, punished by Nxe4)
+     */
+    public static GameAnalysis deviation(String id) {
+        Game game = new Game();
+        game.setId(id);
+        game.setMoves("e4 e5 Nf3 Nc6 Bc4 Nf6");
+        Game.Opening opening = new Game.Opening();
+        opening.setName("Italian Game, Two Knights");
+        game.setOpening(opening);
+
+        MoveAnalysis analysis = new MoveAnalysis(3, true, "Bc4");
+        analysis.setOpeningMove(false);
+        analysis.setRecommendedMove("Bb5");
+        analysis.setPunishmentMove("Nxe4");
+
+        GameAnalysis result = new GameAnalysis(game);
+        result.setPlayerColor("white");
+        result.setAnalyses(List.of(analysis));
+        result.setTheoryLine(new String[] {"e4", "e5", "Nf3"});
+        return result;
+    }
+}
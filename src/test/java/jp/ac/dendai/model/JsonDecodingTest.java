@@ -0,0 +1,77 @@
+package jp.ac.dendai.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class JsonDecodingTest {
+    private final Gson gson = new Gson();
+
+    @Test
+    public void decodesGameAndSkipsUnusedFields() {
+        String json = "{\"id\":\"q7ZvsdUF\",\"rated\":true,\"status\":\"resign\",\"players\":{"
+            + "\"white\":{\"user\":{\"name\":\"def-e\",\"id\":\"def-e\"},\"rating\":1950,"
+            + "\"analysis\":{\"inaccuracy\":2,\"acpl\":31}},"
+            + "\"black\":{\"aiLevel\":3,\"rating\":null}},\"winner\":\"white\","
+            + "\"opening\":{\"eco\":\"C54\",\"name\":\"Italian Game\",\"ply\":7},\"moves\":\"e4 e5 Nf3\","
+            + "\"clocks\":[18003,18003],\"analysis\":[{\"eval\":18},{\"judgment\":{\"name\":\"Inaccuracy\"}}],"
+            + "\"clock\":{\"initial\":180,\"increment\":0}}";
+
+        Game game = gson.fromJson(json, Game.class);
+        assertEquals("q7ZvsdUF", game.getId());
+        assertEquals("e4 e5 Nf3", game.getMoves());
+        assertEquals("resign", game.getStatus());
+        assertEquals("white", game.getWinner());
+        assertEquals("Italian Game", game.getOpening().getName());
+        assertEquals("def-e", game.getPlayers().getWhite().getUser().getId());
+        assertEquals(1950, game.getPlayers().getWhite().getRating());
+        // Computer opponents have no user
+        assertNull(game.getPlayers().getBlack().getUser());
+        assertEquals(0, game.getPlayers().getBlack().getRating());
+        assertEquals("white", game.getPlayerColor("DEF-E"));
+    }
+
+    @Test
+    public void decodesOpeningResponse() {
+        String json = "{\"white\":10,\"draws\":20,\"black\":30,\"moves\":[{\"uci\":\"e2e4\",\"san\":\"e4\","
+            + "\"averageRating\":2415,\"white\":5,\"draws\":6,\"black\":7,\"game\":null}],"
+            + "\"topGames\":[{\"id\":\"x\",\"white\":{\"name\":\"A\"}}],\"opening\":null}";
+
+        OpeningResponse response = gson.fromJson(json, OpeningResponse.class);
+        assertEquals(30, response.getBlack());
+        assertEquals(1, response.getMoves().size());
+        OpeningMove move = response.getMoves().get(0);
+        assertEquals("e2e4", move.getUci());
+        assertEquals("e4", move.getSan());
+        assertEquals(18, move.getTotalGames());
+        assertEquals(2415, move.getAverageRating());
+
+        // Repeated strings share one instance
+        OpeningResponse again = gson.fromJson(json, OpeningResponse.class);
+        assertSame(move.getSan(), again.getMoves().get(0).getSan());
+    }
+
+    @Test
+    public void decodesEngineResponse() {
+        String json = "{\"text\":\"Move e2 → e4\",\"eval\":0.3,\"move\":\"e2e4\",\"depth\":12,"
+            + "\"continuationArr\":[\"e7e5\"],\"mate\":null,\"san\":\"e4\",\"from\":\"e2\",\"to\":\"e4\","
+            + "\"isCapture\":false,\"pv\":[\"e2e4\",\"e7e5\"]}";
+
+        EngineResponse response = gson.fromJson(json, EngineResponse.class);
+        assertEquals("e2e4", response.getBestMoveUci());
+        assertEquals("e4", response.getSan());
+        assertEquals(0.3, response.getEvaluation());
+        assertEquals(12, response.getDepth());
+        assertEquals(List.of("e2e4", "e7e5"), response.getPv());
+
+        // Encoding keeps the decoded fields
+        EngineResponse copy = gson.fromJson(gson.toJson(response), EngineResponse.class);
+        assertEquals(response.getBestMoveUci(), copy.getBestMoveUci());
+        assertEquals(response.getPv(), copy.getPv());
+    }
+}
@@ -0,0 +1,100 @@
+package jp.ac.dendai.output;
+
+import static jp.ac.dendai.model.AnalysisFixtures.deviation;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class ResultWriterTest {
+
+    @Test
+    public void ndjsonHasOneGamePerLine() throws Exception {
+        Path file = Files.createTempFile("results", ".ndjson");
+        try (ResultWriter writer = ResultWriter.open(file, ResultWriter.formatOf(file))) {
+            for (int i = 0; i < 100; i++) {
+                writer.write(deviation("g" + i));
+            }
+            writer.write(failure("bad"));
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(101, lines.size());
+        JsonObject first = JsonParser.parseString(lines.get(0)).getAsJsonObject();
+        assertEquals("g0", first.get("id").getAsString());
+        JsonObject analysis = first.getAsJsonArray("analyses").get(0).getAsJsonObject();
+        assertEquals("Bc4", analysis.get("played").getAsString());
+        assertFalse(analysis.get("inTheory").getAsBoolean());
+        assertEquals("Nxe4", analysis.get("punishment").getAsString());
+        assertEquals("e4", first.getAsJsonArray("theoryLine").get(0).getAsString());
+        assertEquals("no moves", JsonParser.parseString(lines.get(100)).getAsJsonObject().get("error").getAsString());
+    }
+
+    @Test
+    public void csvQuotesFieldsAndHasOneRowPerMove() throws Exception {
+        Path file = Files.createTempFile("results", ".csv");
+        try (ResultWriter writer = ResultWriter.open(file, ResultWriter.formatOf(file))) {
+            writer.write(deviation("g1"));
+            writer.write(failure("g2"));
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(CsvResultWriter.HEADER, lines.get(0));
+        assertEquals("g1,white,\"Italian Game, Two Knights\",3,white,Bc4,false,false,Bb5,Nxe4,,e4 e5 Nf3,false,",
+            lines.get(1));
+        assertEquals("g2,,,,,,,,,,,,false,no moves", lines.get(2));
+        assertEquals("\"say \"\"hi\"\"\"", CsvResultWriter.quote("say \"hi\""));
+    }
+
+    @Test
+    public void formattingErrorIsReported() throws Exception {
+        AsyncResultWriter writer = new AsyncResultWriter(failingWriter(new IllegalStateException("bug")));
+        writer.write(deviation("g1"));
+        IOException error = assertThrows(IOException.class, writer::close);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void deadWriterThreadDoesNotBlockTheCaller() throws Exception {
+        AsyncResultWriter writer = new AsyncResultWriter(failingWriter(new AssertionError("fatal")), 1);
+        assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 3; i++) {
+                writer.write(deviation("g" + i));
+            }
+        });
+        assertThrows(IOException.class, writer::close);
+    }
+
+    private static ResultWriter failingWriter(Throwable error) {
+        return new ResultWriter() {
+            @Override
+            public void write(GameAnalysis result) {
+                if (error instanceof RuntimeException runtime) throw runtime;
+                throw (Error) error;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static GameAnalysis failure(String id) {
+        Game game = new Game();
+        game.setId(id);
+        GameAnalysis result = new GameAnalysis(game);
+        result.setError("no moves");
+        return result;
+    }
+}
@@ -0,0 +1,63 @@
+package jp.ac.dendai.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.service.OpeningTrainerService;
+import jp.ac.dendai.service.TrainerFixtures;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TrainerServerTest {
+
+    @Test
+    public void answersAnalysesAsJson() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            OpeningTrainerService trainer = TrainerFixtures.trainer(scheduler);
+            TrainerServer server = new TrainerServer(new InetSocketAddress("127.0.0.1", 0), trainer,
+                (username, max, since) -> { throw new AssertionError("no network"); }, executor, executor);
+            server.start();
+            try {
+                HttpResponse<String> health = get(server, "/health");
+                assertEquals(200, health.statusCode());
+
+                HttpResponse<String> analysis = get(server, "/analyze/moves?moves=d4+d5&color=white");
+                assertEquals(200, analysis.statusCode());
+                JsonObject json = JsonParser.parseString(analysis.body()).getAsJsonObject();
+                JsonObject deviation = json.getAsJsonArray("analyses").get(0).getAsJsonObject();
+                assertEquals("d4", deviation.get("playedMove").getAsString());
+                assertEquals("e4", deviation.get("recommendedMove").getAsString());
+                assertEquals(TrainerFixtures.PUNISHMENT, deviation.get("punishmentMove").getAsString());
+                assertEquals("e4", json.getAsJsonArray("theoryLine").get(0).getAsString());
+
+                HttpResponse<String> missing = get(server, "/analyze/moves?moves=e4");
+                assertEquals(400, missing.statusCode());
+                assertTrue(missing.body().contains("color"));
+
+                HttpResponse<String> metrics = get(server, "/metrics");
+                assertTrue(metrics.body().contains("server_request_seconds"));
+            } finally {
+                server.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static HttpResponse<String> get(TrainerServer server, String path) throws Exception {
+        URI uri = URI.create("http://127.0.0.1:" + server.getPort() + path);
+        return HttpClient.newHttpClient().send(HttpRequest.newBuilder(uri).build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+}
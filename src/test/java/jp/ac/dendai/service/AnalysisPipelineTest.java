@@ -0,0 +1,167 @@
+package jp.ac.dendai.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.engine.ChessEngine;
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.model.MoveAnalysis;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class AnalysisPipelineTest {
+
+    @Test
+    public void everyGamePassesThroughAllStages() throws Exception {
+        ChessEngine engine = TrainerFixtures.engine();
+        AtomicInteger engineCalls = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            OpeningTrainerService trainer = TrainerFixtures.trainer(scheduler, (fen, depth, lane) -> {
+                engineCalls.incrementAndGet();
+                return engine.analyze(fen, depth, lane);
+            });
+            // Queues of one item force every stage to wait for the next
+            AnalysisPipeline pipeline = new AnalysisPipeline(new BatchAnalyzer(trainer, executor), trainer, 3, 2, 1);
+
+            List<Game> games = new ArrayList<>();
+            IntStream.range(0, 20).forEach(i -> games.add(game("g" + i, i % 2 == 0 ? "d4 d5" : "e4 e5")));
+            List<GameAnalysis> results = new ArrayList<>();
+            Set<Thread> sinkThreads = new HashSet<>();
+
+            int count = pipeline.run(games.stream(), "someone", "white", result -> {
+                results.add(result);
+                sinkThreads.add(Thread.currentThread());
+            });
+
+            assertEquals(20, count);
+            assertEquals(20, results.size());
+            assertEquals(1, sinkThreads.size());
+            // Only the games leaving theory reach the engine
+            assertEquals(10, engineCalls.get());
+            for (GameAnalysis result : results) {
+                MoveAnalysis first = result.getAnalyses().get(0);
+                if (first.isOpeningMove()) {
+                    assertNull(first.getPunishmentMove());
+                } else {
+                    assertEquals("d4", first.getPlayedMove());
+                    assertEquals(TrainerFixtures.PUNISHMENT, first.getPunishmentMove());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void blockedEngineStageStopsReadingTheStream() throws Exception {
+        CompletableFuture<Void> engineBlocked = new CompletableFuture<>();
+        ChessEngine engine = TrainerFixtures.engine();
+        AtomicInteger read = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ExecutorService runner = Executors.newSingleThreadExecutor();
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            OpeningTrainerService trainer = TrainerFixtures.trainer(scheduler,
+                (fen, depth, lane) -> engineBlocked.thenCompose(v -> engine.analyze(fen, depth, lane)));
+            AnalysisPipeline pipeline = new AnalysisPipeline(new BatchAnalyzer(trainer, executor), trainer, 1, 1, 2);
+
+            // Every game deviates, so every game needs the engine
+            List<Game> games = new ArrayList<>();
+            IntStream.range(0, 100).forEach(i -> games.add(game("g" + i, "d4 d5")));
+            Future<Integer> count = runner.submit(() ->
+                pipeline.run(games.stream().peek(g -> read.incrementAndGet()), "someone", "white", result -> { }));
+
+            // Held by the engine worker, the engine queue, the analysis worker,
+            // the analysis queue and the reading thread
+            int bound = 1 + 2 + 1 + 2 + 1;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (read.get() < bound && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            Thread.sleep(100);
+            assertEquals(bound, read.get());
+            assertFalse(count.isDone());
+
+            engineBlocked.complete(null);
+            assertEquals(100, count.get(5, TimeUnit.SECONDS));
+        } finally {
+            engineBlocked.complete(null);
+            runner.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void timeQueuedForTheEngineDoesNotCountAgainstTheDeadline() throws Exception {
+        ChessEngine engine = TrainerFixtures.engine();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            // Each lookup takes 100 ms, so the last games wait about a second for the engine
+            OpeningTrainerService trainer = TrainerFixtures.trainer(scheduler, (fen, depth, lane) ->
+                CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS))
+                    .thenCompose(v -> engine.analyze(fen, depth, lane)));
+            BatchAnalyzer batch = new BatchAnalyzer(trainer, executor);
+            batch.setDeadline(Duration.ofMillis(500));
+            AnalysisPipeline pipeline = new AnalysisPipeline(batch, trainer, 2, 1, 16);
+
+            List<Game> games = new ArrayList<>();
+            IntStream.range(0, 10).forEach(i -> games.add(game("g" + i, "d4 d5")));
+            List<GameAnalysis> results = new ArrayList<>();
+            pipeline.run(games.stream(), "someone", "white", results::add);
+
+            assertEquals(10, results.size());
+            for (GameAnalysis result : results) {
+                assertFalse(result.isTruncated(), result.getGame().getId());
+                assertEquals(TrainerFixtures.PUNISHMENT, result.getAnalyses().get(0).getPunishmentMove());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failingSinkStopsReadingTheStream() throws Exception {
+        AtomicInteger read = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            OpeningTrainerService trainer = TrainerFixtures.trainer(scheduler);
+            AnalysisPipeline pipeline = new AnalysisPipeline(new BatchAnalyzer(trainer, executor), trainer, 1, 1, 1);
+
+            List<Game> games = new ArrayList<>();
+            IntStream.range(0, 1000).forEach(i -> games.add(game("g" + i, "d4 d5")));
+            IllegalStateException error = assertThrows(IllegalStateException.class, () ->
+                pipeline.run(games.stream().peek(g -> read.incrementAndGet()), "someone", "white", result -> {
+                    throw new IllegalStateException("disk full");
+                }));
+
+            assertEquals("disk full", error.getMessage());
+            assertTrue(read.get() < 100, "read " + read.get() + " games");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Game game(String id, String moves) {
+        Game game = new Game();
+        game.setId(id);
+        game.setMoves(moves);
+        return game;
+    }
+}
@@ -0,0 +1,171 @@
+package jp.ac.dendai.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.cache.ExplorerCache;
+import jp.ac.dendai.model.MoveAnalysis;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class OpeningTrainerServiceTest {
+    private static final String[] GAME = ("e4 e5 Nf3 Nc6 Bb5 a6 Ba4 Nf6 O-O Be7 Re1 b5 Bb3 d6 c3 O-O "
+        + "h3 Nb8 d4 Nbd7").split(" ");
+
+    /**
+     * Explorer whose answers the test hands out one position at a time
+     */
+    private static class ManualExplorer {
+        final List<String> requested = new CopyOnWriteArrayList<>();
+        final Map<String, CompletableFuture<String>> answers = new ConcurrentHashMap<>();
+
+        CompletableFuture<String> get(String play) {
+            requested.add(play);
+            return answers.computeIfAbsent(play, p -> new CompletableFuture<>());
+        }
+
+        void answer(int ply, String san, String uci) {
+            answers.get(play(ply)).complete("{\"white\":500,\"draws\":300,\"black\":200,\"moves\":["
+                + "{\"uci\":\"" + uci + "\",\"san\":\"" + san + "\",\"white\":500,\"draws\":300,\"black\":200,"
+                + "\"averageRating\":2400}]}");
+        }
+
+        String play(int ply) {
+            return List.of("", "e2e4", "e2e4,e7e5").get(ply);
+        }
+    }
+
+    @Test
+    public void prefetchStaysAFewPliesAhead() throws Exception {
+        ManualExplorer explorer = new ManualExplorer();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            scheduler.configure(RequestScheduler.EXPLORER, 1000, 1000);
+            OpeningTrainerService trainer = trainer(explorer, scheduler);
+
+            Future<List<MoveAnalysis>> analysis = executor.submit(() -> trainer.analyzeGame(GAME, "white"));
+            waitFor(() -> explorer.requested.size() == 6);
+            Thread.sleep(50);
+            assertEquals(6, explorer.requested.size());
+
+            // Each position found in theory lets one more be requested
+            explorer.answer(0, "e4", "e2e4");
+            waitFor(() -> explorer.requested.size() == 7);
+
+            // Black leaves theory; nothing further is requested
+            explorer.answer(1, "c5", "c7c5");
+            List<MoveAnalysis> analyses = analysis.get(5, TimeUnit.SECONDS);
+            assertEquals(2, analyses.size());
+            assertFalse(analyses.get(1).isOpeningMove());
+            Thread.sleep(50);
+            assertEquals(7, explorer.requested.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lookupsPastADeviationAreNeverSent() throws Exception {
+        ManualExplorer explorer = new ManualExplorer();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            // Two tokens, then nearly none: the other prefetches wait in the queue
+            scheduler.configure(RequestScheduler.EXPLORER, 0.001, 2);
+            OpeningTrainerService trainer = trainer(explorer, scheduler);
+
+            Future<List<MoveAnalysis>> analysis = executor.submit(() -> trainer.analyzeGame(GAME, "white"));
+            waitFor(() -> explorer.requested.size() == 2);
+
+            explorer.answer(1, "c5", "c7c5");
+            explorer.answer(0, "e4", "e2e4");
+            List<MoveAnalysis> analyses = analysis.get(5, TimeUnit.SECONDS);
+            assertEquals("e5", analyses.get(1).getPlayedMove());
+            assertEquals(TrainerFixtures.PUNISHMENT, analyses.get(1).getPunishmentMove());
+
+            // The queued lookups were withdrawn, so the tokens they would take stay free
+            Thread.sleep(50);
+            assertEquals(List.of(explorer.play(0), explorer.play(1)), explorer.requested);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void walkStopsAtTheDeadline() throws Exception {
+        ManualExplorer explorer = new ManualExplorer();
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            OpeningTrainerService trainer = trainer(explorer, scheduler);
+            AnalysisContext context = AnalysisContext.interactive().withDeadline(Duration.ofMillis(100));
+
+            long start = System.nanoTime();
+            List<MoveAnalysis> analyses = trainer.analyzeGame(GAME, "white", context);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            assertTrue(analyses.isEmpty());
+            assertTrue(context.isTruncated());
+        }
+    }
+
+    @Test
+    public void punishmentIsDroppedAtTheDeadline() throws Exception {
+        ManualExplorer explorer = new ManualExplorer();
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            // The engine never answers
+            OpeningTrainerService trainer = new OpeningTrainerService(explorer::get,
+                (fen, depth, lane) -> new CompletableFuture<>(), null, scheduler);
+            explorer.get(explorer.play(0));
+            explorer.get(explorer.play(1));
+            explorer.answer(0, "e4", "e2e4");
+            explorer.answer(1, "c5", "c7c5");
+            AnalysisContext context = AnalysisContext.interactive().withDeadline(Duration.ofMillis(100));
+
+            List<MoveAnalysis> analyses = trainer.analyzeGame(GAME, "white", context);
+            assertEquals(2, analyses.size());
+            assertEquals("e5", analyses.get(1).getPlayedMove());
+            assertNull(analyses.get(1).getPunishmentMove());
+            assertTrue(context.isTruncated());
+        }
+    }
+
+    @Test
+    public void closedExplorerCacheDoesNotFailTheAnalysis() throws Exception {
+        Path file = Files.createTempDirectory("explorer-cache").resolve("cache.bin");
+        ExplorerCache cache = ExplorerCache.open(file, Duration.ofDays(1));
+        cache.close();
+        try (RequestScheduler scheduler = new RequestScheduler()) {
+            OpeningTrainerService trainer = new OpeningTrainerService(TrainerFixtures.explorer(),
+                TrainerFixtures.engine(), cache, scheduler);
+
+            List<MoveAnalysis> analyses = trainer.analyzeGame(new String[] {"d4", "d5"}, "white");
+            assertEquals("d4", analyses.get(0).getPlayedMove());
+            assertEquals(TrainerFixtures.PUNISHMENT, analyses.get(0).getPunishmentMove());
+        }
+    }
+
+    private static OpeningTrainerService trainer(ManualExplorer explorer, RequestScheduler scheduler) {
+        return new OpeningTrainerService(explorer::get, TrainerFixtures.engine(), null, scheduler);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+}
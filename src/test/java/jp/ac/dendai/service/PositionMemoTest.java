@@ -0,0 +1,95 @@
+package jp.ac.dendai.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jp.ac.dendai.model.OpeningResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class PositionMemoTest {
+
+    @Test
+    public void concurrentRequestsShareOneLoad() {
+        PositionMemo.Node node = new PositionMemo(1L, 16).start();
+        List<CompletableFuture<OpeningResponse>> loads = new ArrayList<>();
+        PositionMemo.Loader loader = () -> {
+            CompletableFuture<OpeningResponse> load = new CompletableFuture<>();
+            loads.add(load);
+            return load;
+        };
+
+        CompletableFuture<OpeningResponse> first = node.request(loader);
+        CompletableFuture<OpeningResponse> second = node.request(loader);
+        assertEquals(1, loads.size());
+
+        OpeningResponse response = new OpeningResponse();
+        loads.get(0).complete(response);
+        assertSame(response, first.join());
+        assertSame(response, second.join());
+        assertSame(response, node.request(loader).join());
+        assertEquals(1, loads.size());
+    }
+
+    @Test
+    public void loadIsCancelledWhenEveryViewIsCancelled() {
+        PositionMemo.Node node = new PositionMemo(1L, 16).start();
+        List<CompletableFuture<OpeningResponse>> loads = new ArrayList<>();
+        PositionMemo.Loader loader = () -> {
+            CompletableFuture<OpeningResponse> load = new CompletableFuture<>();
+            loads.add(load);
+            return load;
+        };
+
+        CompletableFuture<OpeningResponse> first = node.request(loader);
+        CompletableFuture<OpeningResponse> second = node.request(loader);
+
+        first.cancel(false);
+        assertFalse(loads.get(0).isCancelled());
+        second.cancel(false);
+        assertTrue(loads.get(0).isCancelled());
+
+        // The next request starts over
+        node.request(loader);
+        assertEquals(2, loads.size());
+    }
+
+    @Test
+    public void failedLoadIsRetried() {
+        PositionMemo.Node node = new PositionMemo(1L, 16).start();
+        List<CompletableFuture<OpeningResponse>> loads = new ArrayList<>();
+        PositionMemo.Loader loader = () -> {
+            CompletableFuture<OpeningResponse> load = new CompletableFuture<>();
+            loads.add(load);
+            return load;
+        };
+
+        CompletableFuture<OpeningResponse> failed = node.request(loader);
+        loads.get(0).completeExceptionally(new IOException("HTTP error: 500"));
+        assertTrue(failed.isCompletedExceptionally());
+
+        node.request(loader);
+        assertEquals(2, loads.size());
+    }
+
+    @Test
+    public void leastRecentlyWalkedPositionsAreEvicted() {
+        PositionMemo memo = new PositionMemo(1L, 2);
+        PositionMemo.Node first = memo.node(2L);
+        PositionMemo.Node second = memo.node(3L);
+        assertSame(first, memo.node(2L));
+
+        memo.node(4L);
+        assertEquals(3, memo.size());
+        assertSame(first, memo.node(2L));
+        assertNotSame(second, memo.node(3L));
+        assertSame(memo.start(), memo.node(1L));
+    }
+}
@@ -0,0 +1,120 @@
+package jp.ac.dendai.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jp.ac.dendai.model.Game;
+import jp.ac.dendai.model.GameAnalysis;
+import jp.ac.dendai.model.MoveAnalysis;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RepertoireReportTest {
+    @Test
+    public void aggregatesDeviationsPerPositionAndColor() {
+        List<GameAnalysis> analyses = new ArrayList<>();
+        // Many copies so the parallel stream really splits and merges
+        for (int i = 0; i < 500; i++) {
+            analyses.add(deviation("white", "e4 e5 Nf3 Nc6 Bc4 Nf6 Ng5", 3, true, "Bb5", "white"));
+            analyses.add(deviation("white", "e4 e5 Nf3 Nc6 Bc4 Nf6 Ng5", 3, true, "Bb5", "black"));
+            analyses.add(deviation("white", "e4 c5 Nc3 Nc6", 2, true, "Nf3", null));
+            analyses.add(deviation("black", "e4 e5 Nf3 f6", 2, false, "Nc6", "black"));
+        }
+        GameAnalysis failed = new GameAnalysis(game("e4", null));
+        failed.setError("boom");
+        analyses.add(failed);
+
+        RepertoireReport report = RepertoireReport.build(analyses);
+        assertEquals(2000, report.getGames());
+
+        List<RepertoireReport.Entry> white = report.getWhite();
+        assertEquals(2, white.size());
+        RepertoireReport.Entry bc4 = white.get(0);
+        assertEquals(List.of("e4", "e5", "Nf3", "Nc6"), bc4.getLine());
+        assertEquals("Bc4", bc4.getMove());
+        assertEquals("Bb5", bc4.getBookMove());
+        assertEquals(1000, bc4.getCount());
+        assertEquals(500, bc4.getWins());
+        assertEquals(500, bc4.getLosses());
+        assertEquals(1000, bc4.getGamesReaching());
+        assertEquals(0.5, bc4.getScore());
+
+        RepertoireReport.Entry nc3 = white.get(1);
+        assertEquals(List.of("e4", "c5"), nc3.getLine());
+        assertEquals(500, nc3.getDraws());
+
+        List<RepertoireReport.Entry> black = report.getBlack();
+        assertEquals(1, black.size());
+        assertEquals("f6", black.get(0).getMove());
+        assertEquals(500, black.get(0).getWins());
+        assertTrue(report.getWhite().stream().noneMatch(e -> e.getMove().equals("f6")));
+    }
+
+    @Test
+    public void gamesWithinTheoryAreCountedWithoutDeviation() {
+        GameAnalysis inBook = new GameAnalysis(game("e4 e5", "white"));
+        inBook.setPlayerColor("white");
+        MoveAnalysis e4 = new MoveAnalysis(1, true, "e4");
+        e4.setOpeningMove(true);
+        inBook.setAnalyses(List.of(e4));
+
+        RepertoireReport report = RepertoireReport.build(List.of(inBook));
+        assertEquals(1, report.getGames());
+        assertTrue(report.getWhite().isEmpty());
+        assertTrue(report.getBlack().isEmpty());
+    }
+
+    @Test
+    public void gamesWithinTheoryStopAtTheLastAnalyzedMove() {
+        GameAnalysis inBook = new GameAnalysis(game("e4 e5 Nf3 Nc6 Bc4 Nf6", "white"));
+        inBook.setPlayerColor("white");
+        MoveAnalysis e4 = new MoveAnalysis(1, true, "e4");
+        e4.setOpeningMove(true);
+        MoveAnalysis nf3 = new MoveAnalysis(2, true, "Nf3");
+        nf3.setOpeningMove(true);
+        inBook.setAnalyses(List.of(e4, nf3));
+
+        RepertoireReport report = RepertoireReport.build(List.of(
+            inBook, deviation("white", "e4 e5 Nf3 Nc6 Bc4 Nf6", 3, true, "Bb5", "white")));
+        RepertoireReport.Entry bc4 = report.getWhite().get(0);
+        assertEquals("Bc4", bc4.getMove());
+        // The walk stopped after 2. Nf3, so 2... Nc6 was never checked against the book
+        assertEquals(1, bc4.getGamesReaching());
+    }
+
+    @Test
+    public void unfinishedGamesAreSkipped() {
+        GameAnalysis aborted = deviation("white", "e4 c5 Nc3", 2, true, "Nf3", null);
+        aborted.getGame().setStatus("aborted");
+        GameAnalysis running = deviation("white", "e4 c5 Nc3", 2, true, "Nf3", null);
+        running.getGame().setStatus("started");
+        GameAnalysis drawn = deviation("white", "e4 c5 Nc3", 2, true, "Nf3", null);
+
+        RepertoireReport report = RepertoireReport.build(List.of(aborted, running, drawn));
+        assertEquals(1, report.getGames());
+        assertEquals(1, report.getWhite().get(0).getCount());
+        assertEquals(1, report.getWhite().get(0).getDraws());
+    }
+
+    private static GameAnalysis deviation(String color, String moves, int moveNumber, boolean white,
+                                          String book, String winner) {
+        GameAnalysis analysis = new GameAnalysis(game(moves, winner));
+        analysis.setPlayerColor(color);
+        String played = moves.split(" ")[(moveNumber - 1) * 2 + (white ? 0 : 1)];
+        MoveAnalysis move = new MoveAnalysis(moveNumber, white, played);
+        move.setOpeningMove(false);
+        move.setRecommendedMove(book);
+        analysis.setAnalyses(List.of(move));
+        return analysis;
+    }
+
+    private static Game game(String moves, String winner) {
+        Game game = new Game();
+        game.setMoves(moves);
+        game.setWinner(winner);
+        game.setStatus(winner == null ? "draw" : "resign");
+        return game;
+    }
+}
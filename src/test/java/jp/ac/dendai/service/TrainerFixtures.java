@@ -0,0 +1,46 @@
+package jp.ac.dendai.service;
+
+import jp.ac.dendai.api.OpeningExplorerApi;
+import jp.ac.dendai.api.RequestScheduler;
+import jp.ac.dendai.engine.ChessEngine;
+import jp.ac.dendai.model.EngineResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stubs for tests that run a whole OpeningTrainerService: an explorer that
+ * knows only 1. e4, and an engine answering every position with Qh5.
+ */
+public final class TrainerFixtures {
+    public static final String EMPTY = "{\"white\":0,\"draws\":0,\"black\":0,\"moves\":[]}";
+    public static final String START = "{\"white\":500,\"draws\":300,\"black\":200,\"moves\":["
+        + "{\"uci\":\"e2e4\",\"san\":\"e4\",\"white\":500,\"draws\":300,\"black\":200,\"averageRating\":2400}]}";
+    public static final String PUNISHMENT = "Qh5";
+
+    private TrainerFixtures() {
+    }
+
+    /**
+     * Explorer answering 1. e4 at the starting position and nothing after it
+     */
+    public static OpeningExplorerApi explorer() {
+        return play -> CompletableFuture.completedFuture(play.isEmpty() ? START : EMPTY);
+    }
+
+    /**
+     * Engine answering every position with {@link #PUNISHMENT}
+     */
+    public static ChessEngine engine() {
+        EngineResponse best = new EngineResponse();
+        best.setSan(PUNISHMENT);
+        return (fen, depth, lane) -> CompletableFuture.completedFuture(best);
+    }
+
+    public static OpeningTrainerService trainer(RequestScheduler scheduler) {
+        return trainer(scheduler, engine());
+    }
+
+    public static OpeningTrainerService trainer(RequestScheduler scheduler, ChessEngine engine) {
+        return new OpeningTrainerService(explorer(), engine, null, scheduler);
+    }
+}
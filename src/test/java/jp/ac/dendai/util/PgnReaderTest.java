@@ -0,0 +1,50 @@
+package jp.ac.dendai.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import jp.ac.dendai.model.Game;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+public class PgnReaderTest {
+    private static final String PGN = """
+        [Event "Rated Blitz game"]
+        [Site "https://lichess.org/abcd1234"]
+        [White "Alice"]
+        [Black "Bob"]
+        [Result "1-0"]
+        [WhiteElo "1850"]
+        [BlackElo "1790"]
+        [Opening "Italian Game"]
+
+        1. e4 { [%clk 0:03:00] } 1... e5 2. Nf3 (2. f4 exf4) 2... Nc6 3. Bc4!? $1 Bc5 1-0
+
+        [Event "Casual game"]
+        [Result "1/2-1/2"]
+
+        1.d4 d5 2.c4 1/2-1/2
+        """;
+
+    @Test
+    public void readsGamesInOrder() throws Exception {
+        PgnReader reader = new PgnReader(new BufferedReader(new StringReader(PGN)));
+
+        Game first = reader.next();
+        assertEquals("abcd1234", first.getId());
+        assertEquals("e4 e5 Nf3 Nc6 Bc4 Bc5", first.getMoves());
+        assertEquals("white", first.getWinner());
+        assertEquals("Italian Game", first.getOpening().getName());
+        assertEquals("alice", first.getPlayers().getWhite().getUser().getId());
+        assertEquals(1790, first.getPlayers().getBlack().getRating());
+
+        Game second = reader.next();
+        assertEquals("d4 d5 c4", second.getMoves());
+        assertNull(second.getWinner());
+        assertEquals("draw", second.getStatus());
+
+        assertNull(reader.next());
+    }
+}
@@ -0,0 +1,111 @@
+package jp.ac.dendai.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.bhlangonijr.chesslib.Board;
+import org.junit.jupiter.api.Test;
+
+public class PositionTrackerTest {
+    // Castling on both sides, en passant and a promotion
+    private static final String[] GAME =
+        "e4 d5 e5 f5 exf6 Nc6 fxg7 Be6 gxh8=Q Qd7 Nf3 O-O-O Bb5 a6 O-O axb5".split(" ");
+    private static final String[] OTHER_GAME = "d4 Nf6 c4 e6 Nc3 Bb4".split(" ");
+
+    @Test
+    public void incrementalHistoryMatchesTheBoard() {
+        PositionTracker tracker = new PositionTracker();
+        Board board = new Board();
+        assertMatches(board, tracker);
+
+        for (String move : GAME) {
+            tracker.applyMoveSan(move);
+            board.doMove(move);
+            assertMatches(board, tracker);
+        }
+        assertEquals("a6b5", tracker.getLastMoveUci());
+    }
+
+    @Test
+    public void undoAndResetRestoreEarlierPositions() {
+        PositionTracker tracker = new PositionTracker();
+        for (String move : GAME) {
+            tracker.applyMoveSan(move);
+        }
+
+        for (int ply = GAME.length - 1; ply >= 0; ply--) {
+            tracker.undoMove();
+            assertMatches(replay(GAME, ply), tracker);
+        }
+        assertThrows(IllegalStateException.class, tracker::undoMove);
+
+        // Undone moves can be played again, and a reset tracker replays another game
+        for (int ply = 0; ply < 9; ply++) {
+            tracker.applyMoveSan(GAME[ply]);
+        }
+        assertMatches(replay(GAME, 9), tracker);
+        tracker.reset();
+        assertMatches(new Board(), tracker);
+        for (String move : OTHER_GAME) {
+            tracker.applyMoveSan(move);
+        }
+        assertMatches(replay(OTHER_GAME, OTHER_GAME.length), tracker);
+    }
+
+    @Test
+    public void copyKeepsTheHistory() {
+        PositionTracker tracker = new PositionTracker();
+        for (int ply = 0; ply < 6; ply++) {
+            tracker.applyMoveSan(GAME[ply]);
+        }
+
+        PositionTracker copy = tracker.copy();
+        assertMatches(replay(GAME, 6), copy);
+        copy.applyMoveSan(GAME[6]);
+        assertEquals(6, tracker.getPly());
+        assertEquals(7, copy.getPly());
+    }
+
+    @Test
+    public void illegalMoveIsRejected() {
+        PositionTracker tracker = new PositionTracker();
+        tracker.applyMoveSan("e4");
+
+        assertThrows(IllegalArgumentException.class, () -> tracker.applyMoveSan("e4"));
+        assertThrows(IllegalArgumentException.class, () -> tracker.applyMoveSan("Qxf7"));
+        assertEquals(1, tracker.getPly());
+        assertEquals("e2e4", tracker.getAllMovesAsUci());
+    }
+
+    private static Board replay(String[] moves, int plies) {
+        Board board = new Board();
+        for (int ply = 0; ply < plies; ply++) {
+            board.doMove(moves[ply]);
+        }
+        return board;
+    }
+
+    /**
+     * Compare the tracker with what the board yields when its history is walked from scratch
+     */
+    private static void assertMatches(Board board, PositionTracker tracker) {
+        StringBuilder uci = new StringBuilder();
+        for (int i = 0; i < board.getBackup().size(); i++) {
+            if (i > 0) uci.append(',');
+            uci.append(board.getBackup().get(i).getMove().toString());
+        }
+        String last = board.getBackup().isEmpty() ? null : board.getBackup().getLast().getMove().toString();
+
+        assertEquals(uci.toString(), tracker.getAllMovesAsUci());
+        assertEquals(last, tracker.getLastMoveUci());
+        assertEquals(board.getZobristKey(), tracker.getPositionKey());
+        assertEquals(board.getFen(), tracker.getFen());
+        assertEquals(board.getBackup().size(), tracker.getPly());
+        if (last == null) {
+            assertEquals(MoveCodec.NONE, tracker.getLastMoveCode());
+        } else {
+            assertEquals(MoveCodec.encode(last), tracker.getLastMoveCode());
+        }
+    }
+}